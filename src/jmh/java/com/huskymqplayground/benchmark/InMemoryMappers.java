@@ -0,0 +1,29 @@
+package com.huskymqplayground.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * MyBatis Mapper 的内存替身：写方法返回 1，查询返回 null，default 方法照常执行
+ */
+public final class InMemoryMappers {
+
+    private InMemoryMappers() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <M> M noop(Class<M> mapperType) {
+        return (M) Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[]{mapperType},
+                (proxy, method, args) -> {
+                    if (method.isDefault()) {
+                        return InvocationHandler.invokeDefault(proxy, method, args);
+                    }
+                    return switch (method.getName()) {
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "InMemory" + mapperType.getSimpleName();
+                        default -> method.getReturnType() == int.class ? 1 : null;
+                    };
+                });
+    }
+}
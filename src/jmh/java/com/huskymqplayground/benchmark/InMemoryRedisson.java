@@ -0,0 +1,77 @@
+package com.huskymqplayground.benchmark;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RKeys;
+import org.redisson.api.RedissonClient;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RedissonClient 的内存替身，只实现幂等校验用到的 RBucket / RKeys 操作，TTL 忽略
+ * 其他方法抛 UnsupportedOperationException，基准测到的是调用路径本身的开销，不含网络往返
+ */
+public final class InMemoryRedisson {
+
+    private InMemoryRedisson() {
+    }
+
+    public static RedissonClient create(Map<String, Object> data) {
+        return proxy(RedissonClient.class, (method, args) -> switch (method) {
+            case "getBucket" -> bucket(data, (String) args[0]);
+            case "getKeys" -> keys(data);
+            default -> throw new UnsupportedOperationException("RedissonClient." + method);
+        });
+    }
+
+    public static RedissonClient create() {
+        return create(new ConcurrentHashMap<>());
+    }
+
+    private static RBucket<Object> bucket(Map<String, Object> data, String name) {
+        return proxy(RBucket.class, (method, args) -> switch (method) {
+            case "setIfAbsent", "trySet" -> data.putIfAbsent(name, args[0]) == null;
+            case "set" -> {
+                data.put(name, args[0]);
+                yield null;
+            }
+            case "get" -> data.get(name);
+            case "isExists" -> data.containsKey(name);
+            case "delete" -> data.remove(name) != null;
+            case "getName" -> name;
+            default -> throw new UnsupportedOperationException("RBucket." + method);
+        });
+    }
+
+    private static RKeys keys(Map<String, Object> data) {
+        return proxy(RKeys.class, (method, args) -> {
+            if (!"delete".equals(method)) {
+                throw new UnsupportedOperationException("RKeys." + method);
+            }
+            long deleted = 0;
+            for (Object name : (Object[]) args[0]) {
+                if (data.remove(name.toString()) != null) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryRedisson.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemory" + type.getSimpleName();
+                    default -> handler.handle(method.getName(), args == null ? new Object[0] : args);
+                });
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(String method, Object[] args);
+    }
+}
@@ -0,0 +1,91 @@
+package com.huskymqplayground.mq;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.benchmark.InMemoryMappers;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.UserLog;
+import com.huskymqplayground.idempotent.IdempotentNearCache;
+import com.huskymqplayground.idempotent.IdempotentService;
+import com.huskymqplayground.idempotent.QueueOffsetWatermarkStore;
+import com.huskymqplayground.idempotent.RedisBucketIdempotentStore;
+import com.huskymqplayground.mapper.UserLogMapper;
+import com.huskymqplayground.metrics.ConsumerMetricTags;
+import com.huskymqplayground.service.UserLogWriteBehindBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 基准测试的装配：不启动 Spring 容器，按生产代码的依赖关系手工组装，Redis / MyBatis 换成内存替身
+ * 放在 mq 包下，以便直接调用 BaseRocketMQListener 的 protected / 包级方法
+ */
+final class ConsumerFixtures {
+
+    static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    static final MeterRegistry METER_REGISTRY = new SimpleMeterRegistry();
+
+    static final StandardEnvironment ENVIRONMENT = new StandardEnvironment();
+
+    private ConsumerFixtures() {
+    }
+
+    static MessageCodecRegistry codecRegistry(String producerCodec) {
+        return new MessageCodecRegistry(OBJECT_MAPPER, producerCodec);
+    }
+
+    /**
+     * 按生产端的方式编码，构造消费端收到的 MessageExt
+     */
+    static MessageExt message(MessageCodecRegistry codecRegistry, Object payload, String keys) {
+        Message<byte[]> message = codecRegistry.newMessage(payload).build();
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("benchmark-topic");
+        messageExt.setBody(message.getPayload());
+        messageExt.putUserProperty(MessageCodecRegistry.CODEC_HEADER, (String) message.getHeaders().get(MessageCodecRegistry.CODEC_HEADER));
+        messageExt.setKeys(keys);
+        messageExt.setMsgId(keys);
+        return messageExt;
+    }
+
+    static IdempotentService idempotentService(RedissonClient redissonClient) {
+        return new IdempotentService(new IdempotentNearCache(METER_REGISTRY), new QueueOffsetWatermarkStore(redissonClient),
+                ENVIRONMENT, METER_REGISTRY, new ConsumerMetricTags(ENVIRONMENT), new RedisBulkhead(METER_REGISTRY, 64, 1000),
+                List.of(new RedisBucketIdempotentStore(redissonClient)));
+    }
+
+    /**
+     * 补齐 BaseRocketMQListener 的字段注入并串好消费链
+     */
+    static <L extends BaseRocketMQListener<?>> L wire(L listener, MessageCodecRegistry codecRegistry, IdempotentService idempotentService) {
+        listener.objectMapper = OBJECT_MAPPER;
+        listener.codecRegistry = codecRegistry;
+        ReflectionTestUtils.setField(listener, BaseRocketMQListener.class, "idempotentService", idempotentService, IdempotentService.class);
+        ReflectionTestUtils.setField(listener, BaseRocketMQListener.class, "meterRegistry", METER_REGISTRY, MeterRegistry.class);
+        ReflectionTestUtils.setField(listener, BaseRocketMQListener.class, "consumerMetricTags", new ConsumerMetricTags(ENVIRONMENT), ConsumerMetricTags.class);
+        ReflectionTestUtils.setField(listener, BaseRocketMQListener.class, "environment", ENVIRONMENT, Environment.class);
+        listener.initConsumeChain();
+        return listener;
+    }
+
+    /**
+     * 不落库的写后缓冲：write 直接返回，只保留调用开销
+     */
+    static UserLogWriteBehindBuffer discardingBuffer() {
+        return new UserLogWriteBehindBuffer(InMemoryMappers.noop(UserLogMapper.class), new TransactionTemplate(), METER_REGISTRY, 1, 0) {
+            @Override
+            public void write(UserLog userLog) {
+            }
+        };
+    }
+}
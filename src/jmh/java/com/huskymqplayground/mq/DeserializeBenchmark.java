@@ -0,0 +1,144 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.dto.CartDTO;
+import com.huskymqplayground.dto.OrderDTO;
+import com.huskymqplayground.dto.UserLogDTO;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseRocketMQListener 反序列化路径：三种 DTO × 两种编码，以及改造前“先转 String 再 readValue”的写法作对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Codec {
+
+        @Param({MessageCodecRegistry.JSON, MessageCodecRegistry.SMILE})
+        String codec;
+
+        UserLogListener userLogListener;
+        OrderListener orderListener;
+        CartListener cartListener;
+
+        MessageExt userLogMessage;
+        MessageExt orderMessage;
+        MessageExt cartMessage;
+
+        @Setup
+        public void setup() {
+            MessageCodecRegistry codecRegistry = ConsumerFixtures.codecRegistry(codec);
+            userLogListener = ConsumerFixtures.wire(new UserLogListener(), codecRegistry, null);
+            orderListener = ConsumerFixtures.wire(new OrderListener(), codecRegistry, null);
+            cartListener = ConsumerFixtures.wire(new CartListener(), codecRegistry, null);
+
+            userLogMessage = ConsumerFixtures.message(codecRegistry, userLog(), "trace-1");
+            orderMessage = ConsumerFixtures.message(codecRegistry, order(), "trace-2");
+            cartMessage = ConsumerFixtures.message(codecRegistry, cart(), "trace-3");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Legacy {
+
+        byte[] userLogJson;
+        byte[] orderJson;
+
+        @Setup
+        public void setup() throws IOException {
+            userLogJson = ConsumerFixtures.OBJECT_MAPPER.writeValueAsBytes(userLog());
+            orderJson = ConsumerFixtures.OBJECT_MAPPER.writeValueAsBytes(order());
+        }
+    }
+
+    @Benchmark
+    public UserLogDTO userLog(Codec state) throws IOException {
+        return state.userLogListener.deserialize(state.userLogMessage);
+    }
+
+    @Benchmark
+    public OrderDTO order(Codec state) throws IOException {
+        return state.orderListener.deserialize(state.orderMessage);
+    }
+
+    @Benchmark
+    public CartDTO cart(Codec state) throws IOException {
+        return state.cartListener.deserialize(state.cartMessage);
+    }
+
+    /**
+     * 完整的 onMessage：反序列化 + 指标 + 空业务处理
+     */
+    @Benchmark
+    public Object userLogOnMessage(Codec state) {
+        state.userLogListener.onMessage(state.userLogMessage);
+        return state.userLogListener.last;
+    }
+
+    @Benchmark
+    public UserLogDTO userLogLegacyString(Legacy state) throws IOException {
+        return ConsumerFixtures.OBJECT_MAPPER.readValue(new String(state.userLogJson, StandardCharsets.UTF_8), UserLogDTO.class);
+    }
+
+    @Benchmark
+    public OrderDTO orderLegacyString(Legacy state) throws IOException {
+        return ConsumerFixtures.OBJECT_MAPPER.readValue(new String(state.orderJson, StandardCharsets.UTF_8), OrderDTO.class);
+    }
+
+    static UserLogDTO userLog() {
+        return new UserLogDTO("0d5c4f6e-3b1a-4f7e-9a51-7c2f8e4d1b90", "alice", "login");
+    }
+
+    static OrderDTO order() {
+        return new OrderDTO("4a7e2c1d-8f3b-4e6a-b9d2-5c1f7a3e8b46", "ORD-20250101-000001", "alice", "Keyboard", 1, new BigDecimal("199.00"));
+    }
+
+    static CartDTO cart() {
+        return new CartDTO("9e3b7d2a-1c4f-4a8e-b6d5-2f7c9a1e3b58", "alice", "Keyboard", 2);
+    }
+
+    static final class UserLogListener extends BaseRocketMQListener<UserLogDTO> {
+
+        UserLogDTO last;
+
+        @Override
+        protected void handleMessage(UserLogDTO dto, MessageExt messageExt) {
+            last = dto;
+        }
+    }
+
+    static final class OrderListener extends BaseRocketMQListener<OrderDTO> {
+
+        @Override
+        protected void handleMessage(OrderDTO dto, MessageExt messageExt) {
+        }
+    }
+
+    static final class CartListener extends BaseRocketMQListener<CartDTO> {
+
+        @Override
+        protected void handleMessage(CartDTO dto, MessageExt messageExt) {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.dto.UserLogDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseRocketMQListener 构造函数中的泛型解析（getGenericSuperclass）开销
+ * 只在创建监听器时执行一次，这里给出量级，确认它不在消费热路径上
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericTypeResolutionBenchmark {
+
+    @Benchmark
+    public Type resolveGenericSuperclass() {
+        return ((ParameterizedType) DeserializeBenchmark.UserLogListener.class.getGenericSuperclass()).getActualTypeArguments()[0];
+    }
+
+    @Benchmark
+    public Object constructListener() {
+        return new DeserializeBenchmark.UserLogListener();
+    }
+
+    /**
+     * 对照：显式传入 Class 的写法（不做反射）
+     */
+    @Benchmark
+    public Object constructWithExplicitType() {
+        return new ExplicitTypeHolder<>(UserLogDTO.class);
+    }
+
+    record ExplicitTypeHolder<T>(Class<T> messageType) {
+    }
+}
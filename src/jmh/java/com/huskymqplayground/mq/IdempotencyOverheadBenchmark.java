@@ -0,0 +1,204 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.aspect.IdempotentAspect;
+import com.huskymqplayground.benchmark.InMemoryRedisson;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.dto.UserLogDTO;
+import com.huskymqplayground.idempotent.IdempotentService;
+import com.huskymqplayground.service.UserLogWriteBehindBuffer;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redisson.api.RedissonClient;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @RocketMQIdempotent 的 AOP 代理（V2）与 V1 手写 SETNX 的开销对比
+ * 两者共用同一个内存 Redis 替身和不落库的写后缓冲，差值即为切面 + IdempotentService 的额外开销；
+ * v2WithoutIdempotency 是去掉幂等后的基线（解码 + 业务）
+ * v3InterceptorChain / v3AopProxy 对比 BaseRocketMQListener 的两种挂法：类上注解走预先串好的消费链，onMessage 上注解走 IdempotentAspect 代理；
+ * 两者都经过同样的追踪、指标拦截器，差值即为 AOP 代理相对消费链的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdempotencyOverheadBenchmark {
+
+    private final Map<String, Object> redisData = new ConcurrentHashMap<>();
+
+    private MessageCodecRegistry codecRegistry;
+    private AsyncSaveConsumerV1 v1;
+    private AsyncSaveConsumerV2 v2Proxy;
+    private AsyncSaveConsumerV2 v2Raw;
+    private ChainListener v3Chain;
+    private AspectListener v3Proxy;
+    private MessageExt template;
+    private long sequence;
+
+    @Setup
+    public void setup() {
+        codecRegistry = ConsumerFixtures.codecRegistry(MessageCodecRegistry.JSON);
+        RedissonClient redissonClient = InMemoryRedisson.create(redisData);
+        UserLogWriteBehindBuffer buffer = ConsumerFixtures.discardingBuffer();
+
+        v1 = new AsyncSaveConsumerV1(buffer, redissonClient, traceIdFromKeys(codecRegistry));
+        v2Raw = new AsyncSaveConsumerV2(buffer, codecRegistry);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new AsyncSaveConsumerV2(buffer, codecRegistry));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new IdempotentAspect(ConsumerFixtures.idempotentService(redissonClient)));
+        v2Proxy = proxyFactory.getProxy();
+
+        IdempotentService idempotentService = ConsumerFixtures.idempotentService(redissonClient);
+        v3Chain = ConsumerFixtures.wire(new ChainListener(), codecRegistry, idempotentService);
+        AspectJProxyFactory v3ProxyFactory = new AspectJProxyFactory(ConsumerFixtures.wire(new AspectListener(), codecRegistry, idempotentService));
+        v3ProxyFactory.setProxyTargetClass(true);
+        v3ProxyFactory.addAspect(new IdempotentAspect(idempotentService));
+        v3Proxy = v3ProxyFactory.getProxy();
+
+        template = ConsumerFixtures.message(codecRegistry, DeserializeBenchmark.userLog(), "template");
+    }
+
+    /**
+     * 每轮迭代清空内存 Redis，避免 Key 无限增长
+     */
+    @Setup(Level.Iteration)
+    public void clearRedis() {
+        redisData.clear();
+    }
+
+    /**
+     * V1：onMessage 自行解码，再手写 SETNX
+     */
+    @Benchmark
+    public void v1Inline() {
+        v1.onMessage(nextMessage());
+    }
+
+    @Benchmark
+    public void v2AopProxy() {
+        v2Proxy.onMessage(nextMessage());
+    }
+
+    @Benchmark
+    public void v2WithoutIdempotency() {
+        v2Raw.onMessage(nextMessage());
+    }
+
+    @Benchmark
+    public void v3InterceptorChain() {
+        v3Chain.onMessage(nextMessage());
+    }
+
+    @Benchmark
+    public void v3AopProxy() {
+        v3Proxy.onMessage(nextMessage());
+    }
+
+    /**
+     * 重复消息：Key 已存在，各种方式都在 SETNX 后直接返回
+     */
+    @Benchmark
+    public void v1InlineDuplicate() {
+        template.setKeys("duplicate");
+        redisData.putIfAbsent("mq:idempotent:v1:duplicate", "1");
+        v1.onMessage(template);
+    }
+
+    @Benchmark
+    public void v2AopProxyDuplicate() {
+        template.setKeys("duplicate");
+        redisData.putIfAbsent("mq:idempotent:duplicate", "1");
+        v2Proxy.onMessage(template);
+    }
+
+    @Benchmark
+    public void v3InterceptorChainDuplicate() {
+        template.setKeys("duplicate");
+        redisData.putIfAbsent("mq:idempotent:chain:duplicate", "1");
+        v3Chain.onMessage(template);
+    }
+
+    @Benchmark
+    public void v3AopProxyDuplicate() {
+        template.setKeys("duplicate");
+        redisData.putIfAbsent("mq:idempotent:aspect:duplicate", "1");
+        v3Proxy.onMessage(template);
+    }
+
+    /**
+     * V1 按消息体里的 traceId 判重，而基准复用同一个消息体：解码后用 Keys 覆盖 traceId，让每条消息都不重复
+     */
+    private static MessageCodecRegistry traceIdFromKeys(MessageCodecRegistry codecRegistry) {
+        return new MessageCodecRegistry(ConsumerFixtures.OBJECT_MAPPER, MessageCodecRegistry.JSON) {
+            @Override
+            public <T> T decode(MessageExt messageExt, Class<T> type) throws IOException {
+                T dto = codecRegistry.decode(messageExt, type);
+                if (dto instanceof UserLogDTO userLog) {
+                    userLog.setTraceId(messageExt.getKeys());
+                }
+                return dto;
+            }
+        };
+    }
+
+    private MessageExt nextMessage() {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(template.getTopic());
+        messageExt.setBody(template.getBody());
+        messageExt.putUserProperty(MessageCodecRegistry.CODEC_HEADER, template.getUserProperty(MessageCodecRegistry.CODEC_HEADER));
+        messageExt.setKeys("trace-" + sequence++);
+        return messageExt;
+    }
+
+    /**
+     * 类上声明幂等：由基类的消费链处理
+     */
+    @RocketMQIdempotent(prefix = "mq:idempotent:chain:")
+    static class ChainListener extends BaseRocketMQListener<UserLogDTO> {
+
+        UserLogDTO last;
+
+        @Override
+        protected void handleMessage(UserLogDTO dto, MessageExt messageExt) {
+            last = dto;
+        }
+    }
+
+    /**
+     * 老写法：重写 onMessage 挂注解，由 IdempotentAspect 代理处理
+     */
+    static class AspectListener extends BaseRocketMQListener<UserLogDTO> {
+
+        UserLogDTO last;
+
+        @Override
+        @RocketMQIdempotent(prefix = "mq:idempotent:aspect:")
+        public void onMessage(MessageExt messageExt) {
+            super.onMessage(messageExt);
+        }
+
+        @Override
+        protected void handleMessage(UserLogDTO dto, MessageExt messageExt) {
+            last = dto;
+        }
+    }
+}
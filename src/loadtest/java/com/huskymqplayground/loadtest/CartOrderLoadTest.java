@@ -0,0 +1,234 @@
+package com.huskymqplayground.loadtest;
+
+import com.huskymqplayground.dto.CartDTO;
+import com.huskymqplayground.id.SnowflakeIdGenerator;
+import com.huskymqplayground.mq.CartRocketMQTemplate;
+import com.huskymqplayground.mq.ECommerceProducer;
+import com.huskymqplayground.mq.OrderRocketMQTemplate;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.annotation.RocketMQTransactionListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionListener;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQUtil;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * /transactional-cart 全链路压测：CartTransactionListener -> CartConsumer -> ECommerceProducer#sendTransactionalOrder
+ * -> OrderTransactionListener -> OrderConsumerV3，每个阶段都是生产代码，只有 Broker / Redis / MySQL 是进程内替身
+ * <p>
+ * 开环压测：按固定速率发起请求，端到端耗时从“计划发出时刻”算到 OrderConsumerV3 消费成功，发送线程排队也计入
+ * 参数（--key=value，也可覆盖任意 Spring 属性，如 --husky.mq.codec.producer=smile）：
+ * rates 逗号分隔的每秒请求数，每个速率跑一轮；duration-seconds 每轮时长；senders 发送线程数（对应 Tomcat 请求线程池）；
+ * db-latency-millis 每次提交模拟的 MySQL I/O 等待；unknown-ratio 用户名为 unknown 的比例（两段本地事务都返回 UNKNOW，走回查）；rollback-ratio 用户名为 rollback 的比例（订单事务回滚）；
+ * drain-timeout-seconds 每轮结束后等待在途链路完成的上限；queues / check-interval-millis / check-max / retry-delay-millis / broker-latency-millis 见 StandInBroker
+ * 加 --spring.threads.virtual.enabled=true 后发送端改为每个请求一个虚拟线程（对应 Tomcat 开启虚拟线程），并发消费也换成虚拟线程
+ * 加 --husky.mq.outbox.enabled=true 后两段本地事务改写发件箱、由 OutboxRelay 投递；unknown / rollback 场景只对半消息链路有效，此时应设为 0
+ */
+@Slf4j
+public class CartOrderLoadTest implements StandInBroker.Observer {
+
+    private static final String ORDER_TOPIC = "order-transaction-topic";
+
+    /**
+     * 连接池大小同时决定 MySqlBulkhead 的缺省许可数
+     */
+    private static final Map<String, Object> DEFAULTS = Map.of("spring.datasource.hikari.maximum-pool-size", 20);
+
+    private final ECommerceProducer eCommerceProducer;
+    private final SnowflakeIdGenerator idGenerator;
+    private final StandInBroker broker;
+    private final int senders;
+    private final int users;
+    private final double unknownRatio;
+    private final double rollbackRatio;
+    private final boolean virtualThreads;
+
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private volatile Step step;
+
+    CartOrderLoadTest(ECommerceProducer eCommerceProducer, SnowflakeIdGenerator idGenerator, StandInBroker broker, Environment environment) {
+        this.eCommerceProducer = eCommerceProducer;
+        this.idGenerator = idGenerator;
+        this.broker = broker;
+        this.senders = environment.getProperty("senders", Integer.class, 32);
+        this.users = environment.getProperty("users", Integer.class, 1000);
+        this.unknownRatio = environment.getProperty("unknown-ratio", Double.class, 0.01);
+        this.rollbackRatio = environment.getProperty("rollback-ratio", Double.class, 0.01);
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+            context.getEnvironment().getPropertySources().addLast(new MapPropertySource("loadtestDefaults", DEFAULTS));
+            context.register(LoadTestConfiguration.class);
+            context.refresh();
+
+            StandInBroker broker = context.getBean(StandInBroker.class);
+            registerListeners(context, broker);
+
+            Environment environment = context.getEnvironment();
+            CartOrderLoadTest loadTest = new CartOrderLoadTest(context.getBean(ECommerceProducer.class),
+                    context.getBean(SnowflakeIdGenerator.class), broker, environment);
+            broker.setObserver(loadTest);
+
+            int[] rates = Arrays.stream(environment.getProperty("rates", "200,1000").split(","))
+                    .map(String::strip).mapToInt(Integer::parseInt).toArray();
+            long durationSeconds = environment.getProperty("duration-seconds", Long.class, 20L);
+            long drainTimeoutSeconds = environment.getProperty("drain-timeout-seconds", Long.class, 30L);
+            for (int rate : rates) {
+                loadTest.run(rate, durationSeconds, drainTimeoutSeconds);
+            }
+        }
+    }
+
+    /**
+     * 对应 RocketMQ Starter 的两处注册：事务监听器按 rocketMQTemplateBeanName 挂到模板，消息监听器按注解建消费容器
+     */
+    @SuppressWarnings("unchecked")
+    private static void registerListeners(AnnotationConfigApplicationContext context, StandInBroker broker) {
+        context.getBeansWithAnnotation(RocketMQTransactionListener.class).forEach((name, bean) -> {
+            RocketMQTransactionListener annotation = AnnotationUtils.findAnnotation(AopUtils.getTargetClass(bean), RocketMQTransactionListener.class);
+            Class<? extends RocketMQTemplate> templateType = templateTypeOf(annotation.rocketMQTemplateBeanName());
+            broker.registerTransactionListener(templateType, RocketMQUtil.convert((RocketMQLocalTransactionListener) bean));
+        });
+        context.getBeansWithAnnotation(RocketMQMessageListener.class).forEach((name, bean) ->
+                broker.subscribe(AopUtils.getTargetClass(bean), (RocketMQListener<MessageExt>) bean));
+    }
+
+    private static Class<? extends RocketMQTemplate> templateTypeOf(String beanName) {
+        return switch (beanName) {
+            case "cartRocketMQTemplate" -> CartRocketMQTemplate.class;
+            case "orderRocketMQTemplate" -> OrderRocketMQTemplate.class;
+            default -> throw new IllegalArgumentException("Unknown transaction template: " + beanName);
+        };
+    }
+
+    void run(int rate, long durationSeconds, long drainTimeoutSeconds) throws InterruptedException {
+        Step current = new Step();
+        step = current;
+        long total = rate * durationSeconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        log.info("[LoadTest] Step start: rate={}/s, duration={}s, requests={}, threads={}",
+                rate, durationSeconds, total, virtualThreads ? "virtual" : "platform");
+
+        ResourceSampler resources = new ResourceSampler();
+        ExecutorService sendExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("loadtest-sender-", 1).factory())
+                : Executors.newFixedThreadPool(senders);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * intervalNanos;
+            long waitNanos = intended - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            sendExecutor.execute(() -> send(current, intended));
+        }
+        sendExecutor.shutdown();
+        sendExecutor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS);
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+        while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        long incomplete = pending.size();
+        pending.clear();
+        resources.close();
+
+        report(rate, total, incomplete, start, current, broker.resetStats());
+        log.info("[LoadTest] resources {}", resources.describe());
+    }
+
+    private void send(Step current, long intended) {
+        // 与 DemoController 一致
+        String traceId = idGenerator.nextTraceId();
+        CartDTO cartDTO = new CartDTO(traceId, nextUsername(), "item-" + ThreadLocalRandom.current().nextInt(50), 1);
+        pending.put(traceId, intended);
+        try {
+            eCommerceProducer.sendTransactionalCart(cartDTO);
+        } catch (Exception e) {
+            if (pending.remove(traceId) != null) {
+                current.sendFailures.increment();
+            }
+            log.warn("[LoadTest] Send failed. TraceId: {}", traceId, e);
+        }
+    }
+
+    private String nextUsername() {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < unknownRatio) {
+            return "unknown";
+        }
+        if (roll < unknownRatio + rollbackRatio) {
+            return "rollback";
+        }
+        return "user-" + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    @Override
+    public void onConsumed(String topic, String consumerGroup, MessageExt messageExt) {
+        if (!ORDER_TOPIC.equals(topic)) {
+            return;
+        }
+        Long intended = pending.remove(messageExt.getKeys());
+        if (intended != null) {
+            long now = System.nanoTime();
+            Step current = step;
+            current.endToEnd.record(now - intended, TimeUnit.NANOSECONDS);
+            current.completed.increment();
+            current.lastCompletedNanos.accumulateAndGet(now, Math::max);
+        }
+    }
+
+    @Override
+    public void onDropped(String topic, Message message) {
+        if (pending.remove(message.getKeys()) != null) {
+            step.aborted.increment();
+        }
+    }
+
+    private void report(int rate, long total, long incomplete, long start, Step current, Map<String, StageStats> stages) {
+        long completed = current.completed.sum();
+        long elapsedNanos = Math.max(current.lastCompletedNanos.get() - start, 1);
+        log.info("[LoadTest] ==== rate={}/s requests={} completed={} aborted={} sendFailures={} incomplete={}",
+                rate, total, completed, current.aborted.sum(), current.sendFailures.sum(), incomplete);
+        log.info("[LoadTest] throughput={} chains/s, end-to-end {}",
+                String.format("%.1f", completed * 1e9 / elapsedNanos), StageStats.percentiles(current.endToEnd));
+        stages.forEach((topic, stats) -> log.info("[LoadTest] {}", stats.describe(topic)));
+    }
+
+    /**
+     * 一轮压测的链路级统计
+     */
+    private static final class Step {
+
+        final Timer endToEnd = StageStats.percentileTimer("chain.end-to-end");
+        final LongAdder completed = new LongAdder();
+        final LongAdder aborted = new LongAdder();
+        final LongAdder sendFailures = new LongAdder();
+        final AtomicLong lastCompletedNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,48 @@
+package com.huskymqplayground.loadtest;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 给 H2 内存库补上 MySQL 的 I/O 等待：每次提交前停顿 latencyMillis（网络往返 + 刷盘），期间连接照常被占用
+ * 没有这段等待时线程几乎不阻塞，平台线程与虚拟线程的差别体现不出来
+ */
+class CommitLatencyDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final long latencyNanos;
+
+    CommitLatencyDataSource(DataSource targetDataSource, long latencyMillis) {
+        super(targetDataSource);
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = obtainTargetDataSource().getConnection();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("commit".equals(method.getName())) {
+                        LockSupport.parkNanos(latencyNanos);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.huskymqplayground.loadtest;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.aspect.IdempotentAspect;
+import com.huskymqplayground.bulkhead.BulkheadDataSourcePostProcessor;
+import com.huskymqplayground.bulkhead.MySqlBulkhead;
+import com.huskymqplayground.bulkhead.ReadBulkhead;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import com.huskymqplayground.catalog.ProductPriceCatalog;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.id.SnowflakeIdGenerator;
+import com.huskymqplayground.id.WorkerIdLease;
+import com.huskymqplayground.idempotent.IdempotentNearCache;
+import com.huskymqplayground.idempotent.IdempotentService;
+import com.huskymqplayground.idempotent.QueueOffsetWatermarkStore;
+import com.huskymqplayground.idempotent.RedisBucketIdempotentStore;
+import com.huskymqplayground.idempotent.RedisHashBucketIdempotentStore;
+import com.huskymqplayground.metrics.ConsumerMetricTags;
+import com.huskymqplayground.mq.CartConsumer;
+import com.huskymqplayground.mq.CartRocketMQTemplate;
+import com.huskymqplayground.mq.CartTransactionCheckResolver;
+import com.huskymqplayground.mq.CartTransactionListener;
+import com.huskymqplayground.mq.ECommerceProducer;
+import com.huskymqplayground.mq.OrderConsumerV3;
+import com.huskymqplayground.mq.OrderRocketMQTemplate;
+import com.huskymqplayground.mq.OrderTransactionCheckResolver;
+import com.huskymqplayground.mq.OrderTransactionListener;
+import com.huskymqplayground.outbox.OutboxMessageFactory;
+import com.huskymqplayground.outbox.OutboxRelay;
+import com.huskymqplayground.query.QueryService;
+import com.huskymqplayground.query.ReadThroughCache;
+import com.huskymqplayground.service.CartAddCoalescer;
+import com.huskymqplayground.service.CartService;
+import com.huskymqplayground.service.OrderService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.TransactionSendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.mybatis.spring.annotation.MapperScan;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.messaging.Message;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import redis.embedded.RedisServer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * 压测用的精简容器：不走 Spring Boot 自动配置，只装配 Cart -> Order 链路上的生产代码
+ * MySQL 换成 H2（MySQL 模式，建表沿用 sql/schema.sql），Redis 换成 embedded-redis 拉起的本机 redis-server，两个事务模板与发件箱投递用的默认模板转发到 StandInBroker
+ * --spring.threads.virtual.enabled=true 时并发消费与发送端（对应 Tomcat 请求线程）改用虚拟线程，--db-latency-millis 给每次提交加上 MySQL 的 I/O 等待
+ */
+@Configuration
+@EnableTransactionManagement
+@EnableAspectJAutoProxy(proxyTargetClass = true)
+@MapperScan("com.huskymqplayground.mapper")
+@Import({
+        MessageCodecRegistry.class, ConsumerMetricTags.class, WorkerIdLease.class, SnowflakeIdGenerator.class,
+        MySqlBulkhead.class, RedisBulkhead.class, ReadBulkhead.class, BulkheadDataSourcePostProcessor.class,
+        IdempotentNearCache.class, QueueOffsetWatermarkStore.class, RedisBucketIdempotentStore.class,
+        RedisHashBucketIdempotentStore.class, IdempotentService.class, IdempotentAspect.class, ProductPriceCatalog.class,
+        CartService.class, CartAddCoalescer.class, OrderService.class, ECommerceProducer.class,
+        OutboxMessageFactory.class, OutboxRelay.class, ReadThroughCache.class, QueryService.class,
+        CartTransactionCheckResolver.class, OrderTransactionCheckResolver.class,
+        CartTransactionListener.class, OrderTransactionListener.class, CartConsumer.class, OrderConsumerV3.class
+})
+public class LoadTestConfiguration {
+
+    /**
+     * schema.sql 中只有 MySQL 认识的库级语句，建表前跳过
+     */
+    private static final Pattern MYSQL_ONLY_STATEMENT = Pattern.compile("^(CREATE\\s+DATABASE|USE)\\s", Pattern.CASE_INSENSITIVE);
+
+    @Bean
+    public ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean(destroyMethod = "close")
+    public DataSource dataSource(@Value("${spring.datasource.hikari.maximum-pool-size}") int poolSize,
+                                 @Value("${db-latency-millis:0}") long latencyMillis) throws SQLException, IOException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:huskymqpg;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setMaximumPoolSize(poolSize);
+        HikariDataSource dataSource = new HikariDataSource(config);
+        createTables(dataSource);
+        return latencyMillis > 0 ? new CommitLatencyDataSource(dataSource, latencyMillis) : dataSource;
+    }
+
+    @Bean
+    public SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+        MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        factoryBean.setConfiguration(configuration);
+        return factoryBean.getObject();
+    }
+
+    @Bean
+    public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    /**
+     * 随机空闲端口，不落盘
+     */
+    @Bean(destroyMethod = "stop")
+    public RedisServer redisServer() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RedisServer redisServer = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redisServer.start();
+        return redisServer;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public RedissonClient redissonClient(RedisServer redisServer) {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + redisServer.ports().get(0));
+        return Redisson.create(config);
+    }
+
+    @Bean
+    public StandInBroker standInBroker(@Value("${queues:4}") int queues,
+                                       @Value("${check-interval-millis:1000}") long checkIntervalMillis,
+                                       @Value("${check-max:15}") int checkMax,
+                                       @Value("${retry-delay-millis:1000}") long retryDelayMillis,
+                                       @Value("${husky.mq.consumer.virtual-threads.concurrency:256}") int virtualConcurrency,
+                                       @Value("${broker-latency-millis:0}") long brokerLatencyMillis,
+                                       Environment environment) {
+        return new StandInBroker(queues, checkIntervalMillis, checkMax, retryDelayMillis,
+                Threading.VIRTUAL.isActive(environment) ? virtualConcurrency : 0, brokerLatencyMillis);
+    }
+
+    @Bean
+    public CartRocketMQTemplate cartRocketMQTemplate(StandInBroker broker) {
+        return new CartRocketMQTemplate() {
+            @Override
+            public TransactionSendResult sendMessageInTransaction(String destination, Message<?> message, Object arg) {
+                return broker.sendMessageInTransaction(CartRocketMQTemplate.class, this, destination, message, arg);
+            }
+        };
+    }
+
+    @Bean
+    public OrderRocketMQTemplate orderRocketMQTemplate(StandInBroker broker) {
+        return new OrderRocketMQTemplate() {
+            @Override
+            public TransactionSendResult sendMessageInTransaction(String destination, Message<?> message, Object arg) {
+                return broker.sendMessageInTransaction(OrderRocketMQTemplate.class, this, destination, message, arg);
+            }
+        };
+    }
+
+    /**
+     * --husky.mq.outbox.enabled=true 时 OutboxRelay 经默认模板批量顺序发送
+     */
+    @Bean
+    public RocketMQTemplate rocketMQTemplate(StandInBroker broker) {
+        return new RocketMQTemplate() {
+            @Override
+            public <T extends Message> SendResult syncSendOrderly(String destination, Collection<T> messages, String hashKey, long timeout) {
+                return broker.syncSendOrderly(this, destination, messages, hashKey);
+            }
+        };
+    }
+
+    private static void createTables(DataSource dataSource) throws SQLException, IOException {
+        String script;
+        try (InputStream in = new ClassPathResource("sql/schema.sql").getInputStream()) {
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : script.split(";")) {
+                String trimmed = sql.strip();
+                if (!trimmed.isEmpty() && !MYSQL_ONLY_STATEMENT.matcher(trimmed).find()) {
+                    statement.execute(trimmed);
+                }
+            }
+        }
+    }
+}
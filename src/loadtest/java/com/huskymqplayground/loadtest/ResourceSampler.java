@@ -0,0 +1,67 @@
+package com.huskymqplayground.loadtest;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一轮压测期间的进程资源：平台线程峰值（ThreadMXBean 不统计虚拟线程）、堆占用峰值（按 50ms 采样）、GC 次数与耗时、进程 CPU 时间
+ */
+class ResourceSampler implements AutoCloseable {
+
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final OperatingSystemMXBean os = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+    private final AtomicLong maxHeapBytes = new AtomicLong();
+    private final long gcCountAtStart;
+    private final long gcMillisAtStart;
+    private final long cpuNanosAtStart;
+    private volatile long cpuNanosAtClose = -1;
+    private final Thread sampler;
+    private volatile boolean running = true;
+
+    ResourceSampler() {
+        threads.resetPeakThreadCount();
+        this.gcCountAtStart = gcCount();
+        this.gcMillisAtStart = gcMillis();
+        this.cpuNanosAtStart = os.getProcessCpuTime();
+        this.sampler = Thread.ofPlatform().daemon().name("loadtest-resource-sampler").start(this::sample);
+    }
+
+    private void sample() {
+        while (running) {
+            maxHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            LockSupport.parkNanos(SAMPLE_INTERVAL_NANOS);
+        }
+    }
+
+    String describe() {
+        long cpuNanos = (cpuNanosAtClose >= 0 ? cpuNanosAtClose : os.getProcessCpuTime()) - cpuNanosAtStart;
+        return String.format("platformThreads peak=%d | heapUsed max=%.1fMB | gc count=%d time=%dms | cpu=%dms",
+                threads.getPeakThreadCount(), maxHeapBytes.get() / 1024.0 / 1024.0,
+                gcCount() - gcCountAtStart, gcMillis() - gcMillisAtStart, TimeUnit.NANOSECONDS.toMillis(cpuNanos));
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        sampler.join();
+        cpuNanosAtClose = os.getProcessCpuTime();
+    }
+}
@@ -0,0 +1,62 @@
+package com.huskymqplayground.loadtest;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个 Topic（链路中的一个阶段）在一轮压测中的计数：半消息、提交 / 回滚、事务回查、普通发送、投递与重试
+ * latency 为半消息（发件箱模式下为普通消息）发出到消费成功的耗时，含回查等待和消费重试
+ */
+class StageStats {
+
+    final LongAdder halfMessages = new LongAdder();
+    final LongAdder committed = new LongAdder();
+    final LongAdder rolledBack = new LongAdder();
+    final LongAdder unknown = new LongAdder();
+    final LongAdder checks = new LongAdder();
+    final LongAdder checkCommitted = new LongAdder();
+    final LongAdder checkRolledBack = new LongAdder();
+    final LongAdder checkUnknown = new LongAdder();
+    final LongAdder checkAbandoned = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder consumeFailures = new LongAdder();
+    final LongAdder deadLetters = new LongAdder();
+    final Timer latency;
+
+    StageStats(String topic) {
+        this.latency = percentileTimer("stage." + topic);
+    }
+
+    String describe(String topic) {
+        return String.format("[%s] sent=%d half=%d commit=%d rollback=%d unknown=%d | checks=%d (commit=%d rollback=%d unknown=%d abandoned=%d) "
+                        + "| delivered=%d failures=%d dlq=%d | latency %s",
+                topic, sent.sum(), halfMessages.sum(), committed.sum(), rolledBack.sum(), unknown.sum(),
+                checks.sum(), checkCommitted.sum(), checkRolledBack.sum(), checkUnknown.sum(), checkAbandoned.sum(),
+                delivered.sum(), consumeFailures.sum(), deadLetters.sum(), percentiles(latency));
+    }
+
+    /**
+     * 单独的 SimpleMeterRegistry，统计窗口覆盖整轮压测，不随时间滑出
+     */
+    static Timer percentileTimer(String name) {
+        return Timer.builder(name)
+                .publishPercentiles(0.5, 0.99)
+                .distributionStatisticExpiry(Duration.ofDays(1))
+                .distributionStatisticBufferLength(1)
+                .register(new SimpleMeterRegistry());
+    }
+
+    static String percentiles(Timer timer) {
+        StringBuilder sb = new StringBuilder();
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            sb.append(String.format("p%.0f=%.2fms ", value.percentile() * 100, value.value(TimeUnit.MILLISECONDS)));
+        }
+        return sb.append(String.format("max=%.2fms", timer.max(TimeUnit.MILLISECONDS))).toString();
+    }
+}
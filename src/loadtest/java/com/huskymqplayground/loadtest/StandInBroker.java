@@ -0,0 +1,460 @@
+package com.huskymqplayground.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.client.producer.TransactionListener;
+import org.apache.rocketmq.client.producer.TransactionSendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
+import org.apache.rocketmq.spring.annotation.ExtRocketMQTemplateConfiguration;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQUtil;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 进程内的 RocketMQ 替身，只实现 Cart -> Order 链路用到的语义：
+ * 1. 事务消息：先存半消息，执行本地事务；UNKNOW 按 checkIntervalMillis 回查，超过 checkMax 次后丢弃（与 Broker 一致）
+ * 2. 普通批量顺序发送（发件箱投递用）：按 hashKey 选择队列，整批落在同一队列
+ * 3. 投递：提交后轮询选择队列；CONCURRENTLY 用线程池并发消费，失败延迟 retryDelayMillis 重投，超过 16 次进死信；
+ *    ORDERLY 每个队列一个线程串行消费，失败原地挂起 suspendCurrentQueueTimeMillis 后重试
+ * 消息体与属性的转换复用 RocketMQUtil，监听器看到的 Message / MessageExt 与真实链路一致
+ */
+@Slf4j
+public class StandInBroker implements DisposableBean {
+
+    static final String BROKER_NAME = "standin-broker";
+
+    private static final int MAX_RECONSUME_TIMES = 16;
+
+    /**
+     * 投递结果的回调，压测驱动据此统计端到端耗时
+     */
+    public interface Observer {
+
+        void onConsumed(String topic, String consumerGroup, MessageExt messageExt);
+
+        void onDropped(String topic, Message message);
+    }
+
+    private final int queueCount;
+    private final long checkIntervalMillis;
+    private final int checkMax;
+    private final long retryDelayMillis;
+    private final int virtualConcurrency;
+    private final long brokerLatencyNanos;
+
+    private final Map<String, TransactionListener> transactionListeners = new ConcurrentHashMap<>();
+    private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> queueSelectors = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong[]> queueOffsets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, daemon("standin-broker-scheduler"));
+    private final ExecutorService checkExecutor = Executors.newFixedThreadPool(4, daemon("standin-broker-check"));
+
+    private volatile Map<String, StageStats> stats = new ConcurrentHashMap<>();
+    private volatile Observer observer;
+
+    /**
+     * @param virtualConcurrency 大于 0 时并发消费按 VirtualThreadConsumerExecutors 的方式跑在虚拟线程上，取代 consumeThreadNumber
+     * @param brokerLatencyMillis 每次同步发送（半消息、批量消息）在发送线程上停顿的时长，模拟到 Broker 的往返与刷盘；endTransaction 为 oneway，不计
+     */
+    public StandInBroker(int queueCount, long checkIntervalMillis, int checkMax, long retryDelayMillis, int virtualConcurrency,
+                         long brokerLatencyMillis) {
+        this.queueCount = queueCount;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.checkMax = checkMax;
+        this.retryDelayMillis = retryDelayMillis;
+        this.virtualConcurrency = virtualConcurrency;
+        this.brokerLatencyNanos = TimeUnit.MILLISECONDS.toNanos(brokerLatencyMillis);
+    }
+
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * 换一组新的计数器并返回上一轮的，调用前应确保没有在途消息
+     */
+    public Map<String, StageStats> resetStats() {
+        Map<String, StageStats> previous = stats;
+        stats = new ConcurrentHashMap<>();
+        return previous;
+    }
+
+    /**
+     * 对应 @RocketMQTransactionListener 的注册：监听器挂在模板的生产者组上
+     */
+    public void registerTransactionListener(Class<? extends RocketMQTemplate> templateType, TransactionListener listener) {
+        transactionListeners.put(producerGroupOf(templateType), listener);
+    }
+
+    /**
+     * 对应 @RocketMQMessageListener 的监听容器，注解从监听器的目标类上读取
+     */
+    public void subscribe(Class<?> listenerClass, RocketMQListener<MessageExt> listener) {
+        RocketMQMessageListener annotation = AnnotationUtils.findAnnotation(listenerClass, RocketMQMessageListener.class);
+        if (annotation == null) {
+            throw new IllegalArgumentException(listenerClass.getName() + " is not annotated with @RocketMQMessageListener");
+        }
+        subscriptions.computeIfAbsent(annotation.topic(), topic -> new CopyOnWriteArrayList<>())
+                .add(new Subscription(annotation, listener));
+        log.info("[StandInBroker] Subscribed {} -> topic: {}, group: {}, mode: {}",
+                listenerClass.getSimpleName(), annotation.topic(), annotation.consumerGroup(), annotation.consumeMode());
+    }
+
+    /**
+     * RocketMQTemplate#sendMessageInTransaction 的替身：与真实客户端一样，在发送线程上同步执行本地事务
+     */
+    public TransactionSendResult sendMessageInTransaction(Class<? extends RocketMQTemplate> templateType, RocketMQTemplate template,
+                                                          String destination, org.springframework.messaging.Message<?> message, Object arg) {
+        String producerGroup = producerGroupOf(templateType);
+        TransactionListener listener = transactionListeners.get(producerGroup);
+        if (listener == null) {
+            throw new IllegalStateException("No transaction listener registered for producer group: " + producerGroup);
+        }
+
+        Message rocketMessage = RocketMQUtil.convertToRocketMessage(template.getMessageConverter(), template.getCharset(), destination, message);
+        MessageClientIDSetter.setUniqID(rocketMessage);
+        String msgId = MessageClientIDSetter.getUniqID(rocketMessage);
+        rocketMessage.setTransactionId(msgId);
+
+        HalfMessage half = new HalfMessage(listener, rocketMessage, msgId, System.nanoTime(), stageStats(rocketMessage.getTopic()));
+        half.stats.halfMessages.increment();
+        awaitBroker();
+
+        LocalTransactionState state;
+        try {
+            state = listener.executeLocalTransaction(rocketMessage, arg);
+        } catch (Throwable e) {
+            log.warn("[StandInBroker] Local transaction threw, treat as UNKNOW. MsgId: {}", msgId, e);
+            state = LocalTransactionState.UNKNOW;
+        }
+        endTransaction(half, state);
+
+        TransactionSendResult result = new TransactionSendResult();
+        result.setSendStatus(SendStatus.SEND_OK);
+        result.setMsgId(msgId);
+        result.setTransactionId(msgId);
+        result.setMessageQueue(new MessageQueue(rocketMessage.getTopic(), BROKER_NAME, 0));
+        result.setLocalTransactionState(state);
+        return result;
+    }
+
+    /**
+     * RocketMQTemplate#syncSendOrderly(String, Collection, String, long) 的替身：整批按 hashKey 落在同一队列，批内顺序不变
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends org.springframework.messaging.Message> SendResult syncSendOrderly(RocketMQTemplate template, String destination,
+                                                                                        Collection<T> messages, String hashKey) {
+        awaitBroker();
+        int queueId = Math.floorMod(hashKey.hashCode(), queueCount);
+        String topic = null;
+        String msgId = null;
+        for (T message : messages) {
+            Message rocketMessage = RocketMQUtil.convertToRocketMessage(template.getMessageConverter(), template.getCharset(), destination, message);
+            MessageClientIDSetter.setUniqID(rocketMessage);
+            msgId = MessageClientIDSetter.getUniqID(rocketMessage);
+            topic = rocketMessage.getTopic();
+            StageStats stageStats = stageStats(topic);
+            stageStats.sent.increment();
+            deliver(rocketMessage, msgId, queueId, System.nanoTime(), stageStats);
+        }
+
+        SendResult result = new SendResult();
+        result.setSendStatus(SendStatus.SEND_OK);
+        result.setMsgId(msgId);
+        result.setMessageQueue(new MessageQueue(topic, BROKER_NAME, queueId));
+        return result;
+    }
+
+    private void awaitBroker() {
+        if (brokerLatencyNanos > 0) {
+            LockSupport.parkNanos(brokerLatencyNanos);
+        }
+    }
+
+    private void endTransaction(HalfMessage half, LocalTransactionState state) {
+        switch (state) {
+            case COMMIT_MESSAGE -> {
+                half.stats.committed.increment();
+                deliver(half);
+            }
+            case ROLLBACK_MESSAGE -> {
+                half.stats.rolledBack.increment();
+                drop(half);
+            }
+            default -> {
+                half.stats.unknown.increment();
+                scheduleCheck(half);
+            }
+        }
+    }
+
+    private void scheduleCheck(HalfMessage half) {
+        scheduler.schedule(() -> checkExecutor.execute(() -> check(half)), checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(HalfMessage half) {
+        if (half.checkTimes >= checkMax) {
+            log.warn("[StandInBroker] Half message checked {} times, discard. MsgId: {}", half.checkTimes, half.msgId);
+            half.stats.checkAbandoned.increment();
+            drop(half);
+            return;
+        }
+        half.checkTimes++;
+        half.stats.checks.increment();
+
+        MessageExt messageExt = toMessageExt(half.message, half.msgId, 0, 0);
+        LocalTransactionState state;
+        try {
+            state = half.listener.checkLocalTransaction(messageExt);
+        } catch (Throwable e) {
+            log.warn("[StandInBroker] Transaction check threw, treat as UNKNOW. MsgId: {}", half.msgId, e);
+            state = LocalTransactionState.UNKNOW;
+        }
+
+        switch (state) {
+            case COMMIT_MESSAGE -> {
+                half.stats.checkCommitted.increment();
+                deliver(half);
+            }
+            case ROLLBACK_MESSAGE -> {
+                half.stats.checkRolledBack.increment();
+                drop(half);
+            }
+            default -> {
+                half.stats.checkUnknown.increment();
+                scheduleCheck(half);
+            }
+        }
+    }
+
+    private void deliver(HalfMessage half) {
+        String topic = half.message.getTopic();
+        int queueId = Math.floorMod(queueSelectors.computeIfAbsent(topic, t -> new AtomicInteger()).getAndIncrement(), queueCount);
+        deliver(half.message, half.msgId, queueId, half.bornNanos, half.stats);
+    }
+
+    private void deliver(Message message, String msgId, int queueId, long bornNanos, StageStats stageStats) {
+        String topic = message.getTopic();
+        long queueOffset = queueOffsets.computeIfAbsent(topic, t -> newOffsets())[queueId].getAndIncrement();
+        for (Subscription subscription : subscriptions.getOrDefault(topic, List.of())) {
+            subscription.dispatch(new Delivery(toMessageExt(message, msgId, queueId, queueOffset), bornNanos, stageStats));
+        }
+    }
+
+    private void drop(HalfMessage half) {
+        Observer current = observer;
+        if (current != null) {
+            current.onDropped(half.message.getTopic(), half.message);
+        }
+    }
+
+    private MessageExt toMessageExt(Message message, String msgId, int queueId, long queueOffset) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(message.getTopic());
+        messageExt.setFlag(message.getFlag());
+        messageExt.setBody(message.getBody());
+        MessageAccessor.setProperties(messageExt, new ConcurrentHashMap<>(message.getProperties()));
+        messageExt.setMsgId(msgId);
+        messageExt.setTransactionId(message.getTransactionId());
+        messageExt.setBrokerName(BROKER_NAME);
+        messageExt.setQueueId(queueId);
+        messageExt.setQueueOffset(queueOffset);
+        long now = System.currentTimeMillis();
+        messageExt.setBornTimestamp(now);
+        messageExt.setStoreTimestamp(now);
+        return messageExt;
+    }
+
+    private StageStats stageStats(String topic) {
+        return stats.computeIfAbsent(topic, StageStats::new);
+    }
+
+    private AtomicLong[] newOffsets() {
+        AtomicLong[] offsets = new AtomicLong[queueCount];
+        for (int i = 0; i < queueCount; i++) {
+            offsets[i] = new AtomicLong();
+        }
+        return offsets;
+    }
+
+    private static String producerGroupOf(Class<? extends RocketMQTemplate> templateType) {
+        ExtRocketMQTemplateConfiguration configuration = AnnotationUtils.findAnnotation(templateType, ExtRocketMQTemplateConfiguration.class);
+        if (configuration == null) {
+            throw new IllegalArgumentException(templateType.getName() + " is not annotated with @ExtRocketMQTemplateConfiguration");
+        }
+        return configuration.group();
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        checkExecutor.shutdownNow();
+        subscriptions.values().forEach(list -> list.forEach(Subscription::shutdown));
+    }
+
+    private static final class HalfMessage {
+
+        final TransactionListener listener;
+        final Message message;
+        final String msgId;
+        final long bornNanos;
+        final StageStats stats;
+        volatile int checkTimes;
+
+        HalfMessage(TransactionListener listener, Message message, String msgId, long bornNanos, StageStats stats) {
+            this.listener = listener;
+            this.message = message;
+            this.msgId = msgId;
+            this.bornNanos = bornNanos;
+            this.stats = stats;
+        }
+    }
+
+    private record Delivery(MessageExt messageExt, long bornNanos, StageStats stats) {
+    }
+
+    private final class Subscription {
+
+        private final String topic;
+        private final String consumerGroup;
+        private final RocketMQListener<MessageExt> listener;
+        private final long suspendMillis;
+        private final ExecutorService[] queueExecutors;
+        private final ExecutorService concurrentExecutor;
+
+        Subscription(RocketMQMessageListener annotation, RocketMQListener<MessageExt> listener) {
+            this.topic = annotation.topic();
+            this.consumerGroup = annotation.consumerGroup();
+            this.listener = listener;
+            this.suspendMillis = annotation.suspendCurrentQueueTimeMillis();
+            if (annotation.consumeMode() == ConsumeMode.ORDERLY) {
+                this.queueExecutors = new ExecutorService[queueCount];
+                for (int i = 0; i < queueCount; i++) {
+                    queueExecutors[i] = Executors.newSingleThreadExecutor(daemon(consumerGroup + "-q" + i));
+                }
+                this.concurrentExecutor = null;
+            } else {
+                this.queueExecutors = null;
+                this.concurrentExecutor = virtualConcurrency > 0
+                        ? Executors.newFixedThreadPool(virtualConcurrency, Thread.ofVirtual().name(consumerGroup + "-v", 1).factory())
+                        : Executors.newFixedThreadPool(annotation.consumeThreadNumber(), daemon(consumerGroup));
+            }
+        }
+
+        void dispatch(Delivery delivery) {
+            if (queueExecutors != null) {
+                queueExecutors[delivery.messageExt().getQueueId()].execute(() -> consumeOrderly(delivery));
+            } else {
+                concurrentExecutor.execute(() -> consumeConcurrently(delivery));
+            }
+        }
+
+        /**
+         * 顺序消费：失败后阻塞当前队列，挂起一段时间后原地重试，后面的消息一起等待
+         */
+        private void consumeOrderly(Delivery delivery) {
+            MessageExt messageExt = delivery.messageExt();
+            while (!consume(delivery)) {
+                if (messageExt.getReconsumeTimes() >= MAX_RECONSUME_TIMES) {
+                    deadLetter(delivery);
+                    return;
+                }
+                messageExt.setReconsumeTimes(messageExt.getReconsumeTimes() + 1);
+                try {
+                    Thread.sleep(suspendMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 并发消费：失败后与重试 Topic 一样延迟重投，消息带上 RETRY_TOPIC 属性
+         */
+        private void consumeConcurrently(Delivery delivery) {
+            if (consume(delivery)) {
+                return;
+            }
+            MessageExt messageExt = delivery.messageExt();
+            if (messageExt.getReconsumeTimes() >= MAX_RECONSUME_TIMES) {
+                deadLetter(delivery);
+                return;
+            }
+            messageExt.setReconsumeTimes(messageExt.getReconsumeTimes() + 1);
+            MessageAccessor.putProperty(messageExt, MessageConst.PROPERTY_RETRY_TOPIC, topic);
+            scheduler.schedule(() -> concurrentExecutor.execute(() -> consumeConcurrently(delivery)), retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private boolean consume(Delivery delivery) {
+            try {
+                listener.onMessage(delivery.messageExt());
+            } catch (Exception e) {
+                delivery.stats().consumeFailures.increment();
+                log.warn("[StandInBroker] Consume failed, group: {}, msgId: {}, reconsumeTimes: {}",
+                        consumerGroup, delivery.messageExt().getMsgId(), delivery.messageExt().getReconsumeTimes(), e);
+                return false;
+            }
+            delivery.stats().delivered.increment();
+            delivery.stats().latency.record(System.nanoTime() - delivery.bornNanos(), TimeUnit.NANOSECONDS);
+            Observer current = observer;
+            if (current != null) {
+                current.onConsumed(topic, consumerGroup, delivery.messageExt());
+            }
+            return true;
+        }
+
+        private void deadLetter(Delivery delivery) {
+            delivery.stats().deadLetters.increment();
+            log.warn("[StandInBroker] Max reconsume times reached, move to DLQ. Group: {}, msgId: {}", consumerGroup, delivery.messageExt().getMsgId());
+            Observer current = observer;
+            if (current != null) {
+                current.onDropped(topic, delivery.messageExt());
+            }
+        }
+
+        void shutdown() {
+            if (queueExecutors != null) {
+                for (ExecutorService executor : queueExecutors) {
+                    executor.shutdownNow();
+                }
+            } else {
+                concurrentExecutor.shutdownNow();
+            }
+        }
+    }
+}
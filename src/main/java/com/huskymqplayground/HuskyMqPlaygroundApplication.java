@@ -3,8 +3,10 @@ package com.huskymqplayground;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 @MapperScan("com.huskymqplayground.mapper")
 public class HuskyMqPlaygroundApplication {
 
@@ -0,0 +1,48 @@
+package com.huskymqplayground.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 开启 BaseRocketMQListener 的批量消费模式
+ * 标注在消费者类上，消息按批交给 handleBatch 处理，幂等 Key 通过一个 RBatch 管道批量认领
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RocketMQBatchConsume {
+    /**
+     * 每批最多消息条数（对应 consumeMessageBatchMaxSize）
+     */
+    int maxSize() default 32;
+
+    /**
+     * 攒批等待时间（毫秒），对应拉取间隔 pullInterval，0 表示不等待
+     */
+    long lingerMillis() default 0;
+
+    /**
+     * 顺序消费的并行通道数，仅 ORDERLY 生效，1 表示整批串行
+     * 大于 1 时按 BaseRocketMQListener#orderingKey 把一批消息分到各通道并行处理，同一顺序键始终落在同一通道内按位点顺序执行；
+     * QUEUE_OFFSET 幂等的水位按 (队列, 通道) 保存，修改通道数相当于重置水位
+     */
+    int lanes() default 1;
+
+    /**
+     * 顺序消费失败时按顺序键停车、本地重试的次数，仅 ORDERLY 生效，0 表示不停车（失败即整批挂起）
+     * 停车的范围由 BaseRocketMQListener#orderingKey 决定（默认按消息 Keys），重试耗尽后消息发往死信队列；
+     * 批次不等停车链，停车期间队列位点暂不提交，积压达到 pullThresholdForQueue 的一半时消费线程才等停车链结束
+     */
+    int parkRetries() default 0;
+
+    /**
+     * 停车重试的初始退避（毫秒），之后每次翻倍
+     */
+    long parkBackoffMillis() default 100;
+
+    /**
+     * 停车重试的最大退避（毫秒）
+     */
+    long parkMaxBackoffMillis() default 2000;
+}
@@ -1,12 +1,18 @@
 package com.huskymqplayground.annotation;
 
+import com.huskymqplayground.idempotent.IdempotentMode;
+import com.huskymqplayground.idempotent.IdempotentStoreType;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.concurrent.TimeUnit;
 
-@Target(ElementType.METHOD)
+/**
+ * 消费幂等：标注在 BaseRocketMQListener 子类上时由基类的消费链处理；标注在 onMessage 方法上时由 IdempotentAspect 处理
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface RocketMQIdempotent {
     /**
@@ -23,4 +29,37 @@ public @interface RocketMQIdempotent {
      * 时间单位
      */
     TimeUnit timeUnit() default TimeUnit.HOURS;
+
+    /**
+     * 本地近端缓存容量（条），0 表示关闭，只走 Redis
+     * 近端缓存只记录本实例已成功消费过的 Key，用于直接拦截重投，Redis 仍是首次认领的唯一依据
+     */
+    long nearCacheSize() default 0;
+
+    /**
+     * 本地近端缓存的存活时间（秒），实际生效值不会超过 expire
+     */
+    long nearCacheExpireSeconds() default 600;
+
+    /**
+     * Redis 存储方式：BUCKET 每条消息一个 Key；HASH_BUCKET 按小时分桶的 Hash，内存更省
+     */
+    IdempotentStoreType store() default IdempotentStoreType.BUCKET;
+
+    /**
+     * HASH_BUCKET 模式下每小时的分片数，使单个桶的字段数保持在 hash-max-listpack-entries 以内
+     * 默认 4096 按每小时约 50 万条估算（见 docs/idempotent-hash-bucket.md），取模的是 16 位摘要，应为 2 的幂且不超过 65536
+     */
+    int hashShards() default 4096;
+
+    /**
+     * 判重方式：KEY 按消息 Keys；QUEUE_OFFSET 按队列位点水位（仅 ORDERLY 消费，无法按位点判重的消息退回 KEY 方式）
+     */
+    IdempotentMode mode() default IdempotentMode.KEY;
+
+    /**
+     * 异步认领：认领请求发出后先反序列化，执行业务前再等待 Redis 应答，关键路径上省掉一次 Redis 往返；失败后的释放也异步执行
+     * 仅在类上标注时生效（BaseRocketMQListener 子类），方法上的注解仍同步认领
+     */
+    boolean asyncClaim() default false;
 }
@@ -0,0 +1,19 @@
+package com.huskymqplayground.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * BaseRocketMQListener 子类的单实例消费限流，标注在类上，启动时解析一次
+ * 只作用于单条消费；批量消费（@RocketMQBatchConsume）不经过消费链
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RocketMQRateLimit {
+    /**
+     * 每秒放行的消息数，支持 ${...} 占位符，解析结果小于等于 0 表示不限流
+     */
+    String permitsPerSecond();
+}
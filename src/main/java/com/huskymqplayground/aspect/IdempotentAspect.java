@@ -1,25 +1,24 @@
 package com.huskymqplayground.aspect;
 
 import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.idempotent.IdempotentClaim;
+import com.huskymqplayground.idempotent.IdempotentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.redisson.api.RBucket;
-import org.redisson.api.RedissonClient;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-
 @Slf4j
 @Aspect
 @Component
 @RequiredArgsConstructor
 public class IdempotentAspect {
 
-    private final RedissonClient redissonClient;
+    private final IdempotentService idempotentService;
 
     @Around("@annotation(idempotent)")
     public Object around(ProceedingJoinPoint joinPoint, RocketMQIdempotent idempotent) throws Throwable {
@@ -38,33 +37,32 @@ public class IdempotentAspect {
             return joinPoint.proceed();
         }
 
-        // 2. 获取 Message Key
-        String keys = messageExt.getKeys();
-        if (keys == null || keys.isEmpty()) {
-            log.warn("Message Key is empty, skipping idempotency check. MsgId: {}", messageExt.getMsgId());
-            return joinPoint.proceed();
-        }
-
-        // 3. 构建 Redis Key
-        String redisKey = idempotent.prefix() + keys;
-        RBucket<String> bucket = redissonClient.getBucket(redisKey);
+        Class<?> listenerClass = AopUtils.getTargetClass(joinPoint.getTarget());
 
-        // 4. 尝试加锁 (SETNX)
-        boolean isNew = bucket.setIfAbsent("1", Duration.of(idempotent.expire(), idempotent.timeUnit().toChronoUnit()));
+        // 2. 尝试认领：KEY 方式先查本地近端缓存，未命中再 SETNX；QUEUE_OFFSET 方式比对队列位点水位
+        String keys = messageExt.getKeys();
+        IdempotentClaim claim = idempotentService.claim(idempotent, listenerClass, messageExt);
 
-        if (!isNew) {
-            log.warn("Duplicate message detected, skip processing. Key: {}, MsgId: {}", keys, messageExt.getMsgId());
+        if (claim == null) {
+            log.warn("Duplicate message detected, skip processing. Key: {}, MsgId: {}, QueueOffset: {}",
+                    keys, messageExt.getMsgId(), messageExt.getQueueOffset());
             // 直接返回 null，视为消费成功（RocketMQ 认为只要不抛异常就是成功）
             return null;
         }
+        if (claim.isUnchecked()) {
+            log.warn("Message Key is empty, skipping idempotency check. MsgId: {}", messageExt.getMsgId());
+            return joinPoint.proceed();
+        }
 
-        // 5. 执行业务逻辑
+        // 3. 执行业务逻辑，成功后登记到近端缓存 / 推进水位
         try {
-            return joinPoint.proceed();
+            Object result = joinPoint.proceed();
+            idempotentService.complete(idempotent, claim);
+            return result;
         } catch (Throwable e) {
-            // 6. 异常处理：删除 Key 以便重试
-            log.error("Process failed, deleting idempotent key. Key: {}", keys, e);
-            bucket.delete();
+            // 4. 异常处理：删除 Key 以便重试（位点水位只在成功后推进，无需回退）
+            log.error("Process failed, releasing idempotent claim. Key: {}", keys, e);
+            idempotentService.release(idempotent, listenerClass, claim);
             throw e;
         }
     }
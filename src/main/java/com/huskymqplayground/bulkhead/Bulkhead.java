@@ -0,0 +1,122 @@
+package com.huskymqplayground.bulkhead;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 对某个下游（MySQL / Redis）的并发上限：许可数与下游连接池对齐，拿不到许可时最多等 acquireTimeout，超时抛 BulkheadFullException
+ * 平台线程下消费 / Web 线程池本身就限住了并发；换成虚拟线程后线程不再稀缺，由这里把并发挡在下游连接池之外，
+ * 等待的虚拟线程只挂起、不占载体线程，也不会在连接池里堆出大量超时
+ * maxConcurrent 小于等于 0 表示不限
+ */
+public class Bulkhead {
+
+    private static final String METRIC_PREFIX = "bulkhead";
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int maxConcurrent;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public Bulkhead(String name, int maxConcurrent, long acquireTimeoutMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+
+        this.waitTimer = Timer.builder(METRIC_PREFIX + ".wait")
+                .description("等待许可的耗时")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("等待许可超时被拒绝的次数")
+                .tag("name", name)
+                .register(meterRegistry);
+        if (permits != null) {
+            Gauge.builder(METRIC_PREFIX + ".active", permits, p -> maxConcurrent - p.availablePermits())
+                    .description("正在占用许可的调用数")
+                    .tag("name", name)
+                    .register(meterRegistry);
+            Gauge.builder(METRIC_PREFIX + ".queued", permits, Semaphore::getQueueLength)
+                    .description("等待许可的线程数")
+                    .tag("name", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 获取一个许可，必须与 {@link #release} 成对调用
+     */
+    public void acquire() {
+        if (permits == null || permits.tryAcquire()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(name, "interrupted while waiting for permit");
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new BulkheadFullException(name, "no permit within " + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + "ms");
+        }
+    }
+
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    public <T> T call(Supplier<T> action) {
+        acquire();
+        try {
+            return action.get();
+        } finally {
+            release();
+        }
+    }
+
+    public void run(Runnable action) {
+        acquire();
+        try {
+            action.run();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 异步调用：发出请求前获取许可（可能阻塞调用线程），应答后归还，在途请求数同样受限
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<? extends CompletionStage<T>> action) {
+        acquire();
+        CompletableFuture<T> future;
+        try {
+            future = action.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        return future.whenComplete((result, e) -> release());
+    }
+}
@@ -0,0 +1,81 @@
+package com.huskymqplayground.bulkhead;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 借连接前先拿 MySQL 许可，连接 close（归还连接池）时释放
+ * 容器关闭时连同被包装的连接池一起关闭
+ */
+public class BulkheadDataSource extends DelegatingDataSource implements Closeable {
+
+    private final Supplier<? extends Bulkhead> bulkhead;
+
+    /**
+     * @param bulkhead 延迟获取，避免在 DataSource 初始化阶段提前创建 MeterRegistry
+     */
+    public BulkheadDataSource(DataSource targetDataSource, Supplier<? extends Bulkhead> bulkhead) {
+        super(targetDataSource);
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return guard(() -> obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return guard(() -> obtainTargetDataSource().getConnection(username, password));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    private Connection guard(ConnectionSupplier supplier) throws SQLException {
+        Bulkhead permits = bulkhead.get();
+        permits.acquire();
+        Connection connection;
+        try {
+            connection = supplier.get();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        try {
+                            connection.close();
+                        } finally {
+                            permits.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+}
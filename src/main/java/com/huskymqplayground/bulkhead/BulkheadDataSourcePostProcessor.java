@@ -0,0 +1,29 @@
+package com.huskymqplayground.bulkhead;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+
+import javax.sql.DataSource;
+
+/**
+ * 给容器里的 DataSource 套上 MySqlBulkhead
+ */
+@Component
+public class BulkheadDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final SingletonSupplier<MySqlBulkhead> bulkhead;
+
+    public BulkheadDataSourcePostProcessor(ObjectProvider<MySqlBulkhead> bulkhead) {
+        this.bulkhead = SingletonSupplier.of(bulkhead::getObject);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+            return new BulkheadDataSource(dataSource, bulkhead);
+        }
+        return bean;
+    }
+}
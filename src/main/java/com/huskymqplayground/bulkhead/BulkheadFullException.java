@@ -0,0 +1,13 @@
+package com.huskymqplayground.bulkhead;
+
+/**
+ * 下游并发已满且等待超时
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String bulkhead, String reason) {
+        super("Bulkhead '" + bulkhead + "' is full: " + reason);
+    }
+}
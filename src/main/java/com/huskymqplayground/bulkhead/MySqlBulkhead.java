@@ -0,0 +1,18 @@
+package com.huskymqplayground.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * MySQL 并发上限：一个许可对应一个借出的连接，连接归还时释放，缺省与 Hikari 连接池大小一致
+ */
+@Component
+public class MySqlBulkhead extends Bulkhead {
+
+    public MySqlBulkhead(MeterRegistry meterRegistry,
+                         @Value("${husky.bulkhead.mysql.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+                         @Value("${husky.bulkhead.mysql.acquire-timeout-millis:1000}") long acquireTimeoutMillis) {
+        super("mysql", maxConcurrent, acquireTimeoutMillis, meterRegistry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.huskymqplayground.bulkhead;
+
+/**
+ * 舱壁许可耗尽时的处理方式
+ */
+public enum OverflowStrategy {
+
+    /**
+     * 阻塞调用方，最多等待 acquire-timeout-millis，超时抛 BulkheadFullException
+     */
+    BLOCK,
+
+    /**
+     * 不等待，立即抛 BulkheadFullException
+     */
+    FAIL_FAST,
+
+    /**
+     * 不等待，直接丢弃本次调用：返回已失败的 Future，调用方不抛异常，计入丢弃计数
+     */
+    SHED
+}
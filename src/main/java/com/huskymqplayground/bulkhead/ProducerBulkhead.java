@@ -0,0 +1,25 @@
+package com.huskymqplayground.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 生产端在途消息上限：一个许可对应一条已提交、尚未收到 Broker 应答的异步消息，应答（成功或失败）后释放
+ * Broker 变慢时挡住无限堆积的待发消息与回调；只有 BLOCK 会等待 acquire-timeout-millis，FAIL_FAST / SHED 拿不到许可立即拒绝
+ */
+@Component
+public class ProducerBulkhead extends Bulkhead {
+
+    @Getter
+    private final OverflowStrategy overflowStrategy;
+
+    public ProducerBulkhead(MeterRegistry meterRegistry,
+                            @Value("${husky.bulkhead.producer.max-concurrent:10000}") int maxConcurrent,
+                            @Value("${husky.bulkhead.producer.acquire-timeout-millis:1000}") long acquireTimeoutMillis,
+                            @Value("${husky.bulkhead.producer.overflow:BLOCK}") OverflowStrategy overflowStrategy) {
+        super("producer", maxConcurrent, overflowStrategy == OverflowStrategy.BLOCK ? acquireTimeoutMillis : 0, meterRegistry);
+        this.overflowStrategy = overflowStrategy;
+    }
+}
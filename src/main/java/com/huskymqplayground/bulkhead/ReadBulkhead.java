@@ -0,0 +1,19 @@
+package com.huskymqplayground.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 查询接口的并发上限：整次读取（缓存 + 回源）占一个许可，读流量最多占用这么多 MySQL / Redis 连接，
+ * 其余连接始终留给消费端的写入；拿不到许可很快拒绝（Web 返回 429），而不是和写入一起在连接池里排队
+ */
+@Component
+public class ReadBulkhead extends Bulkhead {
+
+    public ReadBulkhead(MeterRegistry meterRegistry,
+                        @Value("${husky.bulkhead.read.max-concurrent:4}") int maxConcurrent,
+                        @Value("${husky.bulkhead.read.acquire-timeout-millis:100}") long acquireTimeoutMillis) {
+        super("read", maxConcurrent, acquireTimeoutMillis, meterRegistry);
+    }
+}
@@ -0,0 +1,18 @@
+package com.huskymqplayground.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis 并发上限：限制同时在途的幂等认领 / 释放命令数，缺省与 Redisson 单机模式的连接池大小一致
+ */
+@Component
+public class RedisBulkhead extends Bulkhead {
+
+    public RedisBulkhead(MeterRegistry meterRegistry,
+                         @Value("${husky.bulkhead.redis.max-concurrent:64}") int maxConcurrent,
+                         @Value("${husky.bulkhead.redis.acquire-timeout-millis:1000}") long acquireTimeoutMillis) {
+        super("redis", maxConcurrent, acquireTimeoutMillis, meterRegistry);
+    }
+}
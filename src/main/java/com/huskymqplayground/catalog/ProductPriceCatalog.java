@@ -0,0 +1,190 @@
+package com.huskymqplayground.catalog;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.Product;
+import com.huskymqplayground.dto.PriceInvalidationDTO;
+import com.huskymqplayground.mapper.ProductMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品价格目录：本地近端缓存（第一级，Caffeine）-> Redis（第二级）-> product 表
+ * 本地缓存有容量上限和 TTL；改价后经广播 Topic 通知所有实例立即失效，广播丢失时最多在 TTL 内读到旧价
+ * Redis 由读路径 SETNX 回填、改价路径 SET 覆盖，读路径从库里读到的旧价不会盖掉刚写入的新价
+ * 目录中没有的商品按 fallback 价格计价，“没有”本身也会缓存，改价后同样随失效消息更新
+ */
+@Slf4j
+@Component
+public class ProductPriceCatalog {
+
+    public static final String INVALIDATION_TOPIC = "product-price-invalidation-topic";
+
+    private static final String METRIC_PREFIX = "catalog.price";
+
+    private static final String KEY_PREFIX = "husky:catalog:price:";
+
+    /**
+     * Redis 中表示目录里没有该商品的占位值
+     */
+    private static final String ABSENT = "";
+
+    private final ProductMapper productMapper;
+    private final RedissonClient redissonClient;
+    private final RedisBulkhead redisBulkhead;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final MessageCodecRegistry codecRegistry;
+    private final Duration redisTtl;
+    private final BigDecimal fallbackPrice;
+
+    private final Cache<String, Optional<BigDecimal>> nearCache;
+
+    private final Counter redisLoads;
+    private final Counter dbLoads;
+    private final Counter fallbacks;
+    private final Timer invalidationLag;
+
+    public ProductPriceCatalog(ProductMapper productMapper,
+                               RedissonClient redissonClient,
+                               RedisBulkhead redisBulkhead,
+                               RocketMQTemplate rocketMQTemplate,
+                               MessageCodecRegistry codecRegistry,
+                               MeterRegistry meterRegistry,
+                               @Value("${husky.catalog.price.near-cache-size:10000}") long nearCacheSize,
+                               @Value("${husky.catalog.price.near-cache-ttl-seconds:60}") long nearCacheTtlSeconds,
+                               @Value("${husky.catalog.price.redis-ttl-minutes:30}") long redisTtlMinutes,
+                               @Value("${husky.catalog.price.fallback:99.00}") BigDecimal fallbackPrice) {
+        this.productMapper = productMapper;
+        this.redissonClient = redissonClient;
+        this.redisBulkhead = redisBulkhead;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.codecRegistry = codecRegistry;
+        this.redisTtl = Duration.ofMinutes(redisTtlMinutes);
+        this.fallbackPrice = fallbackPrice;
+
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterWrite(Duration.ofSeconds(nearCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, METRIC_PREFIX + ".near.cache");
+
+        this.redisLoads = Counter.builder(METRIC_PREFIX + ".loads")
+                .description("近端缓存未命中时价格的来源")
+                .tag("source", "redis")
+                .register(meterRegistry);
+        this.dbLoads = Counter.builder(METRIC_PREFIX + ".loads")
+                .description("近端缓存未命中时价格的来源")
+                .tag("source", "db")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder(METRIC_PREFIX + ".fallbacks")
+                .description("目录中没有、按 fallback 价格计价的次数")
+                .register(meterRegistry);
+        this.invalidationLag = Timer.builder(METRIC_PREFIX + ".invalidation.lag")
+                .description("改价广播发出到本实例本地缓存失效的耗时，即本地旧价可见的时长")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 单价；近端缓存命中时不访问 Redis 和数据库
+     */
+    public BigDecimal priceOf(String itemName) {
+        Optional<BigDecimal> price = itemName == null ? Optional.empty() : nearCache.get(itemName, this::load);
+        if (price.isEmpty()) {
+            fallbacks.increment();
+            return fallbackPrice;
+        }
+        return price.get();
+    }
+
+    /**
+     * 改价：先写库，再覆盖 Redis，最后广播失效（本实例直接失效）
+     * Redis 写入失败时抛出，由调用方重试（幂等）；广播失败只记日志，其他实例最多在本地 TTL 后读到新价
+     */
+    public void updatePrice(String itemName, BigDecimal price) {
+        Product product = new Product();
+        product.setItemName(itemName);
+        product.setPrice(price);
+        product.setUpdateTime(LocalDateTime.now());
+        if (productMapper.update(product, Wrappers.<Product>lambdaUpdate().eq(Product::getItemName, itemName)) == 0) {
+            productMapper.insert(product);
+        }
+
+        RBucket<String> bucket = bucketOf(itemName);
+        redisBulkhead.run(() -> bucket.set(price.toPlainString(), redisTtl));
+        nearCache.invalidate(itemName);
+
+        Message<byte[]> message = codecRegistry.newMessage(new PriceInvalidationDTO(itemName, System.currentTimeMillis()))
+                .setHeader(RocketMQHeaders.KEYS, itemName)
+                .build();
+        try {
+            rocketMQTemplate.syncSend(INVALIDATION_TOPIC, message);
+        } catch (Exception e) {
+            log.warn("[PriceCatalog] Invalidation broadcast failed, other instances refresh after near cache TTL. Item: {}", itemName, e);
+        }
+        log.info("[PriceCatalog] Price updated. Item: {}, Price: {}", itemName, price);
+    }
+
+    /**
+     * 收到广播后失效本地缓存（发出广播的实例也会收到，重复失效无副作用）
+     */
+    public void invalidate(PriceInvalidationDTO invalidation) {
+        nearCache.invalidate(invalidation.getItemName());
+        if (invalidation.getPublishTime() != null) {
+            long lagMillis = System.currentTimeMillis() - invalidation.getPublishTime();
+            invalidationLag.record(Math.max(lagMillis, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 近端缓存未命中：先读 Redis，再读库并回填；Redis 不可用时直接读库
+     */
+    private Optional<BigDecimal> load(String itemName) {
+        RBucket<String> bucket = bucketOf(itemName);
+        try {
+            String cached = redisBulkhead.call(bucket::get);
+            if (cached != null) {
+                redisLoads.increment();
+                return cached.equals(ABSENT) ? Optional.empty() : Optional.of(new BigDecimal(cached));
+            }
+        } catch (Exception e) {
+            log.warn("[PriceCatalog] Redis read failed, loading from db. Item: {}", itemName, e);
+        }
+
+        Product product = productMapper.selectOne(Wrappers.<Product>lambdaQuery().eq(Product::getItemName, itemName));
+        dbLoads.increment();
+        Optional<BigDecimal> price = Optional.ofNullable(product).map(Product::getPrice);
+        try {
+            String value = price.map(BigDecimal::toPlainString).orElse(ABSENT);
+            redisBulkhead.run(() -> bucket.setIfAbsent(value, redisTtl));
+        } catch (Exception e) {
+            log.warn("[PriceCatalog] Redis backfill failed. Item: {}", itemName, e);
+        }
+        return price;
+    }
+
+    private RBucket<String> bucketOf(String itemName) {
+        return redissonClient.getBucket(KEY_PREFIX + itemName, StringCodec.INSTANCE);
+    }
+}
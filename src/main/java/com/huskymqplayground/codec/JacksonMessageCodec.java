@@ -0,0 +1,42 @@
+package com.huskymqplayground.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 Jackson 的编解码器，JSON 与 Smile 共用，只是底层 JsonFactory 不同
+ * 每个目标类型缓存一个绑定好的 ObjectReader，避免每条消息都走一遍类型解析
+ */
+public class JacksonMessageCodec implements MessageCodec {
+
+    private final String name;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    public JacksonMessageCodec(String name, ObjectMapper mapper) {
+        this.name = name;
+        this.mapper = mapper;
+        this.writer = mapper.writer();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(Object payload) throws IOException {
+        return writer.writeValueAsBytes(payload);
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> type) throws IOException {
+        return readers.computeIfAbsent(type, mapper::readerFor).readValue(body);
+    }
+}
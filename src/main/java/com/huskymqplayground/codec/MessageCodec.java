@@ -0,0 +1,19 @@
+package com.huskymqplayground.codec;
+
+import java.io.IOException;
+
+/**
+ * 消息体编解码 SPI
+ * 直接在 byte[] 上编解码，不经过中间 String；具体编码由消息头 {@link MessageCodecRegistry#CODEC_HEADER} 标识
+ */
+public interface MessageCodec {
+
+    /**
+     * 编码名称，写入消息头，如 json / smile
+     */
+    String name();
+
+    byte[] encode(Object payload) throws IOException;
+
+    <T> T decode(byte[] body, Class<T> type) throws IOException;
+}
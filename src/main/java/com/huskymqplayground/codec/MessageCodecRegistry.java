@@ -0,0 +1,108 @@
+package com.huskymqplayground.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.compression.CompressorFactory;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * 编解码器注册表
+ * 生产端按配置的编码写消息体，并在消息头 codec 中标明；消费端按消息头选择解码器，
+ * 没有该消息头的老消息一律按 JSON 解码，灰度切换期间同一 Topic 可以混跑多种编码
+ * 批量发送时客户端不压缩消息体，由生产端自行压缩并写入 compression 头，消费端解码前先按该头解压
+ */
+@Slf4j
+@Component
+public class MessageCodecRegistry {
+
+    /**
+     * 标识编码方式的消息头（RocketMQ UserProperty）
+     */
+    public static final String CODEC_HEADER = "codec";
+
+    /**
+     * 生产端自行压缩时写入的压缩算法（RocketMQ CompressionType 名称），没有该头表示未压缩
+     */
+    public static final String COMPRESSION_HEADER = "compression";
+
+    public static final String JSON = "json";
+    public static final String SMILE = "smile";
+
+    private final Map<String, MessageCodec> codecs;
+    private final MessageCodec json;
+    private final MessageCodec producerCodec;
+
+    public MessageCodecRegistry(ObjectMapper objectMapper,
+                                @Value("${husky.mq.codec.producer:json}") String producerCodecName) {
+        this.json = new JacksonMessageCodec(JSON, objectMapper);
+        MessageCodec smile = new JacksonMessageCodec(SMILE, objectMapper.copyWith(new SmileFactory()));
+        this.codecs = Map.of(JSON, json, SMILE, smile);
+
+        this.producerCodec = codecs.get(producerCodecName);
+        if (producerCodec == null) {
+            throw new IllegalArgumentException("Unknown message codec: " + producerCodecName + ", supported: " + codecs.keySet());
+        }
+        log.info("Message codec registry initialized. Producer codec: {}", producerCodecName);
+    }
+
+    /**
+     * 生产端：按配置的编码序列化，返回带 codec 头的 MessageBuilder，调用方再补 KEYS 等头
+     */
+    public MessageBuilder<byte[]> newMessage(Object payload) {
+        try {
+            return MessageBuilder.withPayload(producerCodec.encode(payload))
+                    .setHeader(CODEC_HEADER, producerCodec.name());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Message encode failed. Codec: " + producerCodec.name(), e);
+        }
+    }
+
+    /**
+     * 消费端：按 MessageExt 的 compression 属性解压，再按 codec 属性解码
+     */
+    public <T> T decode(MessageExt messageExt, Class<T> type) throws IOException {
+        byte[] body = decompress(messageExt.getUserProperty(COMPRESSION_HEADER), messageExt.getBody());
+        return codecOf(messageExt.getUserProperty(CODEC_HEADER)).decode(body, type);
+    }
+
+    /**
+     * 事务回调：按 Spring Message 头解码（payload 为 byte[]）
+     */
+    public <T> T decode(MessageHeaders headers, byte[] body, Class<T> type) throws IOException {
+        return codecOf((String) headers.get(CODEC_HEADER)).decode(body, type);
+    }
+
+    private static byte[] decompress(String compression, byte[] body) throws IOException {
+        if (compression == null) {
+            return body;
+        }
+        CompressionType type;
+        try {
+            type = CompressionType.valueOf(compression);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown message compression: " + compression, e);
+        }
+        return CompressorFactory.getCompressor(type).decompress(body);
+    }
+
+    private MessageCodec codecOf(String name) throws IOException {
+        if (name == null) {
+            return json;
+        }
+        MessageCodec codec = codecs.get(name);
+        if (codec == null) {
+            throw new IOException("Unknown message codec: " + name);
+        }
+        return codec;
+    }
+}
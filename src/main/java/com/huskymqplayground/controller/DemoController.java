@@ -1,17 +1,30 @@
 package com.huskymqplayground.controller;
 
+import com.huskymqplayground.bulkhead.BulkheadFullException;
+import com.huskymqplayground.catalog.ProductPriceCatalog;
 import com.huskymqplayground.dto.CartDTO;
 import com.huskymqplayground.dto.OrderDTO;
 import com.huskymqplayground.dto.UserLogDTO;
+import com.huskymqplayground.id.SnowflakeIdGenerator;
 import com.huskymqplayground.mq.AsyncSaveProducer;
 import com.huskymqplayground.mq.ECommerceProducer;
 import lombok.RequiredArgsConstructor;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.UUID;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
 
 @RestController
 @RequestMapping("/api/demo")
@@ -20,14 +33,20 @@ public class DemoController {
 
     private final AsyncSaveProducer asyncSaveProducer;
     private final ECommerceProducer eCommerceProducer;
+    private final SnowflakeIdGenerator idGenerator;
+    private final ProductPriceCatalog productPriceCatalog;
 
     @PostMapping("/log")
     public String sendLog(@RequestBody UserLogDTO userLogDTO) {
         // 生成 TraceId (业务 Key)
-        String traceId = UUID.randomUUID().toString();
+        String traceId = idGenerator.nextTraceId();
         userLogDTO.setTraceId(traceId);
         
-        asyncSaveProducer.sendUserLog(userLogDTO);
+        // 不等 Broker 应答；overflow=SHED 时被丢弃的消息拿到的是已失败的 Future，按舱壁拒绝返回 429
+        CompletableFuture<SendResult> future = asyncSaveProducer.sendUserLog(userLogDTO);
+        if (future.state() == Future.State.FAILED && future.exceptionNow() instanceof BulkheadFullException e) {
+            throw e;
+        }
         return "Message sent successfully. TraceId: " + traceId;
     }
 
@@ -39,28 +58,37 @@ public class DemoController {
         }
 
         StringBuilder sb = new StringBuilder();
-        // 发送 8 条顺序消息
+        List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+        // 发送 8 条顺序消息，先全部提交再统一等待，同一 Queue 的消息合并为一批发出
         for (int i = 1; i <= 8; i++) {
             UserLogDTO dto = new UserLogDTO();
             dto.setUsername(username);
             dto.setOperation(baseUserLog.getOperation() + "_Step" + i);
-            dto.setTraceId(UUID.randomUUID().toString());
+            dto.setTraceId(idGenerator.nextTraceId());
             
             // 使用 username 作为 hashKey，确保进入同一个 Queue
-            asyncSaveProducer.sendOrderedUserLog(dto, username);
+            futures.add(asyncSaveProducer.sendOrderedUserLog(dto, username));
             sb.append("Step").append(i).append(" sent (TraceId: ").append(dto.getTraceId()).append(")\n");
         }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof BulkheadFullException bulkheadFull) {
+                throw bulkheadFull;
+            }
+            throw e;
+        }
         
         return "Ordered messages sent:\n" + sb.toString();
     }
 
     @PostMapping("/transactional-order")
     public String sendTransactionalOrder(@RequestBody OrderDTO orderDTO) {
-        String traceId = UUID.randomUUID().toString();
+        String traceId = idGenerator.nextTraceId();
         orderDTO.setTraceId(traceId);
 
         if (orderDTO.getOrderNo() == null || orderDTO.getOrderNo().isEmpty()) {
-            orderDTO.setOrderNo("ORD-" + UUID.randomUUID());
+            orderDTO.setOrderNo(idGenerator.nextOrderNo());
         }
 
         // 发送订单事务消息（Half Message），本地事务在 Listener 中执行
@@ -72,7 +100,7 @@ public class DemoController {
 
     @PostMapping("/transactional-cart")
     public String sendTransactionalCart(@RequestBody CartDTO cartDTO) {
-        String traceId = UUID.randomUUID().toString();
+        String traceId = idGenerator.nextTraceId();
         cartDTO.setTraceId(traceId);
 
         // 发送购物车事务消息
@@ -81,4 +109,21 @@ public class DemoController {
         return "Transactional cart message sent. TraceId: " + traceId +
                ". This will trigger: Cart Tx -> Cart Consumer -> Order Tx -> Order Consumer.";
     }
+
+    /**
+     * 改价：写库并覆盖 Redis 后广播失效，所有实例的 CartConsumer 随即按新价计价
+     */
+    @PostMapping("/product-price")
+    public String updateProductPrice(@RequestParam String itemName, @RequestParam BigDecimal price) {
+        productPriceCatalog.updatePrice(itemName, price);
+        return "Price updated. Item: " + itemName + ", Price: " + price;
+    }
+
+    /**
+     * 生产端在途消息或下游连接已满（舱壁拒绝）时返回 429，由调用方退避重试，而不是在服务端无限排队
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<String> onBulkheadFull(BulkheadFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
 }
@@ -0,0 +1,55 @@
+package com.huskymqplayground.controller;
+
+import com.huskymqplayground.bulkhead.BulkheadFullException;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.domain.UserLog;
+import com.huskymqplayground.dto.KeysetPage;
+import com.huskymqplayground.query.QueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 读回 DemoController 写入的数据；列表接口按键集分页，下一页带上一页返回的 nextCursor
+ */
+@RestController
+@RequestMapping("/api/query")
+@RequiredArgsConstructor
+public class QueryController {
+
+    private final QueryService queryService;
+
+    @GetMapping("/orders")
+    public KeysetPage<PurchaseOrder> ordersByBuyer(@RequestParam String buyer,
+                                                   @RequestParam(required = false) Long cursor,
+                                                   @RequestParam(defaultValue = "20") int limit) {
+        return queryService.ordersByBuyer(buyer, cursor, limit);
+    }
+
+    @GetMapping("/orders/{orderNo}")
+    public ResponseEntity<PurchaseOrder> orderByNo(@PathVariable String orderNo) {
+        PurchaseOrder order = queryService.orderByNo(orderNo);
+        return order == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+    }
+
+    @GetMapping("/user-logs")
+    public KeysetPage<UserLog> userLogsByUsername(@RequestParam String username,
+                                                  @RequestParam(required = false) Long cursor,
+                                                  @RequestParam(defaultValue = "20") int limit) {
+        return queryService.userLogsByUsername(username, cursor, limit);
+    }
+
+    /**
+     * 读舱壁已满时返回 429，读流量不排队等待写入用的连接
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<String> onBulkheadFull(BulkheadFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
+}
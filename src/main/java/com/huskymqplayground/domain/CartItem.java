@@ -15,5 +15,10 @@ public class CartItem {
     private String username;
     private String itemName;
     private Integer quantity;
+    /**
+     * RocketMQ 事务 ID，仅 TxLogMode.INLINE 首次加购（插入该行）时写入，之后的加购不覆盖
+     */
+    private String txId;
     private LocalDateTime createTime;
+    private LocalDateTime updateTime;
 }
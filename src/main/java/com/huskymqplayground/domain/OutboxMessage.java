@@ -0,0 +1,30 @@
+package com.huskymqplayground.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 事务发件箱：与业务行在同一个本地事务中写入，由 OutboxRelay 按分片投递后删除
+ */
+@Data
+@TableName("outbox_message")
+public class OutboxMessage {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    /**
+     * 按 messageKeys 哈希得到的分片，同一 Key 的消息由同一个投递线程按 id 顺序发出
+     */
+    private Integer shard;
+    /**
+     * 投递目标，格式同 RocketMQTemplate 的 destination（topic:tag）
+     */
+    private String topic;
+    private String messageKeys;
+    private String codec;
+    private byte[] body;
+    private LocalDateTime createTime;
+}
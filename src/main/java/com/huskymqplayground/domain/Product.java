@@ -0,0 +1,19 @@
+package com.huskymqplayground.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("product")
+public class Product {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private String itemName;
+    private BigDecimal price;
+    private LocalDateTime updateTime;
+}
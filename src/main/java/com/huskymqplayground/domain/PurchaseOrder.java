@@ -18,5 +18,9 @@ public class PurchaseOrder {
     private String itemName;
     private Integer quantity;
     private BigDecimal amount;
+    /**
+     * RocketMQ 事务 ID，仅 TxLogMode.INLINE 写入
+     */
+    private String txId;
     private LocalDateTime createTime;
 }
@@ -0,0 +1,31 @@
+package com.huskymqplayground.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集分页（Seek）的一页：下一页带上 nextCursor（本页最后一行的主键）继续查 id < cursor，为 null 表示没有下一页
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KeysetPage<T> {
+    private List<T> items;
+    private Long nextCursor;
+
+    /**
+     * @param rows 按主键倒序、多查了一行（limit + 1）的结果，多出的那一行只用来判断是否还有下一页
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int limit, Function<T, Long> idOf) {
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new KeysetPage<>(items, idOf.apply(items.get(limit - 1)));
+    }
+}
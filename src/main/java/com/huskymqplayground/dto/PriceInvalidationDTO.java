@@ -0,0 +1,18 @@
+package com.huskymqplayground.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PriceInvalidationDTO implements Serializable {
+    private String itemName;
+    /**
+     * 发布失效消息时的毫秒时间戳，消费端据此统计失效延迟
+     */
+    private Long publishTime;
+}
@@ -0,0 +1,85 @@
+package com.huskymqplayground.id;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Snowflake 风格的 64 位 ID：1 位符号 + 41 位毫秒时间戳（自 EPOCH 起，约 69 年）+ 10 位机器号 + 12 位序列号
+ * 时间戳与序列号打包在一个 AtomicLong 中，发号只做一次 CAS，不加锁；同一毫秒内序列号用尽时进位到下一毫秒（借用未来时间），
+ * 时钟回拨时沿用上次的逻辑时间继续递增，保证单实例内严格递增、跨实例按时间大致有序，写入 B+ 树索引时总是追加在右侧
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SnowflakeIdGenerator {
+
+    /**
+     * 2025-01-01T00:00:00Z，确定后不可修改，否则与已发出的 ID 重叠
+     */
+    static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    static final int SEQUENCE_BITS = 12;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WorkerIdLease.WORKER_ID_BITS;
+
+    /**
+     * 逻辑时间最多领先系统时钟的毫秒数，超过后（持续高于 4096/ms 的发号，或大幅时钟回拨）等待时钟追上
+     * 租约在 Redis 过期前至少提前这么久停止发号，释放机器号时租约至少再保留这么久，见 {@link WorkerIdLease}
+     */
+    static final long MAX_BORROW_MILLIS = 1000;
+
+    private final WorkerIdLease workerIdLease;
+
+    /**
+     * 高位为相对 EPOCH 的逻辑毫秒，低 SEQUENCE_BITS 位为序列号；序列号溢出时自然进位到毫秒
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public long nextId() {
+        long workerId = workerIdLease.workerId();
+        boolean waiting = false;
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > current >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : current + 1;
+            long borrowed = (next >>> SEQUENCE_BITS) - now;
+            if (borrowed > MAX_BORROW_MILLIS) {
+                if (!waiting) {
+                    log.warn("[SnowflakeId] Logical clock {}ms ahead of system clock, waiting.", borrowed);
+                    waiting = true;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                // 等待期间租约可能失效或换了机器号，发号前重新确认
+                workerId = workerIdLease.workerId();
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+                        | workerId << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 订单号：ORD- 加十进制 ID，位数相同期间字典序与数值序一致
+     */
+    public String nextOrderNo() {
+        return "ORD-" + nextId();
+    }
+
+    /**
+     * TraceId（同时作为消息 Keys）
+     */
+    public String nextTraceId() {
+        return Long.toString(nextId());
+    }
+}
@@ -0,0 +1,153 @@
+package com.huskymqplayground.id;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snowflake 机器号租约：启动时在 Redis 中抢占 {@code husky:id:worker:<n>}（SET NX PX），每 ttl / 3 续期一次
+ * 续期发现租约已被他人占用时重新抢占一个机器号；连续续期失败时，租约在 Redis 过期前 MAX_BORROW_MILLIS + EXPIRY_MARGIN_MILLIS 视为失效，
+ * 发号直接失败：已发出的 ID 最多领先时钟 MAX_BORROW_MILLIS，都早于接手该机器号的实例能用到的时间戳，不会重复
+ */
+@Slf4j
+@Component
+public class WorkerIdLease {
+
+    static final int WORKER_ID_BITS = 10;
+
+    static final int MAX_WORKERS = 1 << WORKER_ID_BITS;
+
+    private static final String KEY_PREFIX = "husky:id:worker:";
+
+    /**
+     * 本地计时与 Redis 过期计时之间的误差余量
+     */
+    static final long EXPIRY_MARGIN_MILLIS = 100;
+
+    /**
+     * KEYS[1]: 机器号；ARGV[1]: 持有者；ARGV[2]: 租期毫秒数。仍由自己持有时续期并返回 1，否则返回 0
+     */
+    private static final String RENEW_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0";
+
+    /**
+     * KEYS[1]: 机器号；ARGV[1]: 持有者；ARGV[2]: 剩余保留毫秒数。只缩短自己持有的租约
+     */
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0";
+
+    private final RedissonClient redissonClient;
+    private final long ttlMillis;
+    private final String owner;
+    private final ScheduledExecutorService renewer;
+
+    private volatile int workerId;
+    private volatile long validUntilMillis;
+
+    public WorkerIdLease(RedissonClient redissonClient,
+                         @Value("${husky.id.worker-lease-ttl-seconds:300}") long ttlSeconds) {
+        this.redissonClient = redissonClient;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+        long renewMillis = Math.max(ttlMillis / 3, 1);
+        if (ttlMillis - SnowflakeIdGenerator.MAX_BORROW_MILLIS - EXPIRY_MARGIN_MILLIS <= renewMillis) {
+            throw new IllegalStateException("husky.id.worker-lease-ttl-seconds too short: the lease would lapse before its first renewal");
+        }
+        acquire();
+
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "id-worker-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.renewer.scheduleWithFixedDelay(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 当前持有的机器号；租约已失效时抛出 IllegalStateException
+     */
+    public int workerId() {
+        if (System.currentTimeMillis() >= validUntilMillis) {
+            throw new IllegalStateException("Worker id lease expired: " + workerId);
+        }
+        return workerId;
+    }
+
+    /**
+     * 从随机位置开始依次尝试，多个实例同时启动时不会都挤在 0 号上
+     */
+    private void acquire() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_WORKERS);
+        for (int i = 0; i < MAX_WORKERS; i++) {
+            int candidate = (start + i) % MAX_WORKERS;
+            long requestedAt = System.currentTimeMillis();
+            if (redissonClient.getBucket(KEY_PREFIX + candidate, StringCodec.INSTANCE)
+                    .setIfAbsent(owner, Duration.ofMillis(ttlMillis))) {
+                this.workerId = candidate;
+                this.validUntilMillis = validUntil(requestedAt);
+                log.info("[IdWorkerLease] Acquired worker id {}. Owner: {}", candidate, owner);
+                return;
+            }
+        }
+        throw new IllegalStateException("No free worker id among " + MAX_WORKERS + " slots");
+    }
+
+    /**
+     * 以发出 SET / PEXPIRE 之前的时间起算，Redis 端的过期只会更晚；提前 MAX_BORROW_MILLIS 停止发号，
+     * 借用的未来时间戳在租约过期、他人接手之前就已经过去
+     */
+    private long validUntil(long requestedAt) {
+        return requestedAt + ttlMillis - SnowflakeIdGenerator.MAX_BORROW_MILLIS - EXPIRY_MARGIN_MILLIS;
+    }
+
+    private void renew() {
+        try {
+            long requestedAt = System.currentTimeMillis();
+            Long renewed = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                    RENEW_SCRIPT, RScript.ReturnType.INTEGER, List.of(KEY_PREFIX + workerId),
+                    owner, Long.toString(ttlMillis));
+            if (renewed != null && renewed == 1) {
+                validUntilMillis = validUntil(requestedAt);
+                return;
+            }
+            // 租约过期后被其他实例占用：换一个机器号，之前发出的 ID 仍带旧机器号，不会与新号段冲突
+            log.warn("[IdWorkerLease] Worker id {} lost, acquiring a new one.", workerId);
+            acquire();
+        } catch (Exception e) {
+            log.warn("[IdWorkerLease] Renew failed, lease valid for another {}ms. Worker id: {}",
+                    Math.max(validUntilMillis - System.currentTimeMillis(), 0), workerId, e);
+        }
+    }
+
+    /**
+     * 不直接删除租约：发号器的逻辑时间最多领先系统时钟 MAX_BORROW_MILLIS，已发出的 ID 可能带着未来的时间戳，
+     * 租约缩短到这段时间之后才过期，接手该机器号的实例不会生成相同的 ID；此后本实例不再发号
+     */
+    @PreDestroy
+    public void release() {
+        renewer.shutdownNow();
+        validUntilMillis = 0;
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                    RELEASE_SCRIPT, RScript.ReturnType.INTEGER, List.of(KEY_PREFIX + workerId),
+                    owner, Long.toString(SnowflakeIdGenerator.MAX_BORROW_MILLIS + 1));
+        } catch (Exception e) {
+            log.warn("[IdWorkerLease] Release failed, worker id {} will expire in {}ms", workerId, ttlMillis, e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.huskymqplayground.idempotent;
+
+/**
+ * 一次认领的凭证，业务成功后 complete、失败后 release 都凭它定位要操作的标记
+ * @param redisKey KEY 方式下的幂等 Key
+ * @param watermark QUEUE_OFFSET 方式下认领的队列位点
+ * @param markerKey QUEUE_OFFSET 方式下消息的幂等 Key（没有 Keys 时为 null），停车重试中乱序完成时写入标记，供重投判重
+ */
+public record IdempotentClaim(String redisKey, QueueOffsetWatermarkStore.Position watermark, String markerKey) {
+
+    /**
+     * 消息既没有 Keys 也不能按位点判重，跳过幂等校验
+     */
+    public static final IdempotentClaim UNCHECKED = new IdempotentClaim(null, null, null);
+
+    static IdempotentClaim ofKey(String redisKey) {
+        return new IdempotentClaim(redisKey, null, null);
+    }
+
+    static IdempotentClaim ofWatermark(QueueOffsetWatermarkStore.Position watermark, String markerKey) {
+        return new IdempotentClaim(null, watermark, markerKey);
+    }
+
+    public boolean isUnchecked() {
+        return redisKey == null && watermark == null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.huskymqplayground.idempotent;
+
+/**
+ * 幂等判重方式
+ */
+public enum IdempotentMode {
+    /**
+     * 按消息 Keys 判重，每条消息在 Redis 中留一个标记，适用于任何消费模式
+     */
+    KEY,
+    /**
+     * 按队列位点判重：每个 (topic, brokerName, queueId) 只保存一个已处理完成的位点（水位），
+     * queueOffset 不超过水位即为重投。Redis 状态与队列数成正比，仅适用于 ORDERLY 消费；
+     * 来自重试 / 死信队列或带人工重发标记的消息退回 KEY 方式
+     */
+    QUEUE_OFFSET
+}
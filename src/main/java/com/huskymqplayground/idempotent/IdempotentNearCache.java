@@ -0,0 +1,81 @@
+package com.huskymqplayground.idempotent;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 幂等校验的本地近端缓存（第一级），挡在 Redis（第二级）前面
+ * 只回答“本实例确定处理过”，未命中时仍由 Redis 的 SETNX 决定是否首次消费
+ * 每个 @RocketMQIdempotent 前缀拥有独立的缓存，容量和 TTL 由注解配置
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IdempotentNearCache {
+
+    private static final String METRIC_NAME = "mq.idempotent.near.cache";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Cache<String, Boolean>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 本实例是否已成功处理过该 Key
+     */
+    public boolean isSeen(RocketMQIdempotent idempotent, String redisKey) {
+        Cache<String, Boolean> cache = cacheFor(idempotent);
+        return cache != null && cache.getIfPresent(redisKey) != null;
+    }
+
+    /**
+     * 业务处理成功后登记，失败的消息不能登记，否则会吞掉重试
+     */
+    public void markSeen(RocketMQIdempotent idempotent, String redisKey) {
+        Cache<String, Boolean> cache = cacheFor(idempotent);
+        if (cache != null) {
+            cache.put(redisKey, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 指定前缀的命中/未命中统计，未开启近端缓存时返回空统计
+     */
+    public CacheStats stats(String prefix) {
+        Cache<String, Boolean> cache = caches.get(prefix);
+        return cache == null ? CacheStats.empty() : cache.stats();
+    }
+
+    private Cache<String, Boolean> cacheFor(RocketMQIdempotent idempotent) {
+        if (idempotent.nearCacheSize() <= 0) {
+            return null;
+        }
+        return caches.computeIfAbsent(idempotent.prefix(), prefix -> {
+            // 本地 TTL 不能超过 Redis 的过期时间，否则 Redis 已放行的 Key 仍会被本地拦截
+            Duration redisTtl = Duration.of(idempotent.expire(), idempotent.timeUnit().toChronoUnit());
+            Duration localTtl = Duration.ofSeconds(idempotent.nearCacheExpireSeconds());
+            if (localTtl.compareTo(redisTtl) > 0) {
+                localTtl = redisTtl;
+            }
+
+            Cache<String, Boolean> cache = Caffeine.newBuilder()
+                    .maximumSize(idempotent.nearCacheSize())
+                    .expireAfterWrite(localTtl)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, METRIC_NAME, "prefix", prefix);
+            log.info("Idempotent near cache created. Prefix: {}, Size: {}, TTL: {}", prefix, idempotent.nearCacheSize(), localTtl);
+            return cache;
+        });
+    }
+}
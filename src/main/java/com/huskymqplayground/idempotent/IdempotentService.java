@@ -0,0 +1,398 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import com.huskymqplayground.metrics.ConsumerMetricTags;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 幂等认领 / 释放，供 IdempotentAspect（单条）和批量消费（多条）共用
+ * KEY 方式：本地近端缓存 -> Redis（按 @RocketMQIdempotent#store 选择存储方式）
+ * QUEUE_OFFSET 方式：本地水位 -> Redis 水位，业务成功后才推进水位，不支持按位点判重的消息退回 KEY 方式
+ * 访问 Redis 的调用都经过 RedisBulkhead，近端缓存命中不占许可
+ */
+@Slf4j
+@Component
+public class IdempotentService {
+
+    private final IdempotentNearCache nearCache;
+    private final QueueOffsetWatermarkStore watermarkStore;
+    private final Environment environment;
+    private final Map<IdempotentStoreType, IdempotentStore> stores = new EnumMap<>(IdempotentStoreType.class);
+    private final MeterRegistry meterRegistry;
+    private final ConsumerMetricTags consumerMetricTags;
+    private final RedisBulkhead redisBulkhead;
+    private final Map<Class<?>, String> consumerGroups = new ConcurrentHashMap<>();
+    private final Map<Class<?>, IdempotentMeters> meters = new ConcurrentHashMap<>();
+    /**
+     * 尚未应答的异步释放，按幂等 Key 索引，同一 Key 的下一次认领要等它完成
+     */
+    private final Map<String, CompletableFuture<Void>> pendingReleases = new ConcurrentHashMap<>();
+
+    public IdempotentService(IdempotentNearCache nearCache, QueueOffsetWatermarkStore watermarkStore,
+                             Environment environment, MeterRegistry meterRegistry,
+                             ConsumerMetricTags consumerMetricTags, RedisBulkhead redisBulkhead,
+                             List<IdempotentStore> stores) {
+        this.nearCache = nearCache;
+        this.watermarkStore = watermarkStore;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.consumerMetricTags = consumerMetricTags;
+        this.redisBulkhead = redisBulkhead;
+        for (IdempotentStore store : stores) {
+            this.stores.put(store.type(), store);
+        }
+    }
+
+    /**
+     * 构建 Redis Key，消息没有 Keys 时返回 null（跳过幂等校验）
+     */
+    public String buildKey(RocketMQIdempotent idempotent, MessageExt messageExt) {
+        String keys = messageExt.getKeys();
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        return idempotent.prefix() + keys;
+    }
+
+    /**
+     * 认领单条消息，返回 null 表示重复消息
+     * @param listenerClass 监听器类，QUEUE_OFFSET 方式从其 @RocketMQMessageListener 读取消费组
+     */
+    public IdempotentClaim claim(RocketMQIdempotent idempotent, Class<?> listenerClass, MessageExt messageExt) {
+        IdempotentMeters listenerMeters = metersOf(listenerClass);
+        long start = System.nanoTime();
+        IdempotentClaim claim = doClaim(idempotent, listenerClass, messageExt);
+        listenerMeters.claimTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (claim == null) {
+            listenerMeters.duplicates.increment();
+        }
+        return claim;
+    }
+
+    private IdempotentClaim doClaim(RocketMQIdempotent idempotent, Class<?> listenerClass, MessageExt messageExt) {
+        if (useWatermark(idempotent, messageExt)) {
+            QueueOffsetWatermarkStore.Position position =
+                    watermarkStore.positionOf(idempotent, consumerGroupOf(listenerClass), messageExt);
+            return redisBulkhead.call(() -> watermarkStore.claim(position))
+                    ? IdempotentClaim.ofWatermark(position, buildKey(idempotent, messageExt)) : null;
+        }
+
+        String redisKey = buildKey(idempotent, messageExt);
+        if (redisKey == null) {
+            return IdempotentClaim.UNCHECKED;
+        }
+        if (nearCache.isSeen(idempotent, redisKey) || !redisBulkhead.call(() -> storeOf(idempotent).claim(idempotent, redisKey))) {
+            return null;
+        }
+        return IdempotentClaim.ofKey(redisKey);
+    }
+
+    /**
+     * 异步认领：近端缓存 / 本地水位命中时立即完成，否则在 Redis 应答后完成，结果含义同 {@link #claim}
+     * 同一 Key 还有未完成的异步释放时，先等释放落地再认领，避免重投的消息被自己的旧标记拦截
+     */
+    public CompletableFuture<IdempotentClaim> claimAsync(RocketMQIdempotent idempotent, Class<?> listenerClass, MessageExt messageExt) {
+        IdempotentMeters listenerMeters = metersOf(listenerClass);
+        long start = System.nanoTime();
+        return doClaimAsync(idempotent, listenerClass, messageExt).whenComplete((claim, e) -> {
+            listenerMeters.claimTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (e == null && claim == null) {
+                listenerMeters.duplicates.increment();
+            }
+        });
+    }
+
+    private CompletableFuture<IdempotentClaim> doClaimAsync(RocketMQIdempotent idempotent, Class<?> listenerClass, MessageExt messageExt) {
+        if (useWatermark(idempotent, messageExt)) {
+            QueueOffsetWatermarkStore.Position position =
+                    watermarkStore.positionOf(idempotent, consumerGroupOf(listenerClass), messageExt);
+            return redisBulkhead.callAsync(() -> watermarkStore.claimAsync(position)
+                    .thenApply(claimed -> claimed ? IdempotentClaim.ofWatermark(position, buildKey(idempotent, messageExt)) : null));
+        }
+
+        String redisKey = buildKey(idempotent, messageExt);
+        if (redisKey == null) {
+            return CompletableFuture.completedFuture(IdempotentClaim.UNCHECKED);
+        }
+        if (nearCache.isSeen(idempotent, redisKey)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // 许可在调用线程上获取：等待释放后的认领会在 Redisson 的回调线程上发出，那里不能阻塞
+        return redisBulkhead.callAsync(() -> afterPendingRelease(redisKey, () -> storeOf(idempotent).claimAsync(idempotent, redisKey)
+                .thenApply(claimed -> claimed ? IdempotentClaim.ofKey(redisKey) : null)));
+    }
+
+    private CompletableFuture<IdempotentClaim> afterPendingRelease(String releaseKey, Supplier<CompletionStage<IdempotentClaim>> claim) {
+        CompletableFuture<Void> pending = pendingReleases.get(releaseKey);
+        if (pending == null) {
+            return claim.get().toCompletableFuture();
+        }
+        return pending.exceptionally(e -> null).thenCompose(ignored -> claim.get());
+    }
+
+    /**
+     * 通过一次管道往返批量认领，返回值与 messageExts 一一对应，null 表示重复消息
+     * KEY 方式下同一批内出现重复 Key 时只有第一个认领成功
+     */
+    public IdempotentClaim[] claimBatch(RocketMQIdempotent idempotent, Class<?> listenerClass, List<MessageExt> messageExts) {
+        return claimBatch(idempotent, listenerClass, messageExts, null);
+    }
+
+    /**
+     * 分通道批量认领，QUEUE_OFFSET 方式下每条消息按 (队列, 通道) 的水位判重
+     * 位点落在停车重试留下的乱序区间内时，按 Keys 标记只读判重（没有 Keys 的消息无法判断，照常处理）
+     * @param lanes 与 messageExts 一一对应的通道序号，null 表示不分通道
+     */
+    public IdempotentClaim[] claimBatch(RocketMQIdempotent idempotent, Class<?> listenerClass,
+                                        List<MessageExt> messageExts, int[] lanes) {
+        IdempotentMeters listenerMeters = metersOf(listenerClass);
+        long start = System.nanoTime();
+        IdempotentClaim[] claims = doClaimBatch(idempotent, listenerClass, messageExts, lanes);
+        listenerMeters.claimTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        for (IdempotentClaim claim : claims) {
+            if (claim == null) {
+                listenerMeters.duplicates.increment();
+            }
+        }
+        return claims;
+    }
+
+    private IdempotentClaim[] doClaimBatch(RocketMQIdempotent idempotent, Class<?> listenerClass,
+                                           List<MessageExt> messageExts, int[] lanes) {
+        IdempotentClaim[] claims = new IdempotentClaim[messageExts.size()];
+        List<Integer> keyIndexes = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Integer> watermarkIndexes = new ArrayList<>();
+        List<QueueOffsetWatermarkStore.Position> positions = new ArrayList<>();
+
+        for (int i = 0; i < messageExts.size(); i++) {
+            MessageExt messageExt = messageExts.get(i);
+            if (useWatermark(idempotent, messageExt)) {
+                watermarkIndexes.add(i);
+                positions.add(watermarkStore.positionOf(idempotent, consumerGroupOf(listenerClass), messageExt,
+                        lanes == null ? -1 : lanes[i]));
+                continue;
+            }
+            String redisKey = buildKey(idempotent, messageExt);
+            if (redisKey == null) {
+                claims[i] = IdempotentClaim.UNCHECKED;
+            } else if (!nearCache.isSeen(idempotent, redisKey)) {
+                keyIndexes.add(i);
+                keys.add(redisKey);
+            }
+        }
+
+        if (!positions.isEmpty()) {
+            QueueOffsetWatermarkStore.Verdict[] verdicts = redisBulkhead.call(() -> watermarkStore.claimBatch(positions));
+            List<Integer> uncertainIndexes = new ArrayList<>();
+            List<String> markers = new ArrayList<>();
+            for (int i = 0; i < verdicts.length; i++) {
+                int index = watermarkIndexes.get(i);
+                if (verdicts[i] == QueueOffsetWatermarkStore.Verdict.DUPLICATE) {
+                    continue;
+                }
+                String markerKey = buildKey(idempotent, messageExts.get(index));
+                claims[index] = IdempotentClaim.ofWatermark(positions.get(i), markerKey);
+                if (verdicts[i] == QueueOffsetWatermarkStore.Verdict.UNCERTAIN && markerKey != null) {
+                    uncertainIndexes.add(index);
+                    markers.add(markerKey);
+                }
+            }
+            if (!markers.isEmpty()) {
+                boolean[] completed = redisBulkhead.call(() -> storeOf(idempotent).containsBatch(idempotent, markers));
+                for (int i = 0; i < completed.length; i++) {
+                    if (completed[i]) {
+                        claims[uncertainIndexes.get(i)] = null;
+                    }
+                }
+            }
+        }
+        if (!keys.isEmpty()) {
+            boolean[] claimed = redisBulkhead.call(() -> storeOf(idempotent).claimBatch(idempotent, keys));
+            for (int i = 0; i < claimed.length; i++) {
+                if (claimed[i]) {
+                    claims[keyIndexes.get(i)] = IdempotentClaim.ofKey(keys.get(i));
+                }
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * 业务处理成功：Key 登记到近端缓存，位点推进水位
+     */
+    public void complete(RocketMQIdempotent idempotent, IdempotentClaim claim) {
+        completeBatch(idempotent, List.of(claim));
+    }
+
+    /**
+     * 停车重试：消息交给停车链之前登记它的位点，完成（{@link #completeBatch}）之前水位不会越过它；
+     * 停车链被放弃时不撤销登记，本实例之后的完成都不会越过这条未处理的消息
+     */
+    public void hold(IdempotentClaim claim) {
+        if (claim.watermark() != null) {
+            watermarkStore.hold(claim.watermark());
+        }
+    }
+
+    /**
+     * 批量完成，水位按队列取最大位点一次管道往返提交，不会越过 {@link #hold} 登记的位点
+     * 越过登记位点乱序完成的消息先同步写入 Keys 标记，再随水位提交超前位点，重投时据此判重
+     * 水位异步写入 Redis，写入失败只会让重投的消息多处理一次，不影响本次消费结果
+     */
+    public void completeBatch(RocketMQIdempotent idempotent, List<IdempotentClaim> claims) {
+        List<QueueOffsetWatermarkStore.Position> positions = new ArrayList<>();
+        Map<QueueOffsetWatermarkStore.Position, String> markerKeys = new HashMap<>();
+        for (IdempotentClaim claim : claims) {
+            if (claim.redisKey() != null) {
+                nearCache.markSeen(idempotent, claim.redisKey());
+            } else if (claim.watermark() != null) {
+                positions.add(claim.watermark());
+                if (claim.markerKey() != null) {
+                    markerKeys.put(claim.watermark(), claim.markerKey());
+                }
+            }
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+        QueueOffsetWatermarkStore.Completion completion = watermarkStore.complete(positions);
+        List<String> markers = new ArrayList<>();
+        for (QueueOffsetWatermarkStore.Position position : completion.ahead()) {
+            String markerKey = markerKeys.get(position);
+            if (markerKey != null) {
+                markers.add(markerKey);
+            }
+        }
+        try {
+            if (!markers.isEmpty()) {
+                redisBulkhead.run(() -> storeOf(idempotent).claimBatch(idempotent, markers));
+            }
+            redisBulkhead.callAsync(() -> watermarkStore.commitAsync(completion)).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    log.warn("Commit queue offset watermark failed. Positions: {}", positions, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Commit queue offset watermark failed. Positions: {}", positions, e);
+        }
+    }
+
+    /**
+     * 业务处理失败，删除 Key 以便重试；位点认领没有推进水位，无需回退
+     */
+    public void release(RocketMQIdempotent idempotent, Class<?> listenerClass, IdempotentClaim claim) {
+        if (claim.redisKey() != null) {
+            metersOf(listenerClass).releases.increment();
+            redisBulkhead.run(() -> storeOf(idempotent).release(idempotent, claim.redisKey()));
+        }
+    }
+
+    /**
+     * 异步释放，不阻塞消费线程；释放完成前同一 Key 的异步认领会先等待
+     */
+    public CompletableFuture<Void> releaseAsync(RocketMQIdempotent idempotent, Class<?> listenerClass, IdempotentClaim claim) {
+        String redisKey = claim.redisKey();
+        if (redisKey == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        metersOf(listenerClass).releases.increment();
+        CompletableFuture<Void> release = redisBulkhead.callAsync(() -> storeOf(idempotent).releaseAsync(idempotent, redisKey));
+        pendingReleases.put(redisKey, release);
+        release.whenComplete((ignored, e) -> pendingReleases.remove(redisKey, release));
+        return release;
+    }
+
+    /**
+     * 批量释放
+     */
+    public void releaseBatch(RocketMQIdempotent idempotent, Class<?> listenerClass, List<IdempotentClaim> claims) {
+        List<String> keys = new ArrayList<>();
+        for (IdempotentClaim claim : claims) {
+            if (claim.redisKey() != null) {
+                keys.add(claim.redisKey());
+            }
+        }
+        if (!keys.isEmpty()) {
+            metersOf(listenerClass).releases.increment(keys.size());
+            redisBulkhead.run(() -> storeOf(idempotent).releaseBatch(idempotent, keys));
+        }
+    }
+
+    private boolean useWatermark(RocketMQIdempotent idempotent, MessageExt messageExt) {
+        return idempotent.mode() == IdempotentMode.QUEUE_OFFSET && watermarkStore.supports(messageExt);
+    }
+
+    /**
+     * 水位按消费组隔离，只有 ORDERLY 监听器能保证同一队列按位点顺序处理
+     */
+    private String consumerGroupOf(Class<?> listenerClass) {
+        return consumerGroups.computeIfAbsent(listenerClass, type -> {
+            RocketMQMessageListener listener = AnnotationUtils.findAnnotation(type, RocketMQMessageListener.class);
+            if (listener == null || listener.consumeMode() != ConsumeMode.ORDERLY) {
+                throw new IllegalStateException("IdempotentMode.QUEUE_OFFSET requires an ORDERLY @RocketMQMessageListener: " + type.getName());
+            }
+            return environment.resolvePlaceholders(listener.consumerGroup());
+        });
+    }
+
+    private IdempotentMeters metersOf(Class<?> listenerClass) {
+        return meters.computeIfAbsent(listenerClass, type -> new IdempotentMeters(meterRegistry, consumerMetricTags.of(type)));
+    }
+
+    private IdempotentStore storeOf(RocketMQIdempotent idempotent) {
+        IdempotentStore store = stores.get(idempotent.store());
+        if (store == null) {
+            throw new IllegalStateException("No idempotent store registered for type: " + idempotent.store());
+        }
+        return store;
+    }
+
+    /**
+     * 幂等校验指标：认领耗时（含 Redis 往返，批量认领按一次计）、拦截的重复消息、失败后释放的 Key
+     */
+    private static final class IdempotentMeters {
+
+        private final Timer claimTimer;
+        private final Counter duplicates;
+        private final Counter releases;
+
+        private IdempotentMeters(MeterRegistry meterRegistry, Tags tags) {
+            this.claimTimer = Timer.builder("mq.idempotent.claim")
+                    .description("幂等认领耗时")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.duplicates = Counter.builder("mq.idempotent.duplicates")
+                    .description("被拦截的重复消息数")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.releases = Counter.builder("mq.idempotent.releases")
+                    .description("处理失败后释放的幂等 Key 数")
+                    .tags(tags)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 幂等标记存储 SPI，由 IdempotentService 按 @RocketMQIdempotent#store 选择
+ */
+public interface IdempotentStore {
+
+    IdempotentStoreType type();
+
+    /**
+     * 认领单个 Key，返回 true 表示首次消费
+     */
+    boolean claim(RocketMQIdempotent idempotent, String redisKey);
+
+    /**
+     * 异步认领，结果在 Redis 应答后完成，调用线程不等待
+     */
+    CompletionStage<Boolean> claimAsync(RocketMQIdempotent idempotent, String redisKey);
+
+    /**
+     * 一次管道往返批量认领，返回值与 redisKeys 一一对应
+     */
+    boolean[] claimBatch(RocketMQIdempotent idempotent, List<String> redisKeys);
+
+    /**
+     * 一次管道往返只读检查 Key 是否已有标记，不写入，返回值与 redisKeys 一一对应
+     */
+    boolean[] containsBatch(RocketMQIdempotent idempotent, List<String> redisKeys);
+
+    /**
+     * 释放 Key 以便重试
+     */
+    void release(RocketMQIdempotent idempotent, String redisKey);
+
+    CompletionStage<Void> releaseAsync(RocketMQIdempotent idempotent, String redisKey);
+
+    void releaseBatch(RocketMQIdempotent idempotent, List<String> redisKeys);
+}
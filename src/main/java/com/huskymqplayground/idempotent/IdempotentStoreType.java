@@ -0,0 +1,15 @@
+package com.huskymqplayground.idempotent;
+
+/**
+ * 幂等标记的 Redis 存储方式
+ */
+public enum IdempotentStoreType {
+    /**
+     * 每条消息一个独立 Key（RBucket + SETNX + TTL），简单直观，Key 数量与消息量成正比
+     */
+    BUCKET,
+    /**
+     * 按小时分桶的 Hash，字段为定长哈希，整桶过期，内存占用远低于 BUCKET
+     */
+    HASH_BUCKET
+}
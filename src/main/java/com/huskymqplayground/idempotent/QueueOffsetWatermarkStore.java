@@ -0,0 +1,316 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import lombok.RequiredArgsConstructor;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 队列位点水位存储
+ * <p>
+ * 每个消费组一个 Hash：{@code prefix + "wm:" + 消费组}，字段为 {@code topic@brokerName@queueId}，值为已处理完成的最大位点。
+ * 顺序消费下同一队列严格串行，认领只读取水位、位点超过水位即首次消费；业务成功后才 {@link #complete} 把水位推进到该位点，
+ * 处理到一半宕机时未完成的消息不会被水位越过，重投后照常处理。失败无需回退，水位本来就没有越过它。
+ * 本地记录的水位在提交时先于 Redis 推进（只记录本实例确实处理完的位点），位点不超过本地水位的消息可直接判重，不访问 Redis
+ * <p>
+ * 停车重试时同一通道内的消息可能乱序完成：交给停车链的位点先 {@link #hold} 登记，水位不越过它，
+ * 停车链被放弃时登记也不撤销，直到重投后完成，或读到别的实例已把水位推过它；
+ * 越过登记位点先完成的消息记为“超前完成”，字段 {@code <队列字段>:ahead} 保存其中的最大位点，
+ * 位点落在 (水位, 超前位点] 之间的重投消息判为 {@link Verdict#UNCERTAIN}，由调用方按 Keys 标记判重
+ */
+@Component
+@RequiredArgsConstructor
+public class QueueOffsetWatermarkStore {
+
+    /**
+     * 发起人工重发的工具在消息上设置该属性（任意值），这类消息改按 Keys 判重，不受水位拦截
+     */
+    public static final String RESEND_PROPERTY = "HUSKY_RESEND";
+
+    private static final String AHEAD_SUFFIX = ":ahead";
+
+    /**
+     * KEYS[1]: 水位 Hash；ARGV[1]: 队列字段；ARGV[2]: 超前字段；ARGV[3]: 连续完成的最大位点；ARGV[4]: 超前完成的最大位点（-1 表示无）
+     * 两者都只前进不后退（多次异步提交到达顺序不定），水位追上超前位点后删除超前字段，返回提交后的水位
+     */
+    private static final String COMMIT_SCRIPT =
+            "local wm = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '-1') " +
+            "local off = tonumber(ARGV[3]) " +
+            "if off > wm then redis.call('HSET', KEYS[1], ARGV[1], ARGV[3]); wm = off end " +
+            "local ahead = tonumber(redis.call('HGET', KEYS[1], ARGV[2]) or '-1') " +
+            "if tonumber(ARGV[4]) > ahead then redis.call('HSET', KEYS[1], ARGV[2], ARGV[4]); ahead = tonumber(ARGV[4]) end " +
+            "if ahead >= 0 and ahead <= wm then redis.call('HDEL', KEYS[1], ARGV[2]) end " +
+            "return wm";
+
+    /**
+     * 批量判重的结果
+     */
+    public enum Verdict {
+        /** 位点不超过水位，重复消息 */
+        DUPLICATE,
+        /** 位点超过水位和超前位点，首次消费 */
+        NEW,
+        /** 位点落在 (水位, 超前位点] 之间，可能已乱序完成，需按 Keys 标记判重 */
+        UNCERTAIN
+    }
+
+    private final RedissonClient redissonClient;
+
+    private final Map<String, Long> localWatermarks = new ConcurrentHashMap<>();
+
+    /**
+     * 有登记位点的 (队列, 通道)，没有登记时不建账本，提交走快速路径
+     */
+    private final Map<String, Ledger> ledgers = new ConcurrentHashMap<>();
+
+    /**
+     * 消息是否可以按位点判重：必须来自原始队列，重试 / 死信队列的位点属于另一个队列，人工重发则应当重新处理
+     */
+    public boolean supports(MessageExt messageExt) {
+        String topic = messageExt.getTopic();
+        return messageExt.getQueueOffset() >= 0
+                && messageExt.getProperty(MessageConst.PROPERTY_RETRY_TOPIC) == null
+                && messageExt.getUserProperty(RESEND_PROPERTY) == null
+                && topic != null
+                && !topic.startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)
+                && !topic.startsWith(MixAll.DLQ_GROUP_TOPIC_PREFIX);
+    }
+
+    public Position positionOf(RocketMQIdempotent idempotent, String consumerGroup, MessageExt messageExt) {
+        return positionOf(idempotent, consumerGroup, messageExt, -1);
+    }
+
+    /**
+     * @param lane 并行通道序号，队列内按通道分别保存水位（每个通道内按位点顺序处理）；小于 0 表示不分通道
+     */
+    public Position positionOf(RocketMQIdempotent idempotent, String consumerGroup, MessageExt messageExt, int lane) {
+        String field = messageExt.getTopic() + "@" + messageExt.getBrokerName() + "@" + messageExt.getQueueId();
+        return new Position(idempotent.prefix() + "wm:" + consumerGroup,
+                lane < 0 ? field : field + "#" + lane,
+                messageExt.getQueueOffset());
+    }
+
+    /**
+     * 判断单个位点是否首次消费，返回 true 表示位点超过已完成的水位
+     * 单条消费不分通道、不停车，不会产生超前完成的位点
+     */
+    public boolean claim(Position position) {
+        if (position.offset() <= localWatermark(position)) {
+            return false;
+        }
+        long watermark = parse(watermarks(position).get(position.field()));
+        advanceLocal(position, watermark);
+        return position.offset() > watermark;
+    }
+
+    /**
+     * 异步判断，本地水位已覆盖该位点时直接完成
+     */
+    public CompletionStage<Boolean> claimAsync(Position position) {
+        if (position.offset() <= localWatermark(position)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return watermarks(position).getAsync(position.field()).thenApply(value -> {
+            long watermark = parse(value);
+            advanceLocal(position, watermark);
+            return position.offset() > watermark;
+        });
+    }
+
+    /**
+     * 批量判断：同一队列只读一次水位和超前位点，多个队列共用一次管道往返
+     * 返回值与 positions 一一对应
+     */
+    public Verdict[] claimBatch(List<Position> positions) {
+        Verdict[] verdicts = new Verdict[positions.size()];
+        Map<String, Position> queues = new LinkedHashMap<>();
+        for (Position position : positions) {
+            if (position.offset() > localWatermark(position)) {
+                queues.putIfAbsent(position.localKey(), position);
+            }
+        }
+        if (queues.isEmpty()) {
+            Arrays.fill(verdicts, Verdict.DUPLICATE);
+            return verdicts;
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        for (Position position : queues.values()) {
+            batch.<String, String>getMap(position.hashKey(), StringCodec.INSTANCE)
+                    .getAllAsync(Set.of(position.field(), position.field() + AHEAD_SUFFIX));
+        }
+        List<?> responses = batch.execute().getResponses();
+
+        Map<String, long[]> marks = new LinkedHashMap<>();
+        int i = 0;
+        for (Position position : queues.values()) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> values = (Map<String, String>) responses.get(i++);
+            long watermark = parse(values.get(position.field()));
+            marks.put(position.localKey(), new long[]{watermark, parse(values.get(position.field() + AHEAD_SUFFIX))});
+            advanceLocal(position, watermark);
+        }
+        for (int j = 0; j < positions.size(); j++) {
+            Position position = positions.get(j);
+            long[] mark = marks.get(position.localKey());
+            if (mark == null || position.offset() <= mark[0]) {
+                verdicts[j] = Verdict.DUPLICATE;
+            } else {
+                verdicts[j] = position.offset() <= mark[1] ? Verdict.UNCERTAIN : Verdict.NEW;
+            }
+        }
+        return verdicts;
+    }
+
+    /**
+     * 位点交给停车链之前登记：在它完成之前，同一 (队列, 通道) 的水位不会越过它
+     */
+    public void hold(Position position) {
+        ledgers.compute(position.localKey(), (key, ledger) -> {
+            Ledger held = ledger != null ? ledger : new Ledger(localWatermark(position));
+            held.held.add(position.offset());
+            return held;
+        });
+    }
+
+    /**
+     * 记录处理完成的位点，算出每个 (队列, 通道) 可以提交的水位，本地水位随之推进；结果交给 {@link #commitAsync(Completion)} 写入 Redis
+     * 越过了登记位点的完成记为超前，调用方应在提交之前为它们写入 Keys 标记
+     */
+    public Completion complete(List<Position> positions) {
+        Map<String, Position> committed = new LinkedHashMap<>();
+        List<Position> ahead = new ArrayList<>();
+        for (Position position : positions) {
+            long[] watermark = {position.offset()};
+            boolean[] outOfOrder = {false};
+            ledgers.computeIfPresent(position.localKey(), (key, ledger) -> {
+                ledger.held.remove(position.offset());
+                ledger.maxDone = Math.max(ledger.maxDone, position.offset());
+                if (ledger.held.isEmpty()) {
+                    watermark[0] = ledger.maxDone;
+                    return null;
+                }
+                outOfOrder[0] = ledger.held.first() < position.offset();
+                watermark[0] = ledger.held.first() - 1;
+                return ledger;
+            });
+            if (outOfOrder[0]) {
+                ahead.add(position);
+            }
+            committed.merge(position.localKey(), position.at(watermark[0]), (a, b) -> a.offset() >= b.offset() ? a : b);
+        }
+        committed.values().forEach(position -> advanceLocal(position, position.offset()));
+        return new Completion(new ArrayList<>(committed.values()), ahead);
+    }
+
+    /**
+     * 处理成功的位点直接提交，调用方保证这些位点之前没有未完成的消息
+     */
+    public CompletionStage<Void> commitAsync(List<Position> positions) {
+        return commitAsync(complete(positions));
+    }
+
+    /**
+     * 把水位和超前位点写入 Redis，同一队列一次脚本，多个队列共用一次管道往返
+     * 本地水位已在 {@link #complete} 时推进，Redis 写入失败只会让水位落后，重投的消息多处理一次，不会漏处理
+     */
+    public CompletionStage<Void> commitAsync(Completion completion) {
+        if (completion.committed().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, Long> ahead = new LinkedHashMap<>();
+        for (Position position : completion.ahead()) {
+            ahead.merge(position.localKey(), position.offset(), Math::max);
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        for (Position position : completion.committed()) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                    COMMIT_SCRIPT, RScript.ReturnType.INTEGER, List.of(position.hashKey()),
+                    position.field(), position.field() + AHEAD_SUFFIX, Long.toString(position.offset()),
+                    Long.toString(ahead.getOrDefault(position.localKey(), -1L)));
+        }
+        return batch.executeAsync().thenAccept(responses -> {
+        });
+    }
+
+    private RMap<String, String> watermarks(Position position) {
+        return redissonClient.getMap(position.hashKey(), StringCodec.INSTANCE);
+    }
+
+    private static long parse(String watermark) {
+        return watermark == null ? -1L : Long.parseLong(watermark);
+    }
+
+    private long localWatermark(Position position) {
+        return localWatermarks.getOrDefault(position.localKey(), -1L);
+    }
+
+    /**
+     * 推进本地水位，同时清掉已被水位越过的登记（队列曾分给别的实例，被放弃的位点已由对方处理）
+     */
+    private void advanceLocal(Position position, long watermark) {
+        localWatermarks.merge(position.localKey(), watermark, Math::max);
+        ledgers.computeIfPresent(position.localKey(), (key, ledger) -> {
+            ledger.held.headSet(watermark, true).clear();
+            ledger.maxDone = Math.max(ledger.maxDone, watermark);
+            return ledger.held.isEmpty() ? null : ledger;
+        });
+    }
+
+    /**
+     * 一次 {@link #complete} 的结果
+     * @param committed 每个 (队列, 通道) 可以提交的水位（超前完成时是登记位点的前一个位点，可能为 -1）
+     * @param ahead 越过登记位点、乱序完成的位点
+     */
+    public record Completion(List<Position> committed, List<Position> ahead) {
+    }
+
+    /**
+     * 一个 (队列, 通道) 的停车登记：仍在停车链中的位点，以及已完成的最大位点
+     */
+    private static final class Ledger {
+
+        private final TreeSet<Long> held = new TreeSet<>();
+        private long maxDone;
+
+        private Ledger(long watermark) {
+            this.maxDone = watermark;
+        }
+    }
+
+    /**
+     * 消息在队列中的位置
+     * @param hashKey 水位 Hash 的 Key（按消费组区分）
+     * @param field 队列字段 topic@brokerName@queueId，分通道时追加 #通道序号
+     * @param offset 队列位点
+     */
+    public record Position(String hashKey, String field, long offset) {
+
+        String localKey() {
+            return hashKey + "|" + field;
+        }
+
+        Position at(long offset) {
+            return new Position(hashKey, field, offset);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import lombok.RequiredArgsConstructor;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 每条消息一个 Key：SETNX + TTL
+ */
+@Component
+@RequiredArgsConstructor
+public class RedisBucketIdempotentStore implements IdempotentStore {
+
+    private final RedissonClient redissonClient;
+
+    @Override
+    public IdempotentStoreType type() {
+        return IdempotentStoreType.BUCKET;
+    }
+
+    @Override
+    public boolean claim(RocketMQIdempotent idempotent, String redisKey) {
+        return redissonClient.getBucket(redisKey).setIfAbsent("1", expireOf(idempotent));
+    }
+
+    @Override
+    public CompletionStage<Boolean> claimAsync(RocketMQIdempotent idempotent, String redisKey) {
+        return redissonClient.getBucket(redisKey).setIfAbsentAsync("1", expireOf(idempotent));
+    }
+
+    @Override
+    public boolean[] claimBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        Duration expire = expireOf(idempotent);
+        RBatch batch = redissonClient.createBatch();
+        for (String redisKey : redisKeys) {
+            batch.getBucket(redisKey).setIfAbsentAsync("1", expire);
+        }
+        List<?> responses = batch.execute().getResponses();
+
+        boolean[] claimed = new boolean[redisKeys.size()];
+        for (int i = 0; i < claimed.length; i++) {
+            claimed[i] = Boolean.TRUE.equals(responses.get(i));
+        }
+        return claimed;
+    }
+
+    @Override
+    public boolean[] containsBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        RBatch batch = redissonClient.createBatch();
+        for (String redisKey : redisKeys) {
+            batch.getBucket(redisKey).isExistsAsync();
+        }
+        List<?> responses = batch.execute().getResponses();
+
+        boolean[] contained = new boolean[redisKeys.size()];
+        for (int i = 0; i < contained.length; i++) {
+            contained[i] = Boolean.TRUE.equals(responses.get(i));
+        }
+        return contained;
+    }
+
+    @Override
+    public void release(RocketMQIdempotent idempotent, String redisKey) {
+        redissonClient.getBucket(redisKey).delete();
+    }
+
+    @Override
+    public CompletionStage<Void> releaseAsync(RocketMQIdempotent idempotent, String redisKey) {
+        return redissonClient.getBucket(redisKey).deleteAsync().thenApply(deleted -> null);
+    }
+
+    @Override
+    public void releaseBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        // 一条 DEL 命令
+        redissonClient.getKeys().delete(redisKeys.toArray(new String[0]));
+    }
+
+    private Duration expireOf(RocketMQIdempotent idempotent) {
+        return Duration.of(idempotent.expire(), idempotent.timeUnit().toChronoUnit());
+    }
+}
@@ -0,0 +1,195 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import lombok.RequiredArgsConstructor;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按小时分桶的 Hash 存储
+ * <p>
+ * Key 先取 MD5，前 2 字节决定分片，后 12 字节作为 Hash 字段（定长二进制），值为空串；
+ * 桶 Key 为 {@code prefix + "hb:{分片}:小时序号"}，同一分片的各小时桶共享 hash tag，Lua 在集群下也可跨桶执行。
+ * 认领时用 Lua 依次检查窗口内的旧桶，再对当前桶 HSETNX；整个桶在窗口 + 1 小时后一次性过期。
+ * 分片数应使每个桶的字段数不超过 hash-max-listpack-entries，以保持紧凑编码，详见 docs/idempotent-hash-bucket.md
+ */
+@Component
+@RequiredArgsConstructor
+public class RedisHashBucketIdempotentStore implements IdempotentStore {
+
+    private static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * KEYS: 窗口内的桶，按时间升序，最后一个为当前桶；ARGV[1]: 字段；ARGV[2]: 当前桶 TTL（秒）
+     */
+    private static final String CLAIM_SCRIPT =
+            "for i = 1, #KEYS - 1 do " +
+            "  if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then return 0 end " +
+            "end " +
+            "local added = redis.call('HSETNX', KEYS[#KEYS], ARGV[1], '') " +
+            "if added == 1 and redis.call('TTL', KEYS[#KEYS]) < 0 then " +
+            "  redis.call('EXPIRE', KEYS[#KEYS], ARGV[2]) " +
+            "end " +
+            "return added";
+
+    /**
+     * KEYS: 窗口内的桶；ARGV[1]: 字段。只读，任一桶中存在即返回 1
+     */
+    private static final String EXISTS_SCRIPT =
+            "for i = 1, #KEYS do " +
+            "  if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then return 1 end " +
+            "end " +
+            "return 0";
+
+    /**
+     * KEYS: 当前桶和上一个桶（认领与释放可能跨越整点）；ARGV[1]: 字段
+     */
+    private static final String RELEASE_SCRIPT =
+            "for i = 1, #KEYS do redis.call('HDEL', KEYS[i], ARGV[1]) end " +
+            "return 0";
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final RedissonClient redissonClient;
+
+    @Override
+    public IdempotentStoreType type() {
+        return IdempotentStoreType.HASH_BUCKET;
+    }
+
+    @Override
+    public boolean claim(RocketMQIdempotent idempotent, String redisKey) {
+        Slot slot = slotOf(idempotent, redisKey);
+        Long added = redissonClient.getScript(ByteArrayCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                CLAIM_SCRIPT, RScript.ReturnType.INTEGER, windowBuckets(idempotent, slot), slot.field(), ttlArg(idempotent));
+        return added != null && added == 1L;
+    }
+
+    @Override
+    public CompletionStage<Boolean> claimAsync(RocketMQIdempotent idempotent, String redisKey) {
+        Slot slot = slotOf(idempotent, redisKey);
+        return redissonClient.getScript(ByteArrayCodec.INSTANCE).<Long>evalAsync(RScript.Mode.READ_WRITE,
+                CLAIM_SCRIPT, RScript.ReturnType.INTEGER, windowBuckets(idempotent, slot), slot.field(), ttlArg(idempotent))
+                .thenApply(added -> added != null && added == 1L);
+    }
+
+    @Override
+    public boolean[] claimBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        byte[] ttl = ttlArg(idempotent);
+        RBatch batch = redissonClient.createBatch();
+        for (String redisKey : redisKeys) {
+            Slot slot = slotOf(idempotent, redisKey);
+            batch.getScript(ByteArrayCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                    CLAIM_SCRIPT, RScript.ReturnType.INTEGER, windowBuckets(idempotent, slot), slot.field(), ttl);
+        }
+        List<?> responses = batch.execute().getResponses();
+
+        boolean[] claimed = new boolean[redisKeys.size()];
+        for (int i = 0; i < claimed.length; i++) {
+            claimed[i] = Long.valueOf(1L).equals(responses.get(i));
+        }
+        return claimed;
+    }
+
+    @Override
+    public boolean[] containsBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        RBatch batch = redissonClient.createBatch();
+        for (String redisKey : redisKeys) {
+            Slot slot = slotOf(idempotent, redisKey);
+            batch.getScript(ByteArrayCodec.INSTANCE).evalAsync(RScript.Mode.READ_ONLY,
+                    EXISTS_SCRIPT, RScript.ReturnType.INTEGER, windowBuckets(idempotent, slot), slot.field());
+        }
+        List<?> responses = batch.execute().getResponses();
+
+        boolean[] contained = new boolean[redisKeys.size()];
+        for (int i = 0; i < contained.length; i++) {
+            contained[i] = Long.valueOf(1L).equals(responses.get(i));
+        }
+        return contained;
+    }
+
+    @Override
+    public void release(RocketMQIdempotent idempotent, String redisKey) {
+        Slot slot = slotOf(idempotent, redisKey);
+        redissonClient.getScript(ByteArrayCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                RELEASE_SCRIPT, RScript.ReturnType.INTEGER, recentBuckets(idempotent, slot), slot.field());
+    }
+
+    @Override
+    public CompletionStage<Void> releaseAsync(RocketMQIdempotent idempotent, String redisKey) {
+        Slot slot = slotOf(idempotent, redisKey);
+        return redissonClient.getScript(ByteArrayCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                RELEASE_SCRIPT, RScript.ReturnType.INTEGER, recentBuckets(idempotent, slot), slot.field())
+                .thenApply(result -> null);
+    }
+
+    @Override
+    public void releaseBatch(RocketMQIdempotent idempotent, List<String> redisKeys) {
+        RBatch batch = redissonClient.createBatch();
+        for (String redisKey : redisKeys) {
+            Slot slot = slotOf(idempotent, redisKey);
+            batch.getScript(ByteArrayCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                    RELEASE_SCRIPT, RScript.ReturnType.INTEGER, recentBuckets(idempotent, slot), slot.field());
+        }
+        batch.execute();
+    }
+
+    /**
+     * 覆盖 [now - expire, now] 的所有小时桶，按时间升序
+     */
+    private List<Object> windowBuckets(RocketMQIdempotent idempotent, Slot slot) {
+        long windowMillis = idempotent.timeUnit().toMillis(idempotent.expire());
+        int count = (int) ((windowMillis + BUCKET_MILLIS - 1) / BUCKET_MILLIS) + 1;
+        long currentHour = System.currentTimeMillis() / BUCKET_MILLIS;
+
+        List<Object> buckets = new ArrayList<>(count);
+        for (long hour = currentHour - count + 1; hour <= currentHour; hour++) {
+            buckets.add(bucketKey(idempotent, slot, hour));
+        }
+        return buckets;
+    }
+
+    private List<Object> recentBuckets(RocketMQIdempotent idempotent, Slot slot) {
+        long currentHour = System.currentTimeMillis() / BUCKET_MILLIS;
+        return List.of(bucketKey(idempotent, slot, currentHour - 1), bucketKey(idempotent, slot, currentHour));
+    }
+
+    private String bucketKey(RocketMQIdempotent idempotent, Slot slot, long hour) {
+        return idempotent.prefix() + "hb:{" + slot.shard() + "}:" + hour;
+    }
+
+    /**
+     * 桶的存活时间 = 窗口 + 1 小时，保证窗口最早的那个桶在检查时仍然存在
+     */
+    private byte[] ttlArg(RocketMQIdempotent idempotent) {
+        long seconds = idempotent.timeUnit().toSeconds(idempotent.expire()) + TimeUnit.MILLISECONDS.toSeconds(BUCKET_MILLIS);
+        return Long.toString(seconds).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Slot slotOf(RocketMQIdempotent idempotent, String redisKey) {
+        byte[] digest = MD5.get().digest(redisKey.getBytes(StandardCharsets.UTF_8));
+        int shard = (((digest[0] & 0xff) << 8) | (digest[1] & 0xff)) % idempotent.hashShards();
+        return new Slot(shard, Arrays.copyOfRange(digest, 4, 16));
+    }
+
+    private record Slot(int shard, byte[] field) {
+    }
+}
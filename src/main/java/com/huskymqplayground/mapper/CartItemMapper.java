@@ -2,8 +2,26 @@ package com.huskymqplayground.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.huskymqplayground.domain.CartItem;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface CartItemMapper extends BaseMapper<CartItem> {
+
+    /**
+     * 按 (username, item_name) 唯一键原子累加数量，不存在时插入；tx_id 与 create_time 只在插入时写入
+     * 每行影响行数：插入为 1，累加到已有行为 2（MySQL 与 H2 一致）
+     * VALUES(col) 在 MySQL 8.0.20+ 上有弃用告警，但 H2 不支持行别名写法，两边都能执行的只有这一种
+     */
+    @Insert("<script>" +
+            "INSERT INTO cart_item (username, item_name, quantity, tx_id, create_time, update_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.username}, #{item.itemName}, #{item.quantity}, #{item.txId}, #{item.createTime}, #{item.updateTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), update_time = VALUES(update_time)" +
+            "</script>")
+    int upsertIncrement(@Param("list") List<CartItem> items);
 }
@@ -0,0 +1,9 @@
+package com.huskymqplayground.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.huskymqplayground.domain.OutboxMessage;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface OutboxMessageMapper extends BaseMapper<OutboxMessage> {
+}
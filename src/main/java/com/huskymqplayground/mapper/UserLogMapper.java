@@ -2,8 +2,23 @@ package com.huskymqplayground.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.huskymqplayground.domain.UserLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface UserLogMapper extends BaseMapper<UserLog> {
+
+    /**
+     * 多行 INSERT，一条语句写入整批日志
+     */
+    @Insert("<script>" +
+            "INSERT INTO user_log (username, operation, create_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.username}, #{item.operation}, #{item.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<UserLog> userLogs);
 }
@@ -0,0 +1,40 @@
+package com.huskymqplayground.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消费链路指标的公共标签：topic、group（取自 @RocketMQMessageListener）、handler（监听器类名）
+ * 标签按监听器类缓存，取 Topic 时用注解上的值而不是消息上的，避免重试 / 死信 Topic 撑大标签基数
+ */
+@Component
+@RequiredArgsConstructor
+public class ConsumerMetricTags {
+
+    private final Environment environment;
+
+    private final Map<Class<?>, Tags> cache = new ConcurrentHashMap<>();
+
+    public Tags of(Class<?> listenerClass) {
+        return cache.computeIfAbsent(listenerClass, this::resolve);
+    }
+
+    public Tags of(Object listener) {
+        return of(AopUtils.getTargetClass(listener));
+    }
+
+    private Tags resolve(Class<?> type) {
+        RocketMQMessageListener listener = AnnotationUtils.findAnnotation(type, RocketMQMessageListener.class);
+        String topic = listener == null ? "unknown" : environment.resolvePlaceholders(listener.topic());
+        String group = listener == null ? "unknown" : environment.resolvePlaceholders(listener.consumerGroup());
+        return Tags.of("topic", topic, "group", group, "handler", type.getSimpleName());
+    }
+}
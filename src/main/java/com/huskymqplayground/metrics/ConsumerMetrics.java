@@ -0,0 +1,60 @@
+package com.huskymqplayground.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个监听器的消费阶段指标：反序列化、业务处理、总耗时，以及失败次数
+ * 每个监听器创建一次，热路径上只做 record，不再查找 Meter
+ */
+public class ConsumerMetrics {
+
+    private static final String METRIC_PREFIX = "mq.consumer";
+
+    private final Timer deserializeTimer;
+    private final Timer handleTimer;
+    private final Timer totalTimer;
+    private final Counter failures;
+
+    public ConsumerMetrics(MeterRegistry meterRegistry, Tags tags) {
+        this.deserializeTimer = Timer.builder(METRIC_PREFIX + ".deserialize")
+                .description("消息体反序列化耗时")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.handleTimer = Timer.builder(METRIC_PREFIX + ".handle")
+                .description("业务处理耗时（批量模式下为一次 handleBatch）")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.totalTimer = Timer.builder(METRIC_PREFIX + ".total")
+                .description("一次消费回调的总耗时：单条为反序列化 + 业务处理，批量模式下含批量幂等认领")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failures = Counter.builder(METRIC_PREFIX + ".failures")
+                .description("反序列化或业务处理失败次数")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    public void recordDeserialize(long startNanos) {
+        deserializeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHandle(long startNanos) {
+        handleTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTotal(long startNanos) {
+        totalTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void incrementFailures() {
+        failures.increment();
+    }
+}
@@ -1,10 +1,12 @@
 package com.huskymqplayground.mq;
 
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.domain.UserLog;
 import com.huskymqplayground.dto.UserLogDTO;
-import com.huskymqplayground.mapper.UserLogMapper;
+import com.huskymqplayground.service.UserLogWriteBehindBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.redisson.api.RBucket;
@@ -12,25 +14,36 @@ import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 
 /**
  * V1 版本消费者：手动实现幂等性校验
- * 演示最原始的 setIfAbsent + try-catch-delete 模式
+ * 演示最原始的 setIfAbsent + try-catch-delete 模式；消息体按 MessageCodecRegistry 解码
  */
 @Slf4j
 @Component
 @RocketMQMessageListener(topic = "user-log-topic", consumerGroup = "husky-consumer-group-v1")
 @ConditionalOnProperty(prefix = "rocketmq.consumer.switch.AsyncSave", name = "v1", havingValue = "true")
 @RequiredArgsConstructor
-public class AsyncSaveConsumerV1 implements RocketMQListener<UserLogDTO> {
+public class AsyncSaveConsumerV1 implements RocketMQListener<MessageExt> {
 
-    private final UserLogMapper userLogMapper;
+    private final UserLogWriteBehindBuffer userLogWriteBehindBuffer;
     private final RedissonClient redissonClient;
+    private final MessageCodecRegistry codecRegistry;
 
     @Override
-    public void onMessage(UserLogDTO message) {
+    public void onMessage(MessageExt messageExt) {
+        // 0. 按消息头 codec / compression 解码，灰度期间 JSON、Smile 和生产端压缩过的消息体都能消费
+        UserLogDTO message;
+        try {
+            message = codecRegistry.decode(messageExt, UserLogDTO.class);
+        } catch (IOException e) {
+            log.error("[V1-Manual] Message decode failed. MsgId: {}", messageExt.getMsgId(), e);
+            throw new UncheckedIOException(e);
+        }
         log.info("[V1-Manual] Received message. TraceId: {}, Payload: {}", message.getTraceId(), message);
         
         // 1. 幂等性校验：使用 Redisson 的原子操作 setIfAbsent (SETNX)
@@ -53,7 +66,7 @@ public class AsyncSaveConsumerV1 implements RocketMQListener<UserLogDTO> {
             userLog.setOperation(message.getOperation() + "_V1"); // 标记 V1 处理
             userLog.setCreateTime(LocalDateTime.now());
             
-            userLogMapper.insert(userLog);
+            userLogWriteBehindBuffer.write(userLog); // 写后缓冲合并提交，提交成功后才返回
             log.info("[V1-Manual] Saved user log to database. ID: {}", userLog.getId());
         } catch (Exception e) {
             // 3. 异常处理：删除 Key 以便重试
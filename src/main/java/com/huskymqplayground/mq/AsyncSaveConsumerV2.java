@@ -1,10 +1,10 @@
 package com.huskymqplayground.mq;
 
 import com.huskymqplayground.domain.UserLog;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.dto.UserLogDTO;
-import com.huskymqplayground.mapper.UserLogMapper;
+import com.huskymqplayground.service.UserLogWriteBehindBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -13,7 +13,6 @@ import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
 @Slf4j
@@ -23,16 +22,15 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class AsyncSaveConsumerV2 implements RocketMQListener<MessageExt> {
 
-    private final UserLogMapper userLogMapper;
-    private final ObjectMapper objectMapper;
+    private final UserLogWriteBehindBuffer userLogWriteBehindBuffer;
+    private final MessageCodecRegistry codecRegistry;
 
     @Override
     @RocketMQIdempotent // 开启幂等性校验
     public void onMessage(MessageExt messageExt) {
         try {
-            // 1. 手动反序列化 Body
-            String json = new String(messageExt.getBody(), StandardCharsets.UTF_8);
-            UserLogDTO message = objectMapper.readValue(json, UserLogDTO.class);
+            // 1. 手动反序列化 Body（按消息头 codec 选择解码器）
+            UserLogDTO message = codecRegistry.decode(messageExt, UserLogDTO.class);
             
             log.info("[V2-AOP] Received message. Keys: {}, Payload: {}", messageExt.getKeys(), message);
 
@@ -42,7 +40,7 @@ public class AsyncSaveConsumerV2 implements RocketMQListener<MessageExt> {
             userLog.setOperation(message.getOperation() + "_V2"); // 标记 V2 处理
             userLog.setCreateTime(LocalDateTime.now());
             
-            userLogMapper.insert(userLog);
+            userLogWriteBehindBuffer.write(userLog); // 写后缓冲合并提交，提交成功后才返回
             log.info("[V2-AOP] Saved user log to database. ID: {}", userLog.getId());
             
         } catch (Exception e) {
@@ -1,9 +1,12 @@
 package com.huskymqplayground.mq;
 
+import com.huskymqplayground.annotation.RocketMQBatchConsume;
 import com.huskymqplayground.annotation.RocketMQIdempotent;
 import com.huskymqplayground.domain.UserLog;
 import com.huskymqplayground.dto.UserLogDTO;
-import com.huskymqplayground.mapper.UserLogMapper;
+import com.huskymqplayground.idempotent.IdempotentMode;
+import com.huskymqplayground.query.QueryService;
+import com.huskymqplayground.service.UserLogWriteBehindBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -13,10 +16,12 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * V3 版本消费者：继承 BaseRocketMQListener
- * 既享受了 DTO 的便利，又拥有 MessageExt 的元数据，还配合了 AOP 幂等
+ * 既享受了 DTO 的便利，又拥有 MessageExt 的元数据，幂等由类上的注解声明
  */
 @Slf4j
 @Component
@@ -26,34 +31,65 @@ import java.time.LocalDateTime;
     consumeMode = ConsumeMode.ORDERLY // 开启顺序消费模式
 )
 @ConditionalOnProperty(prefix = "rocketmq.consumer.switch.AsyncSave", name = "v3", havingValue = "true", matchIfMissing = true) // 默认开启
+@RocketMQBatchConsume(maxSize = 32, lanes = 4, parkRetries = 5) // 开启批量消费：批量幂等认领 + 写后缓冲合并提交，按用户名分 4 个通道并行，失败的用户停车重试
+@RocketMQIdempotent(prefix = "mq:idempotent:v3:", nearCacheSize = 10000, mode = IdempotentMode.QUEUE_OFFSET) // 开启幂等，顺序消费按队列位点水位判重
 @RequiredArgsConstructor
 public class AsyncSaveConsumerV3 extends BaseRocketMQListener<UserLogDTO> {
 
-    private final UserLogMapper userLogMapper;
-
-    @Override
-    @RocketMQIdempotent(prefix = "mq:idempotent:v3:") // 开启幂等，使用 V3 专属前缀
-    public void onMessage(MessageExt messageExt) {
-        super.onMessage(messageExt);
-    }
+    private final UserLogWriteBehindBuffer userLogWriteBehindBuffer;
+    private final QueryService queryService;
 
     @Override
     protected void handleMessage(UserLogDTO message, MessageExt messageExt) {
         log.info("[V3-BaseClass] Received message. Keys: {}, Payload: {}", messageExt.getKeys(), message);
 
         // 引入随机失败来测试重投和幂等
+        simulateFailure(messageExt.getKeys());
+
+        // 业务逻辑变得非常纯粹
+        UserLog userLog = toUserLog(message);
+        userLogWriteBehindBuffer.write(userLog); // 写后缓冲合并提交，提交成功后才返回
+        queryService.invalidateUserLogsOf(userLog.getUsername());
+        log.info("[V3-BaseClass] Saved user log to database. ID: {}", userLog.getId());
+    }
+
+    @Override
+    protected void handleBatch(List<UserLogDTO> messages, List<MessageExt> messageExts) {
+        log.info("[V3-BaseClass] Received batch. Size: {}", messages.size());
+
+        // 批量模式下按批模拟失败，失败后基类会逐条重试定位
+        simulateFailure("batch of " + messages.size());
+
+        List<UserLog> userLogs = new ArrayList<>(messages.size());
+        for (UserLogDTO message : messages) {
+            userLogs.add(toUserLog(message));
+        }
+        // 整批作为一组交给写后缓冲，与其他消费线程 / 队列的行合并提交，组内原子
+        userLogWriteBehindBuffer.writeAll(userLogs);
+        queryService.invalidateUserLogsOf(userLogs.stream().map(UserLog::getUsername).toList());
+        log.info("[V3-BaseClass] Saved user log batch to database. Size: {}", userLogs.size());
+    }
+
+    /**
+     * 只需保证同一用户的日志有序，不同用户之间可以并行；某个用户失败时也只停这个用户
+     */
+    @Override
+    protected Object orderingKey(UserLogDTO message, MessageExt messageExt) {
+        return message.getUsername();
+    }
+
+    private void simulateFailure(String keys) {
         if (Math.random() < 0.5) { // 50% 概率模拟失败
-            log.warn("[V3-BaseClass] Simulating a processing failure for message. Keys: {}", messageExt.getKeys());
+            log.warn("[V3-BaseClass] Simulating a processing failure for message. Keys: {}", keys);
             throw new RuntimeException("Simulated failure to trigger message redelivery.");
         }
+    }
 
-        // 业务逻辑变得非常纯粹
+    private UserLog toUserLog(UserLogDTO message) {
         UserLog userLog = new UserLog();
         userLog.setUsername(message.getUsername());
         userLog.setOperation(message.getOperation() + "_V3");
         userLog.setCreateTime(LocalDateTime.now());
-
-        userLogMapper.insert(userLog);
-        log.info("[V3-BaseClass] Saved user log to database. ID: {}", userLog.getId());
+        return userLog;
     }
 }
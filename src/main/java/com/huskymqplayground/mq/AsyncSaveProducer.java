@@ -1,41 +1,43 @@
 package com.huskymqplayground.mq;
 
+import com.huskymqplayground.bulkhead.BulkheadFullException;
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.dto.OrderDTO;
 import com.huskymqplayground.dto.UserLogDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
-import org.apache.rocketmq.spring.core.RocketMQTemplate;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AsyncSaveProducer {
 
-    private final RocketMQTemplate rocketMQTemplate;
+    private final ProducerBatchAccumulator batchAccumulator;
+    private final MessageCodecRegistry codecRegistry;
 
-    public void sendUserLog(UserLogDTO userLogDTO) {
+    public CompletableFuture<SendResult> sendUserLog(UserLogDTO userLogDTO) {
         // Topic: user-log-topic
         String topic = "user-log-topic";
         
         // 构建消息，设置 Keys (业务唯一标识)
         // 最佳实践：Keys 应该唯一且方便查询，如订单号、流水号、UUID
-        org.springframework.messaging.Message<UserLogDTO> message = MessageBuilder.withPayload(userLogDTO)
+        // 消息体由编解码器直接编码为 byte[]，并带上 codec 头
+        org.springframework.messaging.Message<byte[]> message = codecRegistry.newMessage(userLogDTO)
                 .setHeader(org.apache.rocketmq.spring.support.RocketMQHeaders.KEYS, userLogDTO.getTraceId())
                 .build();
 
-        // Send async message
-        rocketMQTemplate.asyncSend(topic, message, new SendCallback() {
-            @Override
-            public void onSuccess(SendResult sendResult) {
+        // 交给批量累加器，与同一 Topic 的其他日志合并为一条批量消息异步发出
+        return batchAccumulator.send(topic, message).whenComplete((sendResult, e) -> {
+            if (e == null) {
                 log.info("Send message success. msgId: {}, keys: {}", sendResult.getMsgId(), userLogDTO.getTraceId());
-            }
-
-            @Override
-            public void onException(Throwable e) {
+            } else if (e instanceof BulkheadFullException) {
+                // overflow=SHED 时在途许可耗尽被丢弃，已计入 mq.producer.send.shed，不打堆栈
+                log.warn("Send message shed. keys: {}", userLogDTO.getTraceId());
+            } else {
                 log.error("Send message failed. keys: {}", userLogDTO.getTraceId(), e);
             }
         });
@@ -43,18 +45,25 @@ public class AsyncSaveProducer {
 
 
 
-    public void sendOrderedUserLog(UserLogDTO userLogDTO, String hashKey) {
+    public CompletableFuture<SendResult> sendOrderedUserLog(UserLogDTO userLogDTO, String hashKey) {
         // Topic: user-log-topic
         String topic = "user-log-topic";
 
         // 构建消息
-        org.springframework.messaging.Message<UserLogDTO> message = MessageBuilder.withPayload(userLogDTO)
+        org.springframework.messaging.Message<byte[]> message = codecRegistry.newMessage(userLogDTO)
                 .setHeader(org.apache.rocketmq.spring.support.RocketMQHeaders.KEYS, userLogDTO.getTraceId())
                 .build();
 
-        // Send ordered message (sync)
-        // hashKey 通常使用 userId 或 orderId，确保同一组消息进入同一个 Queue
-        rocketMQTemplate.syncSendOrderly(topic, message, hashKey);
-        log.info("Send ordered message success. keys: {}, hashKey: {}", userLogDTO.getTraceId(), hashKey);
+        // Send ordered message (batched per queue)
+        // hashKey 通常使用 userId 或 orderId，确保同一组消息进入同一个 Queue；同一 Queue 的批次按提交顺序依次发出
+        return batchAccumulator.sendOrderly(topic, message, hashKey).whenComplete((sendResult, e) -> {
+            if (e == null) {
+                log.info("Send ordered message success. keys: {}, hashKey: {}", userLogDTO.getTraceId(), hashKey);
+            } else if (e instanceof BulkheadFullException) {
+                log.warn("Send ordered message shed. keys: {}, hashKey: {}", userLogDTO.getTraceId(), hashKey);
+            } else {
+                log.error("Send ordered message failed. keys: {}, hashKey: {}", userLogDTO.getTraceId(), hashKey, e);
+            }
+        });
     }
 }
@@ -1,25 +1,80 @@
 package com.huskymqplayground.mq;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.annotation.RocketMQBatchConsume;
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.annotation.RocketMQRateLimit;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.idempotent.IdempotentService;
+import com.huskymqplayground.metrics.ConsumerMetricTags;
+import com.huskymqplayground.metrics.ConsumerMetrics;
+import com.huskymqplayground.mq.interceptor.ConsumeChain;
+import com.huskymqplayground.mq.interceptor.ConsumeContext;
+import com.huskymqplayground.mq.interceptor.ConsumeInterceptor;
+import com.huskymqplayground.mq.interceptor.IdempotencyInterceptor;
+import com.huskymqplayground.mq.interceptor.MetricsInterceptor;
+import com.huskymqplayground.mq.interceptor.RateLimitInterceptor;
+import com.huskymqplayground.mq.interceptor.TracingInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ReflectionUtils;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * V3 基础监听器：封装 MessageExt 到 DTO 的反序列化逻辑
+ * 单条消费走启动时串好的拦截器链：链路追踪 -> 限流（@RocketMQRateLimit）-> 幂等（类上的 @RocketMQIdempotent）-> 指标 -> 反序列化 + 业务处理
+ * 类上标注 @RocketMQBatchConsume 时切换为批量消费模式，见 {@link #handleBatch}；顺序消费可再按 {@link #orderingKey} 分通道并行
  * @param <T> DTO 类型
  */
 @Slf4j
-public abstract class BaseRocketMQListener<T> implements RocketMQListener<MessageExt> {
+public abstract class BaseRocketMQListener<T> implements RocketMQListener<MessageExt>, RocketMQPushConsumerLifecycleListener {
 
     @Autowired
     protected ObjectMapper objectMapper;
 
+    @Autowired
+    protected MessageCodecRegistry codecRegistry;
+
+    @Autowired
+    private IdempotentService idempotentService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConsumerMetricTags consumerMetricTags;
+
+    @Autowired
+    private Environment environment;
+
+    private ConsumerMetrics metrics;
+
+    private RocketMQIdempotent idempotent;
+
+    private ConsumeChain consumeChain;
+
     private final Class<T> messageType;
 
     @SuppressWarnings("unchecked")
@@ -33,26 +88,168 @@ public abstract class BaseRocketMQListener<T> implements RocketMQListener<Messag
         }
     }
 
+    @PostConstruct
+    void initConsumeChain() {
+        Tags tags = consumerMetricTags.of(getClass());
+        this.metrics = new ConsumerMetrics(meterRegistry, tags);
+        this.idempotent = findIdempotent();
+
+        List<ConsumeInterceptor> interceptors = new ArrayList<>();
+        if (environment.getProperty("husky.mq.consumer.tracing.enabled", Boolean.class, true)) {
+            interceptors.add(new TracingInterceptor());
+        }
+        RocketMQRateLimit rateLimit = AnnotationUtils.findAnnotation(getClass(), RocketMQRateLimit.class);
+        if (rateLimit != null) {
+            double permitsPerSecond = Double.parseDouble(environment.resolveRequiredPlaceholders(rateLimit.permitsPerSecond()));
+            if (permitsPerSecond > 0) {
+                interceptors.add(new RateLimitInterceptor(permitsPerSecond, meterRegistry, tags));
+            }
+        }
+        // 方法上的注解仍由 IdempotentAspect 处理，这里只接管类上的
+        if (AnnotationUtils.findAnnotation(getClass(), RocketMQIdempotent.class) != null) {
+            interceptors.add(new IdempotencyInterceptor(idempotentService, idempotent, getClass()));
+        }
+        interceptors.add(new MetricsInterceptor(metrics));
+        this.consumeChain = ConsumeChain.of(interceptors, this::deserializeAndHandle);
+    }
+
     @Override
     public void onMessage(MessageExt messageExt) {
+        try {
+            consumeChain.proceed(new ConsumeContext(messageExt));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 消费链的末端
+     */
+    private void deserializeAndHandle(ConsumeContext context) throws Exception {
+        MessageExt messageExt = context.messageExt();
         try {
             // 1. 自动反序列化
-            String json = new String(messageExt.getBody(), StandardCharsets.UTF_8);
-            T dto = objectMapper.readValue(json, messageType);
-            
-            // 2. 调用业务处理方法
+            long start = System.nanoTime();
+            T dto = deserialize(messageExt);
+            metrics.recordDeserialize(start);
+
+            // 2. 等待与反序列化并行的异步幂等认领（@RocketMQIdempotent#asyncClaim），重复消息不进入业务
+            if (!context.awaitAdmission()) {
+                return;
+            }
+
+            // 3. 调用业务处理方法
+            long handleStart = System.nanoTime();
             handleMessage(dto, messageExt);
-            
+            metrics.recordHandle(handleStart);
+
         } catch (Exception e) {
             log.error("Message deserialization or processing failed. MsgId: {}", messageExt.getMsgId(), e);
-            throw new RuntimeException(e);
+            throw e;
         }
     }
 
+    /**
+     * 反序列化消息体：按消息头 codec 选择解码器，直接从 byte[] 解码
+     */
+    protected T deserialize(MessageExt messageExt) throws IOException {
+        return codecRegistry.decode(messageExt, messageType);
+    }
+
     /**
      * 业务处理方法
      * @param dto 反序列化后的 DTO 对象
      * @param messageExt 原始消息（包含 Keys, Tags 等元数据）
      */
     protected abstract void handleMessage(T dto, MessageExt messageExt);
+
+    /**
+     * 批量业务处理方法（需在类上标注 @RocketMQBatchConsume）
+     * 重写时必须保证整批原子：要么全部成功，要么抛异常且不留副作用（如一条多行 INSERT）
+     * 抛异常后框架会逐条调用 handleMessage 定位失败的消息，只有失败的消息会被重投
+     * 默认实现逐条调用 handleMessage
+     * @param dtos 反序列化后的 DTO 列表（已过滤重复消息）
+     * @param messageExts 与 dtos 一一对应的原始消息
+     */
+    protected void handleBatch(List<T> dtos, List<MessageExt> messageExts) {
+        for (int i = 0; i < dtos.size(); i++) {
+            handleMessage(dtos.get(i), messageExts.get(i));
+        }
+    }
+
+    /**
+     * 顺序键（@RocketMQBatchConsume#lanes 大于 1 或开启停车重试时使用）
+     * 顺序键相同的消息落在同一通道内按位点顺序处理，不同顺序键之间不保证顺序
+     * 默认取消息 Keys；没有 Keys 的消息退回队列号，同一队列的这类消息都在一个通道内串行，不会打乱顺序
+     */
+    protected Object orderingKey(T dto, MessageExt messageExt) {
+        String keys = messageExt.getKeys();
+        return keys == null || keys.isEmpty() ? messageExt.getQueueId() : keys;
+    }
+
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        RocketMQBatchConsume batchConsume = AnnotationUtils.findAnnotation(getClass(), RocketMQBatchConsume.class);
+        if (batchConsume == null) {
+            return;
+        }
+
+        consumer.setConsumeMessageBatchMaxSize(batchConsume.maxSize());
+        consumer.setPullBatchSize(Math.max(consumer.getPullBatchSize(), batchConsume.maxSize()));
+        if (batchConsume.lingerMillis() > 0) {
+            // Push 消费没有真正的 linger，用拉取间隔让消息在 Broker 侧攒一攒
+            consumer.setPullInterval(batchConsume.lingerMillis());
+        }
+
+        boolean orderly = consumer.getMessageListener() instanceof MessageListenerOrderly;
+        int lanes = orderly ? batchConsume.lanes() : 1;
+        int parkRetries = orderly ? batchConsume.parkRetries() : 0;
+        ExecutorService laneExecutor = lanes > 1 || parkRetries > 0 ? newLaneExecutor(consumer, lanes) : null;
+        RetryParking retryParking = null;
+        if (parkRetries > 0) {
+            // 停车期间积压的未提交消息不超过拉取流控阈值的一半，留出余量继续拉取其他顺序键的消息
+            retryParking = new RetryParking(parkRetries, batchConsume.parkBackoffMillis(), batchConsume.parkMaxBackoffMillis(),
+                    Math.max(1, consumer.getPullThresholdForQueue() / 2), laneExecutor, consumer, meterRegistry,
+                    getClass().getSimpleName());
+            consumer.setMessageQueueListener(retryParking.queueListener(consumer.getMessageQueueListener()));
+        }
+        BatchConsumeSupport<T> support = new BatchConsumeSupport<>(this, idempotentService, idempotent,
+                isOverridden("handleBatch", List.class, List.class), lanes, laneExecutor, retryParking, metrics);
+        consumer.setMessageListener(orderly ? support.orderlyListener() : support.concurrentlyListener(consumer));
+        log.info("Batch consume enabled. Listener: {}, MaxSize: {}, LingerMillis: {}, Orderly: {}, Lanes: {}, ParkRetries: {}",
+                getClass().getSimpleName(), batchConsume.maxSize(), batchConsume.lingerMillis(), orderly, lanes, parkRetries);
+    }
+
+    /**
+     * 通道线程池（同时执行停车重试）：每个消费线程（一个队列）最多同时占用 lanes 个线程，池满时由提交线程自己执行
+     * 虚拟线程模式下通道线程用虚拟线程（通道任务不在顺序消费的 synchronized 块内执行），上限不变
+     */
+    private ExecutorService newLaneExecutor(DefaultMQPushConsumer consumer, int lanes) {
+        String prefix = getClass().getSimpleName() + "-lane-";
+        ThreadFactory threadFactory = Threading.VIRTUAL.isActive(environment)
+                ? Thread.ofVirtual().name(prefix, 1).factory()
+                : Thread.ofPlatform().name(prefix, 1).daemon().factory();
+        return new ThreadPoolExecutor(lanes, lanes * consumer.getConsumeThreadMax(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 幂等配置：优先取类上的注解；兼容老写法，其次取 onMessage 上的（单条消费由 IdempotentAspect 处理，批量模式绕过了 AOP，由基类自行处理）
+     */
+    private RocketMQIdempotent findIdempotent() {
+        RocketMQIdempotent onClass = AnnotationUtils.findAnnotation(getClass(), RocketMQIdempotent.class);
+        Method onMessage = ReflectionUtils.findMethod(getClass(), "onMessage", MessageExt.class);
+        RocketMQIdempotent onMethod = onMessage == null ? null : AnnotationUtils.findAnnotation(onMessage, RocketMQIdempotent.class);
+        if (onClass != null && onMethod != null) {
+            throw new IllegalStateException("@RocketMQIdempotent must be declared either on the class or on onMessage, not both: " + getClass().getName());
+        }
+        return onClass != null ? onClass : onMethod;
+    }
+
+    private boolean isOverridden(String name, Class<?>... paramTypes) {
+        Method method = ReflectionUtils.findMethod(getClass(), name, paramTypes);
+        return method != null && method.getDeclaringClass() != BaseRocketMQListener.class;
+    }
 }
@@ -0,0 +1,412 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.idempotent.IdempotentClaim;
+import com.huskymqplayground.idempotent.IdempotentService;
+import com.huskymqplayground.metrics.ConsumerMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.exception.RemotingException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 批量消费的执行逻辑：批量认领幂等 Key -> 反序列化 -> handleBatch -> 失败时逐条定位
+ * 并发模式下只把失败的消息 sendMessageBack 重投；顺序模式下在第一条失败处停止，整批挂起重投，
+ * 已成功的消息在重投时由幂等 Key / 队列位点水位拦截（水位在处理成功后按批提交）；顺序模式可按顺序键分通道并行，见 {@link #processLanes}，
+ * 开启停车重试时失败只停该顺序键，批次不等停车链，见 {@link #handleWithParking}
+ */
+@Slf4j
+class BatchConsumeSupport<T> {
+
+    private static final long SUSPEND_MILLIS = 1000;
+
+    private final BaseRocketMQListener<T> listener;
+    private final IdempotentService idempotentService;
+    private final RocketMQIdempotent idempotent;
+    private final boolean batchHandlerOverridden;
+    private final int lanes;
+    private final Executor laneExecutor;
+    private final RetryParking retryParking;
+    private final ConsumerMetrics metrics;
+
+    /**
+     * @param lanes 顺序消费的通道数
+     * @param laneExecutor 通道线程池，lanes 大于 1 或开启停车重试时必须提供
+     * @param retryParking 按顺序键停车重试，null 表示失败即整批挂起
+     */
+    BatchConsumeSupport(BaseRocketMQListener<T> listener, IdempotentService idempotentService,
+                        RocketMQIdempotent idempotent, boolean batchHandlerOverridden,
+                        int lanes, Executor laneExecutor, RetryParking retryParking, ConsumerMetrics metrics) {
+        this.listener = listener;
+        this.idempotentService = idempotentService;
+        this.idempotent = idempotent;
+        this.batchHandlerOverridden = batchHandlerOverridden;
+        this.lanes = lanes;
+        this.laneExecutor = laneExecutor;
+        this.retryParking = retryParking;
+        this.metrics = metrics;
+    }
+
+    MessageListenerConcurrently concurrentlyListener(DefaultMQPushConsumer consumer) {
+        return (msgs, context) -> {
+            long start = System.nanoTime();
+            List<MessageExt> failed = process(msgs, false);
+            metrics.recordTotal(start);
+            if (failed.isEmpty()) {
+                return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+            }
+            try {
+                // 只把失败的消息发回重试队列，整批其余消息正常确认
+                for (MessageExt messageExt : failed) {
+                    sendMessageBack(consumer, messageExt, context.getDelayLevelWhenNextConsume(),
+                            context.getMessageQueue().getBrokerName());
+                }
+                return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+            } catch (Exception e) {
+                // 发回失败则整批重投，已成功的消息由幂等 Key 拦截
+                log.error("Send failed messages back failed, reconsume the whole batch. Size: {}", msgs.size(), e);
+                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+        };
+    }
+
+    /**
+     * 把消息发回 Broker 的重试队列，delayLevel 为 -1 时直接进入死信队列
+     * 5.x 的 Remoting 客户端把 DefaultMQPushConsumer 上继承自 MQAdmin 的方法都标成了废弃，sendMessageBack 没有替代 API
+     * （客户端自己重投也是走 DefaultMQPushConsumerImpl#sendMessageBack），只能在这一处压掉警告
+     */
+    @SuppressWarnings("deprecation")
+    static void sendMessageBack(DefaultMQPushConsumer consumer, MessageExt messageExt, int delayLevel, String brokerName)
+            throws RemotingException, MQBrokerException, InterruptedException, MQClientException {
+        consumer.sendMessageBack(messageExt, delayLevel, brokerName);
+    }
+
+    /**
+     * 开启停车重试时，队列还有停车链的批次关闭自动提交，只确认消费、不提交位点；停车链都有结果后的批次照常自动提交，
+     * 连同之前积压的一起提交（自动提交下 SUCCESS 提交的是队列已消费的全部消息）。
+     * 未提交的消息在宕机或队列被分走后从已提交位点重投，由水位和 Keys 标记拦截已完成的部分
+     */
+    MessageListenerOrderly orderlyListener() {
+        return (msgs, context) -> {
+            long start = System.nanoTime();
+            List<MessageExt> failed = laneExecutor != null ? processLanes(msgs, context.getMessageQueue()) : process(msgs, true);
+            metrics.recordTotal(start);
+            if (failed.isEmpty()) {
+                if (retryParking != null && retryParking.holdOffsets(context.getMessageQueue(), msgs.size())) {
+                    context.setAutoCommit(false);
+                }
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+            // 顺序消费只能整批提交或整批挂起，重投时已成功的消息由幂等拦截
+            context.setSuspendCurrentQueueTimeMillis(SUSPEND_MILLIS);
+            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+        };
+    }
+
+    /**
+     * 处理一批消息，返回需要重投的消息
+     * @param stopOnFailure 顺序模式：第一条失败之后的消息都不处理，一并视为失败
+     */
+    List<MessageExt> process(List<MessageExt> msgs, boolean stopOnFailure) {
+        List<MessageExt> failed = new ArrayList<>();
+        List<IdempotentClaim> completedClaims = new ArrayList<>();
+        List<IdempotentClaim> releaseClaims = new ArrayList<>();
+
+        // 1. 批量认领（一次 RBatch 往返），null 表示重复消息
+        IdempotentClaim[] claims = claimAll(msgs);
+
+        // 2. 反序列化未重复的消息
+        List<T> dtos = new ArrayList<>(msgs.size());
+        List<MessageExt> pending = new ArrayList<>(msgs.size());
+        List<IdempotentClaim> pendingClaims = new ArrayList<>(msgs.size());
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt messageExt = msgs.get(i);
+            if (claims[i] == null) {
+                log.warn("Duplicate message detected, skip processing. Key: {}, MsgId: {}, QueueOffset: {}",
+                        messageExt.getKeys(), messageExt.getMsgId(), messageExt.getQueueOffset());
+                continue;
+            }
+            try {
+                dtos.add(deserialize(messageExt));
+                pending.add(messageExt);
+                pendingClaims.add(claims[i]);
+            } catch (Exception e) {
+                log.error("Message deserialization failed. MsgId: {}", messageExt.getMsgId(), e);
+                failed.add(messageExt);
+                releaseClaims.add(claims[i]);
+                if (stopOnFailure) {
+                    failRemaining(msgs, claims, i + 1, failed, releaseClaims);
+                    break;
+                }
+            }
+        }
+
+        // 3. 整批处理，失败则逐条定位
+        if (!pending.isEmpty()) {
+            if (!batchHandlerOverridden || !handleBatch(dtos, pending)) {
+                handleOneByOne(dtos, pending, pendingClaims, stopOnFailure, failed, completedClaims, releaseClaims);
+            } else {
+                completedClaims.addAll(pendingClaims);
+            }
+        }
+
+        // 4. 一次管道往返提交成功消息的水位、释放失败消息的 Key，以便重投
+        settle(completedClaims, releaseClaims);
+        return failed;
+    }
+
+    /**
+     * 分通道处理一批顺序消息，返回需要重投的消息
+     * 按顺序键把消息分到各通道，通道之间并行、通道内按位点串行，某通道失败只停止该通道后续的消息
+     * （开启停车重试时只停该顺序键，不计入失败，见 {@link #handleWithParking}）；任一通道失败整批挂起，已成功的消息在重投时由 (队列, 通道) 水位或幂等 Key 拦截
+     */
+    List<MessageExt> processLanes(List<MessageExt> msgs, MessageQueue queue) {
+        // 1. 先反序列化以取得顺序键，任一条失败则无法确定它所在的通道，整批挂起
+        List<T> dtos = new ArrayList<>(msgs.size());
+        Object[] keys = new Object[msgs.size()];
+        int[] laneOf = new int[msgs.size()];
+        for (int i = 0; i < msgs.size(); i++) {
+            MessageExt messageExt = msgs.get(i);
+            try {
+                T dto = deserialize(messageExt);
+                dtos.add(dto);
+                keys[i] = listener.orderingKey(dto, messageExt);
+                laneOf[i] = Math.floorMod(Objects.hashCode(keys[i]), lanes);
+            } catch (Exception e) {
+                log.error("Message deserialization failed, suspend the whole batch. MsgId: {}", messageExt.getMsgId(), e);
+                return new ArrayList<>(msgs);
+            }
+        }
+
+        // 2. 按通道批量认领（一次 RBatch 往返）
+        IdempotentClaim[] claims = claimAll(msgs, laneOf);
+
+        // 3. 各通道并行处理，通道内保持位点顺序
+        List<List<Integer>> laneIndexes = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            laneIndexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < msgs.size(); i++) {
+            if (claims[i] == null) {
+                log.warn("Duplicate message detected, skip processing. Key: {}, MsgId: {}, QueueOffset: {}",
+                        msgs.get(i).getKeys(), msgs.get(i).getMsgId(), msgs.get(i).getQueueOffset());
+            } else {
+                laneIndexes.get(laneOf[i]).add(i);
+            }
+        }
+
+        List<CompletableFuture<LaneResult>> futures = new ArrayList<>(lanes);
+        for (List<Integer> indexes : laneIndexes) {
+            if (!indexes.isEmpty()) {
+                futures.add(CompletableFuture.supplyAsync(() -> processLane(indexes, msgs, dtos, keys, claims, queue), laneExecutor));
+            }
+        }
+
+        // 4. 汇总各通道结果，一次管道往返提交水位、释放失败消息的认领
+        List<MessageExt> failed = new ArrayList<>();
+        List<IdempotentClaim> completedClaims = new ArrayList<>();
+        List<IdempotentClaim> releaseClaims = new ArrayList<>();
+        for (CompletableFuture<LaneResult> future : futures) {
+            LaneResult result = future.join();
+            failed.addAll(result.failed());
+            completedClaims.addAll(result.completedClaims());
+            releaseClaims.addAll(result.releaseClaims());
+        }
+        settle(completedClaims, releaseClaims);
+        return failed;
+    }
+
+    private LaneResult processLane(List<Integer> indexes, List<MessageExt> msgs, List<T> dtos, Object[] keys,
+                                   IdempotentClaim[] claims, MessageQueue queue) {
+        List<T> laneDtos = new ArrayList<>(indexes.size());
+        List<MessageExt> laneMsgs = new ArrayList<>(indexes.size());
+        List<Object> laneKeys = new ArrayList<>(indexes.size());
+        List<IdempotentClaim> laneClaims = new ArrayList<>(indexes.size());
+        boolean anyParked = false;
+        for (int i : indexes) {
+            laneDtos.add(dtos.get(i));
+            laneMsgs.add(msgs.get(i));
+            laneKeys.add(keys[i]);
+            laneClaims.add(claims[i]);
+            anyParked |= retryParking != null && retryParking.isParked(queue, keys[i]);
+        }
+
+        List<MessageExt> failed = new ArrayList<>();
+        List<IdempotentClaim> completedClaims = new ArrayList<>();
+        List<IdempotentClaim> releaseClaims = new ArrayList<>();
+        // 有顺序键还在停车时不能整批处理，否则它的消息会越过停车链
+        if (!anyParked && batchHandlerOverridden && handleBatch(laneDtos, laneMsgs)) {
+            completedClaims.addAll(laneClaims);
+        } else if (retryParking == null) {
+            handleOneByOne(laneDtos, laneMsgs, laneClaims, true, failed, completedClaims, releaseClaims);
+        } else {
+            handleWithParking(queue, laneDtos, laneMsgs, laneKeys, laneClaims, completedClaims);
+        }
+        return new LaneResult(failed, completedClaims, releaseClaims);
+    }
+
+    /**
+     * 逐条处理，失败的顺序键停车重试，同一顺序键后续的消息（包括之前批次里已停车的顺序键的消息）排到停车链末尾，其他顺序键照常处理
+     * 不等停车链：交给停车链的位点先登记，水位不会越过它；每条停车的消息有结果后单独结算
+     */
+    private void handleWithParking(MessageQueue queue, List<T> dtos, List<MessageExt> pending, List<Object> keys,
+                                   List<IdempotentClaim> pendingClaims, List<IdempotentClaim> completedClaims) {
+        for (int i = 0; i < pending.size(); i++) {
+            T dto = dtos.get(i);
+            MessageExt messageExt = pending.get(i);
+            Object key = keys.get(i);
+            IdempotentClaim claim = pendingClaims.get(i);
+            Runnable attempt = () -> handleMessage(dto, messageExt);
+
+            if (retryParking.isParked(queue, key)) {
+                hold(claim);
+                settleWhenDone(claim, retryParking.enqueue(queue, key, attempt, messageExt));
+                continue;
+            }
+            try {
+                attempt.run();
+                completedClaims.add(claim);
+            } catch (Exception e) {
+                log.warn("Message processing failed, parking ordering key. Key: {}, MsgId: {}", key, messageExt.getMsgId(), e);
+                hold(claim);
+                settleWhenDone(claim, retryParking.park(queue, key, attempt, messageExt));
+            }
+        }
+    }
+
+    private void hold(IdempotentClaim claim) {
+        if (idempotent != null) {
+            idempotentService.hold(claim);
+        }
+    }
+
+    /**
+     * 停车的消息有结果后结算：处理成功提交水位；进入死信队列时位点水位照常越过它，幂等 Key 则释放以便人工从死信队列重发；
+     * 被放弃时释放幂等 Key，位点登记保留（水位不越过它），由新的持有者重投处理
+     */
+    private void settleWhenDone(IdempotentClaim claim, CompletableFuture<RetryParking.Outcome> outcome) {
+        outcome.whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Parked message completed exceptionally, releasing its claim.", e);
+            }
+            try {
+                if (result == RetryParking.Outcome.DONE
+                        || result == RetryParking.Outcome.DEAD_LETTERED && claim.redisKey() == null) {
+                    settle(List.of(claim), List.of());
+                } else {
+                    settle(List.of(), List.of(claim));
+                }
+            } catch (RuntimeException ex) {
+                log.error("Settle parked message failed. Outcome: {}", result, ex);
+            }
+        });
+    }
+
+    private IdempotentClaim[] claimAll(List<MessageExt> msgs) {
+        return claimAll(msgs, null);
+    }
+
+    private IdempotentClaim[] claimAll(List<MessageExt> msgs, int[] laneOf) {
+        if (idempotent == null) {
+            IdempotentClaim[] claims = new IdempotentClaim[msgs.size()];
+            Arrays.fill(claims, IdempotentClaim.UNCHECKED);
+            return claims;
+        }
+        return idempotentService.claimBatch(idempotent, listener.getClass(), msgs, laneOf);
+    }
+
+    private boolean handleBatch(List<T> dtos, List<MessageExt> pending) {
+        try {
+            long start = System.nanoTime();
+            listener.handleBatch(dtos, pending);
+            metrics.recordHandle(start);
+            return true;
+        } catch (Exception e) {
+            metrics.incrementFailures();
+            log.warn("Batch processing failed, falling back to one-by-one. Size: {}", pending.size(), e);
+            return false;
+        }
+    }
+
+    private void handleOneByOne(List<T> dtos, List<MessageExt> pending, List<IdempotentClaim> pendingClaims,
+                                boolean stopOnFailure, List<MessageExt> failed, List<IdempotentClaim> completedClaims,
+                                List<IdempotentClaim> releaseClaims) {
+        for (int i = 0; i < pending.size(); i++) {
+            MessageExt messageExt = pending.get(i);
+            try {
+                handleMessage(dtos.get(i), messageExt);
+                completedClaims.add(pendingClaims.get(i));
+            } catch (Exception e) {
+                log.error("Message processing failed. MsgId: {}, Keys: {}", messageExt.getMsgId(), messageExt.getKeys(), e);
+                failed.add(messageExt);
+                releaseClaims.add(pendingClaims.get(i));
+                if (stopOnFailure) {
+                    for (int j = i + 1; j < pending.size(); j++) {
+                        failed.add(pending.get(j));
+                        releaseClaims.add(pendingClaims.get(j));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private void failRemaining(List<MessageExt> msgs, IdempotentClaim[] claims, int from,
+                               List<MessageExt> failed, List<IdempotentClaim> releaseClaims) {
+        for (int j = from; j < msgs.size(); j++) {
+            if (claims[j] != null) {
+                failed.add(msgs.get(j));
+                releaseClaims.add(claims[j]);
+            }
+        }
+    }
+
+    private T deserialize(MessageExt messageExt) throws IOException {
+        long start = System.nanoTime();
+        T dto = listener.deserialize(messageExt);
+        metrics.recordDeserialize(start);
+        return dto;
+    }
+
+    private void handleMessage(T dto, MessageExt messageExt) {
+        long start = System.nanoTime();
+        try {
+            listener.handleMessage(dto, messageExt);
+        } catch (RuntimeException e) {
+            metrics.incrementFailures();
+            throw e;
+        }
+        metrics.recordHandle(start);
+    }
+
+    private void settle(List<IdempotentClaim> completedClaims, List<IdempotentClaim> releaseClaims) {
+        if (idempotent == null) {
+            return;
+        }
+        if (!completedClaims.isEmpty()) {
+            idempotentService.completeBatch(idempotent, completedClaims);
+        }
+        if (!releaseClaims.isEmpty()) {
+            idempotentService.releaseBatch(idempotent, listener.getClass(), releaseClaims);
+        }
+    }
+
+    private record LaneResult(List<MessageExt> failed, List<IdempotentClaim> completedClaims,
+                              List<IdempotentClaim> releaseClaims) {
+    }
+}
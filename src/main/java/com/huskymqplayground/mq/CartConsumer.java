@@ -1,8 +1,11 @@
 package com.huskymqplayground.mq;
 
 import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.annotation.RocketMQRateLimit;
+import com.huskymqplayground.catalog.ProductPriceCatalog;
 import com.huskymqplayground.dto.CartDTO;
 import com.huskymqplayground.dto.OrderDTO;
+import com.huskymqplayground.id.SnowflakeIdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -10,7 +13,6 @@ import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
-import java.util.UUID;
 
 @Slf4j
 @Component
@@ -18,16 +20,14 @@ import java.util.UUID;
     topic = "cart-transaction-topic",
     consumerGroup = "husky-cart-consumer-group"
 )
+@RocketMQIdempotent(prefix = "mq:idempotent:cart:", nearCacheSize = 10000, asyncClaim = true)
+@RocketMQRateLimit(permitsPerSecond = "${husky.mq.consumer.cart.permits-per-second:0}") // 按下游订单事务的承受能力限速，缺省不限
 @RequiredArgsConstructor
 public class CartConsumer extends BaseRocketMQListener<CartDTO> {
 
     private final ECommerceProducer eCommerceProducer;
-
-    @Override
-    @RocketMQIdempotent(prefix = "mq:idempotent:cart:")
-    public void onMessage(MessageExt messageExt) {
-        super.onMessage(messageExt);
-    }
+    private final SnowflakeIdGenerator idGenerator;
+    private final ProductPriceCatalog productPriceCatalog;
 
     @Override
     protected void handleMessage(CartDTO cartDTO, MessageExt messageExt) {
@@ -41,12 +41,12 @@ public class CartConsumer extends BaseRocketMQListener<CartDTO> {
         orderDTO.setItemName(cartDTO.getItemName());
         orderDTO.setQuantity(cartDTO.getQuantity());
         
-        // 模拟价格计算
-        BigDecimal price = new BigDecimal("99.00");
+        // 按目录价计价，近端缓存命中时不访问 Redis 和数据库
+        BigDecimal price = productPriceCatalog.priceOf(cartDTO.getItemName());
         orderDTO.setAmount(price.multiply(BigDecimal.valueOf(cartDTO.getQuantity())));
         
         // 生成订单号
-        orderDTO.setOrderNo("ORD-" + UUID.randomUUID().toString().substring(0, 8));
+        orderDTO.setOrderNo(idGenerator.nextOrderNo());
 
         log.info("[CartConsumer] Triggering Order Transaction for OrderNo: {}", orderDTO.getOrderNo());
         eCommerceProducer.sendTransactionalOrder(orderDTO);
@@ -0,0 +1,56 @@
+package com.huskymqplayground.mq;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.huskymqplayground.domain.CartItem;
+import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.mapper.CartItemMapper;
+import com.huskymqplayground.mapper.CartTransactionMapper;
+import com.huskymqplayground.service.TxLogMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * CartTransactionListener 的回查解析，按 husky.mq.tx-log.cart.mode 查 cart_transaction / cart_item
+ */
+@Component
+public class CartTransactionCheckResolver extends TransactionCheckResolver {
+
+    /**
+     * CartTransactionListener 写入事务 ID 的方式，与回查查询的表保持一致
+     */
+    @Getter
+    private final TxLogMode txLogMode;
+
+    public CartTransactionCheckResolver(CartTransactionMapper cartTransactionMapper,
+                                        CartItemMapper cartItemMapper,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${husky.mq.tx-log.cart.mode:SEPARATE}") TxLogMode txLogMode,
+                                        @Value("${husky.mq.tx-check.max-batch-size:500}") int maxBatchSize,
+                                        @Value("${husky.mq.tx-check.linger-millis:5}") long lingerMillis,
+                                        @Value("${husky.mq.tx-check.cache-size:100000}") long cacheSize,
+                                        @Value("${husky.mq.tx-check.cache-ttl-minutes:30}") long cacheTtlMinutes) {
+        super("cart", txLogMode == TxLogMode.INLINE
+                        ? withFallback(inlineTxIds(cartItemMapper), txLogTxIds(cartTransactionMapper))
+                        : withFallback(txLogTxIds(cartTransactionMapper), inlineTxIds(cartItemMapper)),
+                maxBatchSize, lingerMillis, cacheSize, Duration.ofMinutes(cacheTtlMinutes), meterRegistry);
+        this.txLogMode = txLogMode;
+    }
+
+    private static Function<Collection<String>, Collection<String>> txLogTxIds(CartTransactionMapper mapper) {
+        return txIds -> mapper.selectObjs(Wrappers.<CartTransaction>lambdaQuery()
+                .select(CartTransaction::getTxId)
+                .in(CartTransaction::getTxId, txIds));
+    }
+
+    private static Function<Collection<String>, Collection<String>> inlineTxIds(CartItemMapper mapper) {
+        return txIds -> mapper.selectObjs(Wrappers.<CartItem>lambdaQuery()
+                .select(CartItem::getTxId)
+                .in(CartItem::getTxId, txIds));
+    }
+}
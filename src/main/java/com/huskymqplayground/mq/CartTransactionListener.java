@@ -1,10 +1,8 @@
 package com.huskymqplayground.mq;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.dto.CartDTO;
-import com.huskymqplayground.mapper.CartTransactionMapper;
-import com.huskymqplayground.service.CartService;
+import com.huskymqplayground.service.CartAddCoalescer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.spring.annotation.RocketMQTransactionListener;
@@ -13,17 +11,15 @@ import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
-
 @Slf4j
 @Component
-@RocketMQTransactionListener(rocketMQTemplateBeanName = "cartRocketMQTemplate")
+@RocketMQTransactionListener(rocketMQTemplateBeanName = "cartRocketMQTemplate", corePoolSize = 16, maximumPoolSize = 16)
 @RequiredArgsConstructor
 public class CartTransactionListener implements RocketMQLocalTransactionListener {
 
-    private final CartService cartService;
-    private final CartTransactionMapper cartTransactionMapper;
-    private final ObjectMapper objectMapper;
+    private final CartAddCoalescer cartAddCoalescer;
+    private final CartTransactionCheckResolver checkResolver;
+    private final MessageCodecRegistry codecRegistry;
 
     @Override
     public RocketMQLocalTransactionState executeLocalTransaction(Message msg, Object arg) {
@@ -31,11 +27,12 @@ public class CartTransactionListener implements RocketMQLocalTransactionListener
         log.info("[CartTxListener] Executing local transaction. TxId: {}", txId);
 
         try {
-            String json = new String((byte[]) msg.getPayload(), StandardCharsets.UTF_8);
-            CartDTO cartDTO = objectMapper.readValue(json, CartDTO.class);
+            CartDTO cartDTO = codecRegistry.decode(msg.getHeaders(), (byte[]) msg.getPayload(), CartDTO.class);
 
-            // 执行本地事务：保存购物车 + 记录事务日志
-            cartService.addToCartWithTxLog(cartDTO, txId);
+            // 执行本地事务：累加购物车 + 记录事务日志，同一窗口内的加购合并为一次提交
+            cartAddCoalescer.add(cartDTO, txId, checkResolver.getTxLogMode());
+            // 事务日志已提交，之后的回查直接命中缓存
+            checkResolver.markCommitted(txId);
 
             if ("unknown".equalsIgnoreCase(cartDTO.getUsername())) {
                 log.warn("[CartTxListener] Scenario: Unknown. DB inserted but returning UNKNOWN to trigger check.");
@@ -56,13 +53,15 @@ public class CartTransactionListener implements RocketMQLocalTransactionListener
         String txId = (String) msg.getHeaders().get("rocketmq_TRANSACTION_ID");
         log.info("[CartTxListener] Checking local transaction status. TxId: {}", txId);
 
-        CartTransaction tx = cartTransactionMapper.selectById(txId);
-        if (tx != null) {
+        // 先查已提交缓存，未命中的与其他并发回查合并为一次 IN 查询
+        RocketMQLocalTransactionState state = checkResolver.resolve(txId);
+        if (state == RocketMQLocalTransactionState.COMMIT) {
             log.info("[CartTxListener] Check result: COMMIT (tx log exists). TxId: {}", txId);
-            return RocketMQLocalTransactionState.COMMIT;
+        } else if (state == RocketMQLocalTransactionState.ROLLBACK) {
+            log.warn("[CartTxListener] Check result: ROLLBACK (tx log missing). TxId: {}", txId);
+        } else {
+            log.warn("[CartTxListener] Check result: UNKNOWN (tx log lookup failed). TxId: {}", txId);
         }
-
-        log.warn("[CartTxListener] Check result: ROLLBACK (tx log missing). TxId: {}", txId);
-        return RocketMQLocalTransactionState.ROLLBACK;
+        return state;
     }
 }
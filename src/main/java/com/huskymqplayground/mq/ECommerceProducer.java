@@ -1,22 +1,48 @@
 package com.huskymqplayground.mq;
 
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.dto.CartDTO;
 import com.huskymqplayground.dto.OrderDTO;
-import lombok.RequiredArgsConstructor;
+import com.huskymqplayground.outbox.OutboxMessageFactory;
+import com.huskymqplayground.service.CartService;
+import com.huskymqplayground.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.producer.SendResult;
-import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 
+/**
+ * husky.mq.outbox.enabled=true 时改走事务发件箱：本地事务直接在调用线程上执行并写入发件箱行，由 OutboxRelay 批量投递，
+ * 不再发送半消息，也没有事务回查
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ECommerceProducer {
 
     private final CartRocketMQTemplate cartRocketMQTemplate;
     private final OrderRocketMQTemplate orderRocketMQTemplate;
+    private final MessageCodecRegistry codecRegistry;
+    private final CartService cartService;
+    private final OrderService orderService;
+    private final OutboxMessageFactory outboxMessageFactory;
+    private final boolean outboxEnabled;
+
+    public ECommerceProducer(CartRocketMQTemplate cartRocketMQTemplate,
+                             OrderRocketMQTemplate orderRocketMQTemplate,
+                             MessageCodecRegistry codecRegistry,
+                             CartService cartService,
+                             OrderService orderService,
+                             OutboxMessageFactory outboxMessageFactory,
+                             @Value("${husky.mq.outbox.enabled:false}") boolean outboxEnabled) {
+        this.cartRocketMQTemplate = cartRocketMQTemplate;
+        this.orderRocketMQTemplate = orderRocketMQTemplate;
+        this.codecRegistry = codecRegistry;
+        this.cartService = cartService;
+        this.orderService = orderService;
+        this.outboxMessageFactory = outboxMessageFactory;
+        this.outboxEnabled = outboxEnabled;
+    }
 
     /**
      * 发送购物车事务消息
@@ -24,10 +50,16 @@ public class ECommerceProducer {
     public void sendTransactionalCart(CartDTO cartDTO) {
         String topic = "cart-transaction-topic";
         
-        Message<CartDTO> message = MessageBuilder.withPayload(cartDTO)
+        Message<byte[]> message = codecRegistry.newMessage(cartDTO)
                 .setHeader(org.apache.rocketmq.spring.support.RocketMQHeaders.KEYS, cartDTO.getTraceId())
                 .build();
 
+        if (outboxEnabled) {
+            cartService.addToCartWithOutbox(cartDTO, outboxMessageFactory.create(topic, message));
+            log.info("Cart saved with outbox message. Keys: {}", cartDTO.getTraceId());
+            return;
+        }
+
         // 使用专用的 CartRocketMQTemplate 发送事务消息
         SendResult sendResult = cartRocketMQTemplate.sendMessageInTransaction(topic, message, null);
         log.info("Send transactional cart result: {}, msgId: {}", sendResult.getSendStatus(), sendResult.getMsgId());
@@ -39,10 +71,16 @@ public class ECommerceProducer {
     public void sendTransactionalOrder(OrderDTO orderDTO) {
         String topic = "order-transaction-topic";
 
-        Message<OrderDTO> message = MessageBuilder.withPayload(orderDTO)
+        Message<byte[]> message = codecRegistry.newMessage(orderDTO)
                 .setHeader(org.apache.rocketmq.spring.support.RocketMQHeaders.KEYS, orderDTO.getTraceId())
                 .build();
 
+        if (outboxEnabled) {
+            orderService.createOrderWithOutbox(orderDTO, outboxMessageFactory.create(topic, message));
+            log.info("Order saved with outbox message. OrderNo: {}", orderDTO.getOrderNo());
+            return;
+        }
+
         // 使用专用的 OrderRocketMQTemplate 发送事务消息
         SendResult sendResult = orderRocketMQTemplate.sendMessageInTransaction(topic, message, null);
         log.info("Send transactional order result: {}, msgId: {}", sendResult.getSendStatus(), sendResult.getMsgId());
@@ -2,6 +2,8 @@ package com.huskymqplayground.mq;
 
 import com.huskymqplayground.annotation.RocketMQIdempotent;
 import com.huskymqplayground.dto.OrderDTO;
+import com.huskymqplayground.idempotent.IdempotentMode;
+import com.huskymqplayground.query.QueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -18,18 +20,17 @@ import org.springframework.stereotype.Component;
      consumeMode = ConsumeMode.ORDERLY
 )
 @ConditionalOnProperty(prefix = "rocketmq.consumer.switch.Order", name = "v3", havingValue = "true", matchIfMissing = true)
+@RocketMQIdempotent(prefix = "mq:idempotent:order:v3:", nearCacheSize = 10000, mode = IdempotentMode.QUEUE_OFFSET, asyncClaim = true)
 @RequiredArgsConstructor
 public class OrderConsumerV3 extends BaseRocketMQListener<OrderDTO> {
 
-    @Override
-    @RocketMQIdempotent(prefix = "mq:idempotent:order:v3:")
-    public void onMessage(MessageExt messageExt) {
-        super.onMessage(messageExt);
-    }
+    private final QueryService queryService;
 
     @Override
     protected void handleMessage(OrderDTO dto, MessageExt messageExt) {
         log.info("[Order-V3] Received order message. Keys: {}, OrderNo: {}, Buyer: {}, Item: {}, Qty: {}, Amount: {}",
                 messageExt.getKeys(), dto.getOrderNo(), dto.getBuyer(), dto.getItemName(), dto.getQuantity(), dto.getAmount());
+        // 事务消息投递时订单已提交，失效该买家缓存的订单列表（异步，不阻塞顺序消费）
+        queryService.invalidateOrdersOf(dto.getBuyer());
     }
 }
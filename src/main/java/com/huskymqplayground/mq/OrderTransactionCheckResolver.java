@@ -0,0 +1,56 @@
+package com.huskymqplayground.mq;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.mapper.PurchaseOrderMapper;
+import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.service.TxLogMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * OrderTransactionListener 的回查解析，按 husky.mq.tx-log.order.mode 查 order_transaction / purchase_order
+ */
+@Component
+public class OrderTransactionCheckResolver extends TransactionCheckResolver {
+
+    /**
+     * OrderTransactionListener 写入事务 ID 的方式，与回查查询的表保持一致
+     */
+    @Getter
+    private final TxLogMode txLogMode;
+
+    public OrderTransactionCheckResolver(OrderTransactionMapper orderTransactionMapper,
+                                         PurchaseOrderMapper purchaseOrderMapper,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${husky.mq.tx-log.order.mode:SEPARATE}") TxLogMode txLogMode,
+                                         @Value("${husky.mq.tx-check.max-batch-size:500}") int maxBatchSize,
+                                         @Value("${husky.mq.tx-check.linger-millis:5}") long lingerMillis,
+                                         @Value("${husky.mq.tx-check.cache-size:100000}") long cacheSize,
+                                         @Value("${husky.mq.tx-check.cache-ttl-minutes:30}") long cacheTtlMinutes) {
+        super("order", txLogMode == TxLogMode.INLINE
+                        ? withFallback(inlineTxIds(purchaseOrderMapper), txLogTxIds(orderTransactionMapper))
+                        : withFallback(txLogTxIds(orderTransactionMapper), inlineTxIds(purchaseOrderMapper)),
+                maxBatchSize, lingerMillis, cacheSize, Duration.ofMinutes(cacheTtlMinutes), meterRegistry);
+        this.txLogMode = txLogMode;
+    }
+
+    private static Function<Collection<String>, Collection<String>> txLogTxIds(OrderTransactionMapper mapper) {
+        return txIds -> mapper.selectObjs(Wrappers.<OrderTransaction>lambdaQuery()
+                .select(OrderTransaction::getTxId)
+                .in(OrderTransaction::getTxId, txIds));
+    }
+
+    private static Function<Collection<String>, Collection<String>> inlineTxIds(PurchaseOrderMapper mapper) {
+        return txIds -> mapper.selectObjs(Wrappers.<PurchaseOrder>lambdaQuery()
+                .select(PurchaseOrder::getTxId)
+                .in(PurchaseOrder::getTxId, txIds));
+    }
+}
@@ -1,9 +1,8 @@
 package com.huskymqplayground.mq;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.codec.MessageCodecRegistry;
 import com.huskymqplayground.dto.OrderDTO;
-import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.id.SnowflakeIdGenerator;
 import com.huskymqplayground.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,18 +12,17 @@ import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
 
 @Slf4j
 @Component
-@RocketMQTransactionListener(rocketMQTemplateBeanName = "orderRocketMQTemplate")
+@RocketMQTransactionListener(rocketMQTemplateBeanName = "orderRocketMQTemplate", corePoolSize = 16, maximumPoolSize = 16)
 @RequiredArgsConstructor
 public class OrderTransactionListener implements RocketMQLocalTransactionListener {
 
     private final OrderService orderService;
-    private final OrderTransactionMapper orderTransactionMapper;
-    private final ObjectMapper objectMapper;
+    private final OrderTransactionCheckResolver checkResolver;
+    private final MessageCodecRegistry codecRegistry;
+    private final SnowflakeIdGenerator idGenerator;
 
     @Override
     public RocketMQLocalTransactionState executeLocalTransaction(Message msg, Object arg) {
@@ -32,12 +30,11 @@ public class OrderTransactionListener implements RocketMQLocalTransactionListene
         log.info("[OrderTxListener] Executing local transaction. TxId: {}", txId);
 
         try {
-            String json = new String((byte[]) msg.getPayload(), StandardCharsets.UTF_8);
-            OrderDTO orderDTO = objectMapper.readValue(json, OrderDTO.class);
+            OrderDTO orderDTO = codecRegistry.decode(msg.getHeaders(), (byte[]) msg.getPayload(), OrderDTO.class);
 
             // 给缺失的订单号兜底，避免 NULL 写库
             if (orderDTO.getOrderNo() == null || orderDTO.getOrderNo().isEmpty()) {
-                orderDTO.setOrderNo("ORD-" + UUID.randomUUID());
+                orderDTO.setOrderNo(idGenerator.nextOrderNo());
             }
 
             if ("rollback".equalsIgnoreCase(orderDTO.getBuyer())) {
@@ -45,7 +42,9 @@ public class OrderTransactionListener implements RocketMQLocalTransactionListene
                 return RocketMQLocalTransactionState.ROLLBACK;
             }
 
-            orderService.createOrderWithTxLog(orderDTO, txId);
+            orderService.createOrderWithTxLog(orderDTO, txId, checkResolver.getTxLogMode());
+            // 事务日志已提交，之后的回查直接命中缓存
+            checkResolver.markCommitted(txId);
 
             if ("unknown".equalsIgnoreCase(orderDTO.getBuyer())) {
                 log.warn("[OrderTxListener] Scenario: Unknown. DB inserted but returning UNKNOWN to trigger check.");
@@ -66,13 +65,15 @@ public class OrderTransactionListener implements RocketMQLocalTransactionListene
         String txId = (String) msg.getHeaders().get("rocketmq_TRANSACTION_ID");
         log.info("[OrderTxListener] Checking local transaction status. TxId: {}", txId);
 
-        OrderTransaction tx = orderTransactionMapper.selectById(txId);
-        if (tx != null) {
-            log.info("[OrderTxListener] Check result: COMMIT (tx log exists). TxId: {}, OrderNo: {}", txId, tx.getOrderNo());
-            return RocketMQLocalTransactionState.COMMIT;
+        // 先查已提交缓存，未命中的与其他并发回查合并为一次 IN 查询
+        RocketMQLocalTransactionState state = checkResolver.resolve(txId);
+        if (state == RocketMQLocalTransactionState.COMMIT) {
+            log.info("[OrderTxListener] Check result: COMMIT (tx log exists). TxId: {}", txId);
+        } else if (state == RocketMQLocalTransactionState.ROLLBACK) {
+            log.warn("[OrderTxListener] Check result: ROLLBACK (tx log missing). TxId: {}", txId);
+        } else {
+            log.warn("[OrderTxListener] Check result: UNKNOWN (tx log lookup failed). TxId: {}", txId);
         }
-
-        log.warn("[OrderTxListener] Check result: ROLLBACK (tx log missing). TxId: {}", txId);
-        return RocketMQLocalTransactionState.ROLLBACK;
+        return state;
     }
 }
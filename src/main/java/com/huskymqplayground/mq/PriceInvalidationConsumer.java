@@ -0,0 +1,33 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.catalog.ProductPriceCatalog;
+import com.huskymqplayground.dto.PriceInvalidationDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 改价失效广播：每个实例都要收到并失效自己的本地价格缓存，所以用 BROADCASTING，且不加 @RocketMQIdempotent
+ * （幂等 Key 在 Redis 中全局共享，第一个实例认领后其他实例会被当作重复消息跳过）；重复失效本身无副作用
+ */
+@Slf4j
+@Component
+@RocketMQMessageListener(
+    topic = ProductPriceCatalog.INVALIDATION_TOPIC,
+    consumerGroup = "husky-price-invalidation-group",
+    messageModel = MessageModel.BROADCASTING
+)
+@RequiredArgsConstructor
+public class PriceInvalidationConsumer extends BaseRocketMQListener<PriceInvalidationDTO> {
+
+    private final ProductPriceCatalog productPriceCatalog;
+
+    @Override
+    protected void handleMessage(PriceInvalidationDTO dto, MessageExt messageExt) {
+        productPriceCatalog.invalidate(dto);
+        log.debug("[PriceInvalidation] Near cache invalidated. Item: {}", dto.getItemName());
+    }
+}
@@ -0,0 +1,531 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.bulkhead.BulkheadFullException;
+import com.huskymqplayground.bulkhead.OverflowStrategy;
+import com.huskymqplayground.bulkhead.ProducerBulkhead;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 生产端批量累加器
+ * 同一 Topic 的消息（顺序消息再按选中的 Queue）先攒在一个桶里，攒够条数 / 字节数或等待 linger 后合并为一条 RocketMQ 批量消息异步发出
+ * 每条消息各自拿到一个 Future，批量发送成功后按位置拆出各自的 msgId / queueOffset
+ * <p>
+ * 客户端不压缩 MessageBatch，这里按生产者的压缩配置逐条压缩消息体并写入 compression 头，由 MessageCodecRegistry 解码前解压；
+ * Keys 与 codec 头逐条保留，消费端幂等不受影响
+ * <p>
+ * 顺序消息按 hashKey 维护在途窗口：同一 hashKey 未确认的消息数达到 max-in-flight-per-key 时调用方阻塞，其他 hashKey 不受影响；
+ * 某条消息发送失败后，同一 hashKey 之后提交、尚未发出的消息直接失败，不会越过它写入 Broker，该 hashKey 的在途消息全部结束后恢复。
+ * 每个 Queue 最多 max-in-flight-batches 批同时在途，缺省 1 批即严格有序；调大后批次流水线发出，
+ * 但 Broker 多线程处理发送请求、客户端异步重试都可能让在途批次乱序，只有确认 Broker 端 sendMessageThreadPoolNums=1 时才建议调大
+ * <p>
+ * 所有消息先向 ProducerBulkhead 申请在途许可，收到应答后归还；许可耗尽时按 husky.bulkhead.producer.overflow 阻塞、抛 BulkheadFullException 或直接丢弃
+ */
+@Slf4j
+@Component
+public class ProducerBatchAccumulator {
+
+    private static final String METRIC_PREFIX = "mq.producer.batch";
+
+    /**
+     * 单条消息在批量编码中除消息体、属性外的固定开销（长度、魔数、CRC、标志位等）
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 20;
+
+    /**
+     * Topic 的可写队列缓存时长，fetchPublishMessageQueues 每次都要访问 NameServer
+     */
+    private static final long QUEUE_REFRESH_MILLIS = 30_000;
+
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ProducerBulkhead producerBulkhead;
+    private final MeterRegistry meterRegistry;
+    private final int maxCount;
+    private final int maxBytes;
+    private final long lingerMillis;
+    private final int maxInFlightPerKey;
+    private final int maxInFlightBatches;
+
+    private final ConcurrentMap<BatchKey, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TopicQueues> topicQueues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<OrderingKey, KeyWindow> keyWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SendMeters> sendMeters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService lingerTimer;
+
+    private final DistributionSummary batchSizeSummary;
+    private final DistributionSummary batchBytesSummary;
+    private final Counter batchFailures;
+    private final Counter orderedAborts;
+    private final Counter shed;
+
+    public ProducerBatchAccumulator(RocketMQTemplate rocketMQTemplate,
+                                    ProducerBulkhead producerBulkhead,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${husky.mq.producer.batch.max-count:256}") int maxCount,
+                                    @Value("${husky.mq.producer.batch.max-bytes:1048576}") int maxBytes,
+                                    @Value("${husky.mq.producer.batch.linger-millis:5}") long lingerMillis,
+                                    @Value("${husky.mq.producer.ordered.max-in-flight-per-key:64}") int maxInFlightPerKey,
+                                    @Value("${husky.mq.producer.ordered.max-in-flight-batches:1}") int maxInFlightBatches) {
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.producerBulkhead = producerBulkhead;
+        this.meterRegistry = meterRegistry;
+        this.maxCount = Math.max(maxCount, 1);
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+        this.maxInFlightPerKey = Math.max(maxInFlightPerKey, 1);
+        this.maxInFlightBatches = Math.max(maxInFlightBatches, 1);
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "producer-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".size")
+                .description("每次批量发送的消息条数")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchBytesSummary = DistributionSummary.builder(METRIC_PREFIX + ".bytes")
+                .description("每次批量发送的估算字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.batchFailures = Counter.builder(METRIC_PREFIX + ".failures")
+                .description("批量发送失败次数")
+                .register(meterRegistry);
+        this.orderedAborts = Counter.builder(METRIC_PREFIX + ".ordered.aborted")
+                .description("同一 hashKey 前序消息失败后未发出的顺序消息数")
+                .register(meterRegistry);
+        meterRegistry.gauge(METRIC_PREFIX + ".ordered.keys", keyWindows, ConcurrentMap::size);
+        this.shed = Counter.builder("mq.producer.send.shed")
+                .description("在途许可耗尽被丢弃的消息数（overflow=SHED）")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 普通消息：按 Topic 合批，由 Broker 侧选择 Queue
+     */
+    public CompletableFuture<SendResult> send(String destination, org.springframework.messaging.Message<?> message) {
+        Message rocketMsg = toRocketMessage(destination, message);
+        if (!admit(rocketMsg)) {
+            return shed(rocketMsg);
+        }
+        CompletableFuture<SendResult> future = track(rocketMsg, new CompletableFuture<>());
+        return bucketOf(new BatchKey(rocketMsg.getTopic(), null)).add(new PendingMessage(rocketMsg, null, future));
+    }
+
+    /**
+     * 顺序消息：按 hashKey 选出 Queue 后按 Queue 合批，批次之间保持提交顺序
+     * 该 hashKey 的在途窗口已满时阻塞等待；前序消息已失败时返回失败的 Future，不再发送
+     */
+    public CompletableFuture<SendResult> sendOrderly(String destination, org.springframework.messaging.Message<?> message, String hashKey) {
+        Message rocketMsg = toRocketMessage(destination, message);
+        MessageQueue queue = rocketMQTemplate.getMessageQueueSelector().select(queuesOf(rocketMsg.getTopic()), rocketMsg, hashKey);
+        if (!admit(rocketMsg)) {
+            return shed(rocketMsg);
+        }
+        CompletableFuture<SendResult> future = track(rocketMsg, new CompletableFuture<>());
+
+        OrderingKey orderingKey = new OrderingKey(rocketMsg.getTopic(), hashKey);
+        KeyWindow window = keyWindows.compute(orderingKey, (k, existing) -> {
+            KeyWindow current = existing != null ? existing : new KeyWindow(k, maxInFlightPerKey);
+            current.pending++;
+            return current;
+        });
+        try {
+            window.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(window, false);
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((result, e) -> release(window, true));
+
+        Throwable failure = window.failure;
+        if (failure != null) {
+            orderedAborts.increment();
+            future.completeExceptionally(new MessagingException("Earlier ordered send failed. HashKey: " + hashKey, failure));
+            return future;
+        }
+        return bucketOf(new BatchKey(rocketMsg.getTopic(), queue)).add(new PendingMessage(rocketMsg, window, future));
+    }
+
+    /**
+     * 申请在途许可；拿不到时 SHED 返回 false，BLOCK / FAIL_FAST 抛出 BulkheadFullException
+     */
+    private boolean admit(Message message) {
+        try {
+            producerBulkhead.acquire();
+            return true;
+        } catch (BulkheadFullException e) {
+            if (producerBulkhead.getOverflowStrategy() != OverflowStrategy.SHED) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    private CompletableFuture<SendResult> shed(Message message) {
+        shed.increment();
+        return CompletableFuture.failedFuture(new BulkheadFullException(producerBulkhead.getName(), "message shed. Keys: " + message.getKeys()));
+    }
+
+    /**
+     * 应答后归还在途许可，并记录从提交到应答的耗时与失败次数；返回原 Future，调用方拿到的异常不会被包装
+     */
+    private CompletableFuture<SendResult> track(Message message, CompletableFuture<SendResult> future) {
+        SendMeters meters = sendMeters.computeIfAbsent(message.getTopic(), topic -> new SendMeters(meterRegistry, topic));
+        long start = System.nanoTime();
+        future.whenComplete((result, e) -> {
+            producerBulkhead.release();
+            (e == null ? meters.success : meters.failure).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (e != null) {
+                meters.failuresOf(e.getClass()).increment();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 该 hashKey 没有未结束的消息时移除窗口，失败标记随之清除
+     */
+    private void release(KeyWindow window, boolean acquired) {
+        if (acquired) {
+            window.permits.release();
+        }
+        keyWindows.computeIfPresent(window.key, (k, current) -> {
+            if (current != window) {
+                return current;
+            }
+            return --current.pending == 0 ? null : current;
+        });
+    }
+
+    private Message toRocketMessage(String destination, org.springframework.messaging.Message<?> message) {
+        // 与 RocketMQTemplate 相同的转换：KEYS 头写入 keys，其他头（含 codec）写入用户属性
+        Message rocketMsg = RocketMQUtil.convertToRocketMessage(
+                rocketMQTemplate.getMessageConverter(), rocketMQTemplate.getCharset(), destination, message);
+        DefaultMQProducer producer = rocketMQTemplate.getProducer();
+        byte[] body = rocketMsg.getBody();
+        if (body.length > producer.getCompressMsgBodyOverHowmuch()) {
+            try {
+                rocketMsg.setBody(producer.getCompressor().compress(body, producer.getCompressLevel()));
+                rocketMsg.putUserProperty(MessageCodecRegistry.COMPRESSION_HEADER, producer.getCompressType().name());
+            } catch (Exception e) {
+                log.warn("Compress message body failed, sending uncompressed. Topic: {}", rocketMsg.getTopic(), e);
+            }
+        }
+        return rocketMsg;
+    }
+
+    private Bucket bucketOf(BatchKey key) {
+        return buckets.computeIfAbsent(key, Bucket::new);
+    }
+
+    private List<MessageQueue> queuesOf(String topic) {
+        long now = System.currentTimeMillis();
+        TopicQueues cached = topicQueues.get(topic);
+        if (cached == null || now - cached.fetchedAt() > QUEUE_REFRESH_MILLIS) {
+            try {
+                cached = new TopicQueues(rocketMQTemplate.getProducer().fetchPublishMessageQueues(topic), now);
+                topicQueues.put(topic, cached);
+            } catch (MQClientException e) {
+                if (cached == null) {
+                    throw new MessagingException("Fetch publish queues failed. Topic: " + topic, e);
+                }
+                // NameServer 暂不可用时沿用旧的队列列表
+                log.warn("Refresh publish queues failed, using cached ones. Topic: {}", topic, e);
+            }
+        }
+        return cached.queues();
+    }
+
+    private static int estimateSize(Message message) {
+        String properties = MessageDecoder.messageProperties2String(message.getProperties());
+        return MESSAGE_OVERHEAD_BYTES + message.getBody().length + properties.length();
+    }
+
+    /**
+     * 异步发出一批，返回的 Future 在回调后完成（不论成败），用于串起同一 Queue 的批次
+     */
+    private CompletableFuture<Void> sendBatch(BatchKey key, List<PendingMessage> drained, int bytes) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        List<PendingMessage> batch = new ArrayList<>(drained.size());
+        for (PendingMessage pending : drained) {
+            // 排在同一 hashKey 的失败消息之后的，不再发出
+            Throwable failure = pending.window() == null ? null : pending.window().failure;
+            if (failure != null) {
+                orderedAborts.increment();
+                pending.future().completeExceptionally(new MessagingException("Earlier ordered send failed. Keys: " + pending.message().getKeys(), failure));
+            } else {
+                batch.add(pending);
+            }
+        }
+        if (batch.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message());
+        }
+        batchSizeSummary.record(batch.size());
+        batchBytesSummary.record(bytes);
+
+        SendCallback callback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                complete(batch, sendResult);
+                done.complete(null);
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                batchFailures.increment();
+                log.error("Send batch failed. Topic: {}, queue: {}, size: {}", key.topic(), key.queue(), batch.size(), e);
+                for (PendingMessage pending : batch) {
+                    if (pending.window() != null && pending.window().failure == null) {
+                        pending.window().failure = e;
+                    }
+                    pending.future().completeExceptionally(e);
+                }
+                done.complete(null);
+            }
+        };
+
+        DefaultMQProducer producer = rocketMQTemplate.getProducer();
+        try {
+            if (key.queue() == null) {
+                producer.send(messages, callback, (long) producer.getSendMsgTimeout());
+            } else {
+                producer.send(messages, key.queue(), callback, (long) producer.getSendMsgTimeout());
+            }
+        } catch (Exception e) {
+            callback.onException(e);
+        }
+        return done;
+    }
+
+    /**
+     * 批量结果拆成逐条结果：msgId 取客户端给每条消息生成的 UNIQ_KEY，offsetMsgId 按逗号拆分，queueOffset 从首条依次递增
+     */
+    private static void complete(List<PendingMessage> batch, SendResult batchResult) {
+        String[] offsetMsgIds = batchResult.getOffsetMsgId() == null ? null : batchResult.getOffsetMsgId().split(",");
+        for (int i = 0; i < batch.size(); i++) {
+            PendingMessage pending = batch.get(i);
+            SendResult result = new SendResult();
+            result.setSendStatus(batchResult.getSendStatus());
+            result.setMsgId(MessageClientIDSetter.getUniqID(pending.message()));
+            result.setOffsetMsgId(offsetMsgIds != null && offsetMsgIds.length == batch.size() ? offsetMsgIds[i] : null);
+            result.setMessageQueue(batchResult.getMessageQueue());
+            result.setQueueOffset(batchResult.getQueueOffset() + i);
+            result.setTransactionId(batchResult.getTransactionId());
+            result.setRegionId(batchResult.getRegionId());
+            result.setTraceOn(batchResult.isTraceOn());
+            pending.future().complete(result);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 先停掉 linger 定时器，再把各桶里剩余的消息全部发出
+        lingerTimer.shutdownNow();
+        buckets.values().forEach(Bucket::flush);
+        log.info("Producer batch accumulator flushed.");
+    }
+
+    /**
+     * 一个 Topic（或 Topic + Queue）的待发消息
+     * 用 ReentrantLock 而非 synchronized，虚拟线程模式下调用方不会钉住载体线程
+     */
+    private final class Bucket {
+
+        private final BatchKey key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<PendingMessage> pending = new ArrayList<>();
+        private int pendingBytes;
+        private ScheduledFuture<?> lingerTask;
+
+        /**
+         * 顺序桶中已攒好、等待在途批次让出窗口的批次，按提交顺序发出
+         */
+        private final Deque<ReadyBatch> ready = new ArrayDeque<>();
+        private int inFlightBatches;
+
+        Bucket(BatchKey key) {
+            this.key = key;
+        }
+
+        CompletableFuture<SendResult> add(PendingMessage entry) {
+            int size = estimateSize(entry.message());
+            lock.lock();
+            try {
+                // 放不下就先把已有的发出去，单条超过 maxBytes 的消息独自成批，由 Broker 判断是否超限
+                if (!pending.isEmpty() && pendingBytes + size > maxBytes) {
+                    drainAndDispatch();
+                }
+                pending.add(entry);
+                pendingBytes += size;
+                if (pending.size() >= maxCount || pendingBytes >= maxBytes || lingerMillis <= 0) {
+                    drainAndDispatch();
+                } else if (pending.size() == 1) {
+                    lingerTask = lingerTimer.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return entry.future();
+        }
+
+        void flush() {
+            lock.lock();
+            try {
+                if (!pending.isEmpty()) {
+                    drainAndDispatch();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 持锁调用：异步发送只是提交到生产者的回调线程池，不会长时间占锁；顺序桶在锁内排队以保证批次顺序
+         */
+        private void drainAndDispatch() {
+            List<PendingMessage> batch = pending;
+            int bytes = pendingBytes;
+            pending = new ArrayList<>();
+            pendingBytes = 0;
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            if (key.queue() == null) {
+                sendBatch(key, batch, bytes);
+            } else {
+                ready.add(new ReadyBatch(batch, bytes));
+                dispatchReady();
+            }
+        }
+
+        /**
+         * 持锁调用：在途批次未满时按顺序发出排队的批次，每批完成后让出窗口并继续发下一批
+         */
+        private void dispatchReady() {
+            while (inFlightBatches < maxInFlightBatches && !ready.isEmpty()) {
+                ReadyBatch next = ready.poll();
+                inFlightBatches++;
+                sendBatch(key, next.messages(), next.bytes()).whenComplete((ignored, e) -> {
+                    lock.lock();
+                    try {
+                        inFlightBatches--;
+                        dispatchReady();
+                    } finally {
+                        lock.unlock();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 一个 hashKey 的在途窗口，pending 为已提交未结束的消息数（含等待许可的调用方），只在 keyWindows.compute 内修改
+     */
+    private static final class KeyWindow {
+
+        private final OrderingKey key;
+        private final Semaphore permits;
+        private int pending;
+        private volatile Throwable failure;
+
+        KeyWindow(OrderingKey key, int maxInFlight) {
+            this.key = key;
+            this.permits = new Semaphore(maxInFlight);
+        }
+    }
+
+    /**
+     * 一个 Topic 的发送指标，首次发送时注册，应答回调里只做 record
+     */
+    private static final class SendMeters {
+
+        private final MeterRegistry meterRegistry;
+        private final String topic;
+        private final Timer success;
+        private final Timer failure;
+        private final ConcurrentMap<Class<?>, Counter> failures = new ConcurrentHashMap<>();
+
+        private SendMeters(MeterRegistry meterRegistry, String topic) {
+            this.meterRegistry = meterRegistry;
+            this.topic = topic;
+            this.success = sendTimer("success");
+            this.failure = sendTimer("failure");
+        }
+
+        private Timer sendTimer(String outcome) {
+            return Timer.builder("mq.producer.send")
+                    .description("异步发送从提交到 Broker 应答的耗时（含合批等待）")
+                    .tag("topic", topic)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        private Counter failuresOf(Class<?> exceptionType) {
+            return failures.computeIfAbsent(exceptionType, type -> Counter.builder("mq.producer.send.failures")
+                    .description("异步发送失败次数")
+                    .tag("topic", topic)
+                    .tag("exception", type.getSimpleName())
+                    .register(meterRegistry));
+        }
+    }
+
+    private record OrderingKey(String topic, String hashKey) {
+    }
+
+    private record ReadyBatch(List<PendingMessage> messages, int bytes) {
+    }
+
+    private record BatchKey(String topic, MessageQueue queue) {
+    }
+
+    /**
+     * window 为 null 表示普通消息
+     */
+    private record PendingMessage(Message message, KeyWindow window, CompletableFuture<SendResult> future) {
+    }
+
+    private record TopicQueues(List<MessageQueue> queues, long fetchedAt) {
+    }
+}
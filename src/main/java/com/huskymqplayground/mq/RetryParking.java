@@ -0,0 +1,284 @@
+package com.huskymqplayground.mq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.MessageQueueListener;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 顺序消费的按顺序键停车重试
+ * 某条消息失败后，只把它所属的 (队列, 顺序键) “停车”：本地按指数退避重试，同一顺序键后续的消息（包括后面几批里的）排在它后面，
+ * 其他顺序键照常处理，所在的批次也不等它，直接返回；停车链独立于批次存在，直到整条链有结果。
+ * 重试耗尽后发往死信队列（sendMessageBack 的 delayLevel 传 -1），该顺序键继续处理后面的消息，与 RocketMQ 顺序消费超过最大重试次数后的行为一致；
+ * 发往死信队列失败时按最大退避间隔一直重发，顺序键保持停车。
+ * <p>
+ * 停车链还没有结果时队列位点不能提交：{@link #holdOffsets} 决定本批是只确认消费（调用方关闭自动提交），还是连同之前的一起提交。
+ * 队列在重平衡中分给别的实例后，停车链在下一次尝试前放弃（{@link Outcome#ABANDONED}），消息由新的持有者从已提交位点重投
+ */
+@Slf4j
+class RetryParking {
+
+    private static final String METRIC_PREFIX = "mq.consumer.park";
+
+    /**
+     * 一条消息的最终结果
+     */
+    enum Outcome {
+        /** 处理成功 */
+        DONE,
+        /** 重试耗尽，已发往死信队列 */
+        DEAD_LETTERED,
+        /** 队列已不归本实例，未处理完就放弃 */
+        ABANDONED
+    }
+
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxHeldMessages;
+    private final Executor executor;
+    private final DefaultMQPushConsumer consumer;
+
+    private final Map<MessageQueue, QueueChains> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger parkedKeys = new AtomicInteger();
+    private final Timer parkTimer;
+    private final Counter retries;
+    private final Counter deadLetters;
+    private final Timer holdTimer;
+
+    /**
+     * @param maxHeldMessages 每个队列最多积压多少条已消费、未提交位点的消息，达到后等该队列的停车链都有结果再提交；
+     *                        必须小于 pullThresholdForQueue，否则拉取流控会先于提交卡住队列
+     */
+    RetryParking(int maxRetries, long backoffMillis, long maxBackoffMillis, int maxHeldMessages, Executor executor,
+                 DefaultMQPushConsumer consumer, MeterRegistry meterRegistry, String listenerName) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxHeldMessages = maxHeldMessages;
+        this.executor = executor;
+        this.consumer = consumer;
+
+        meterRegistry.gauge(METRIC_PREFIX + ".keys", Tags.of("listener", listenerName), parkedKeys);
+        this.parkTimer = Timer.builder(METRIC_PREFIX + ".duration")
+                .description("顺序键从停车到恢复（或进入死信）的耗时")
+                .tag("listener", listenerName)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.retries = Counter.builder(METRIC_PREFIX + ".retries")
+                .description("停车期间的本地重试次数")
+                .tag("listener", listenerName)
+                .register(meterRegistry);
+        this.deadLetters = Counter.builder(METRIC_PREFIX + ".dead.letters")
+                .description("重试耗尽后发往死信队列的消息数")
+                .tag("listener", listenerName)
+                .register(meterRegistry);
+        this.holdTimer = Timer.builder(METRIC_PREFIX + ".hold")
+                .description("未提交位点积压到上限后，消费线程等待停车链的耗时")
+                .tag("listener", listenerName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 该顺序键是否还有停车链
+     * 同一队列的批次串行执行、同一批内不同通道的顺序键互不相同，所以一个顺序键的链只会被当前处理它的线程追加
+     */
+    boolean isParked(MessageQueue queue, Object key) {
+        QueueChains chains = queues.get(queue);
+        return chains != null && chains.keys.containsKey(key);
+    }
+
+    /**
+     * 队列内是否还有停车链
+     */
+    boolean hasParked(MessageQueue queue) {
+        QueueChains chains = queues.get(queue);
+        return chains != null && !chains.keys.isEmpty();
+    }
+
+    /**
+     * 首次失败：停车并开始退避重试
+     */
+    CompletableFuture<Outcome> park(MessageQueue queue, Object key, Runnable attempt, MessageExt messageExt) {
+        QueueChains chains = chainsOf(queue);
+        CompletableFuture<Outcome> tail = retry(chains, attempt, messageExt, 1);
+        track(chains, key, new Chain(tail, System.nanoTime()));
+        return tail;
+    }
+
+    /**
+     * 排到顺序键的停车链末尾：前一条有了结果后尝试，失败再退避重试
+     * 链在检查之后刚好结束时，以一条已完成的链为前驱继续，顺序不变
+     */
+    CompletableFuture<Outcome> enqueue(MessageQueue queue, Object key, Runnable attempt, MessageExt messageExt) {
+        QueueChains chains = chainsOf(queue);
+        Chain previous = chains.keys.get(key);
+        CompletableFuture<Outcome> tail = previous == null
+                ? CompletableFuture.completedFuture(Outcome.DONE) : previous.tail();
+        CompletableFuture<Outcome> next = tail.thenComposeAsync(outcome -> {
+            if (outcome == Outcome.ABANDONED || chains.revoked) {
+                return CompletableFuture.completedFuture(Outcome.ABANDONED);
+            }
+            return tryOnce(attempt, messageExt) ? CompletableFuture.completedFuture(Outcome.DONE) : retry(chains, attempt, messageExt, 1);
+        }, executor);
+        Chain chain = new Chain(next, previous == null ? System.nanoTime() : previous.parkedAtNanos());
+        if (previous == null || !chains.keys.replace(key, previous, chain)) {
+            track(chains, key, chain);
+        } else {
+            next.whenComplete((outcome, e) -> unpark(chains, key, chain));
+        }
+        return next;
+    }
+
+    /**
+     * 本批消费完成后决定是否提交位点：队列还有停车链时返回 true（只确认消费、暂不提交），否则返回 false（连同之前积压的一起提交）
+     * 积压达到上限时在这里等该队列的停车链全部有结果，再返回 false，保证拉取流控不会因未提交的消息卡死
+     */
+    boolean holdOffsets(MessageQueue queue, int consumed) {
+        QueueChains chains = queues.get(queue);
+        if (chains == null) {
+            return false;
+        }
+        if (chains.keys.isEmpty()) {
+            chains.heldMessages = 0;
+            return false;
+        }
+        chains.heldMessages += consumed;
+        if (chains.heldMessages < maxHeldMessages) {
+            return true;
+        }
+        long start = System.nanoTime();
+        for (Chain chain : chains.keys.values()) {
+            try {
+                chain.tail().join();
+            } catch (CompletionException e) {
+                log.error("Parked chain completed exceptionally. Queue: {}", queue, e);
+            }
+        }
+        holdTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        chains.heldMessages = 0;
+        return false;
+    }
+
+    /**
+     * 监听本实例分到的队列：被分走的队列上的停车链在下一次尝试前放弃
+     */
+    MessageQueueListener queueListener(MessageQueueListener delegate) {
+        return (topic, mqAll, mqDivided) -> {
+            queues.forEach((queue, chains) -> {
+                if (queue.getTopic().equals(topic) && !mqDivided.contains(queue) && queues.remove(queue, chains)) {
+                    chains.revoked = true;
+                    log.warn("Queue revoked, abandoning parked ordering keys. Queue: {}, Keys: {}", queue, chains.keys.size());
+                }
+            });
+            if (delegate != null) {
+                delegate.messageQueueChanged(topic, mqAll, mqDivided);
+            }
+        };
+    }
+
+    private QueueChains chainsOf(MessageQueue queue) {
+        return queues.computeIfAbsent(queue, q -> new QueueChains());
+    }
+
+    private void track(QueueChains chains, Object key, Chain chain) {
+        chains.keys.put(key, chain);
+        parkedKeys.incrementAndGet();
+        chain.tail().whenComplete((outcome, e) -> unpark(chains, key, chain));
+    }
+
+    /**
+     * 链尾有了结果且没有新的消息排进来，解除停车并记录停车时长
+     */
+    private void unpark(QueueChains chains, Object key, Chain chain) {
+        if (chains.keys.remove(key, chain)) {
+            parkedKeys.decrementAndGet();
+            parkTimer.record(System.nanoTime() - chain.parkedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private CompletableFuture<Outcome> retry(QueueChains chains, Runnable attempt, MessageExt messageExt, int attemptNo) {
+        long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(attemptNo - 1, 20));
+        return CompletableFuture.supplyAsync(() -> {
+            if (chains.revoked) {
+                return Outcome.ABANDONED;
+            }
+            retries.increment();
+            return tryOnce(attempt, messageExt) ? Outcome.DONE : null;
+        }, delayed(delay)).thenCompose(outcome -> {
+            if (outcome != null) {
+                return CompletableFuture.completedFuture(outcome);
+            }
+            if (attemptNo < maxRetries) {
+                return retry(chains, attempt, messageExt, attemptNo + 1);
+            }
+            return deadLetter(chains, messageExt);
+        });
+    }
+
+    private boolean tryOnce(Runnable attempt, MessageExt messageExt) {
+        try {
+            attempt.run();
+            return true;
+        } catch (Exception e) {
+            log.warn("Parked message failed again. MsgId: {}, Keys: {}", messageExt.getMsgId(), messageExt.getKeys(), e);
+            return false;
+        }
+    }
+
+    private CompletableFuture<Outcome> deadLetter(QueueChains chains, MessageExt messageExt) {
+        if (chains.revoked) {
+            return CompletableFuture.completedFuture(Outcome.ABANDONED);
+        }
+        try {
+            BatchConsumeSupport.sendMessageBack(consumer, messageExt, -1, messageExt.getBrokerName());
+            deadLetters.increment();
+            log.error("Retries exhausted, message sent to DLQ. MsgId: {}, Keys: {}", messageExt.getMsgId(), messageExt.getKeys());
+            return CompletableFuture.completedFuture(Outcome.DEAD_LETTERED);
+        } catch (Exception e) {
+            // 顺序键保持停车，不能让后面的消息越过它，也不能回退已完成消息的水位
+            log.error("Send message to DLQ failed, retry in {}ms. MsgId: {}, Keys: {}",
+                    maxBackoffMillis, messageExt.getMsgId(), messageExt.getKeys(), e);
+            return CompletableFuture.runAsync(() -> {
+            }, delayed(maxBackoffMillis)).thenCompose(ignored -> deadLetter(chains, messageExt));
+        }
+    }
+
+    private Executor delayed(long delayMillis) {
+        return CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor);
+    }
+
+    /**
+     * 一个队列上的停车链；队列被分走后整体作废，重新分回来时另建
+     */
+    private static final class QueueChains {
+
+        private final Map<Object, Chain> keys = new ConcurrentHashMap<>();
+        private volatile boolean revoked;
+        /**
+         * 已确认消费、未提交位点的消息数，只由持有该队列的消费线程读写
+         */
+        private int heldMessages;
+    }
+
+    /**
+     * @param tail 顺序键最后一条消息的结果
+     * @param parkedAtNanos 开始停车的时间
+     */
+    private record Chain(CompletableFuture<Outcome> tail, long parkedAtNanos) {
+    }
+}
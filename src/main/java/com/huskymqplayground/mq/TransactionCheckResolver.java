@@ -0,0 +1,234 @@
+package com.huskymqplayground.mq;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 事务回查的合并解析（第一级本地缓存 + 第二级合并查询）
+ * executeLocalTransaction 提交成功后登记 txId，回查命中直接 COMMIT；未命中的并发回查汇总到一个队列，
+ * 由单个查询线程按条数或时间合并为一次 IN 查询，Broker 重启或数据库抖动后的回查风暴只需少量查询
+ * 事务日志存在即 COMMIT、不存在即 ROLLBACK（与逐条 selectById 一致）；查询失败或超时返回 UNKNOWN，由 Broker 稍后再查
+ */
+@Slf4j
+public class TransactionCheckResolver {
+
+    private static final String METRIC_PREFIX = "mq.tx.check";
+
+    /**
+     * 回查线程等待合并查询结果的上限
+     */
+    private static final long RESOLVE_TIMEOUT_MILLIS = 3000;
+
+    private final String name;
+    private final Function<Collection<String>, Collection<String>> existingTxIds;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+
+    private final Cache<String, Boolean> committed;
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Thread resolver;
+    private volatile boolean running = true;
+
+    private final Counter cacheHits;
+    private final Counter queried;
+    private final DistributionSummary querySizeSummary;
+    private final Timer queryTimer;
+    private final Counter queryFailures;
+
+    /**
+     * @param existingTxIds 一次查询给定 txId 中事务日志已存在的那些
+     */
+    public TransactionCheckResolver(String name, Function<Collection<String>, Collection<String>> existingTxIds,
+                                    int maxBatchSize, long lingerMillis, long cacheSize, Duration cacheTtl,
+                                    MeterRegistry meterRegistry) {
+        this.name = name;
+        this.existingTxIds = existingTxIds;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.lingerMillis = lingerMillis;
+        this.committed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, committed, METRIC_PREFIX + ".cache", "name", name);
+
+        this.cacheHits = Counter.builder(METRIC_PREFIX + ".resolved")
+                .description("回查结果来源")
+                .tag("name", name)
+                .tag("source", "cache")
+                .register(meterRegistry);
+        this.queried = Counter.builder(METRIC_PREFIX + ".resolved")
+                .description("回查结果来源")
+                .tag("name", name)
+                .tag("source", "db")
+                .register(meterRegistry);
+        this.querySizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".query.size")
+                .description("每次合并查询的 txId 数")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queryTimer = Timer.builder(METRIC_PREFIX + ".query.latency")
+                .description("每次合并查询的耗时")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queryFailures = Counter.builder(METRIC_PREFIX + ".query.failures")
+                .description("合并查询失败次数")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        this.resolver = new Thread(this::resolveLoop, "tx-check-" + name);
+        this.resolver.setDaemon(true);
+        this.resolver.start();
+    }
+
+    /**
+     * 先查 primary，未找到的再查 fallback：切换 TxLogMode 前写下的事务仍在另一张表里，滚动发布期间回查不会误判 ROLLBACK
+     */
+    protected static Function<Collection<String>, Collection<String>> withFallback(
+            Function<Collection<String>, Collection<String>> primary,
+            Function<Collection<String>, Collection<String>> fallback) {
+        return txIds -> {
+            Set<String> found = new HashSet<>(primary.apply(txIds));
+            List<String> missing = new ArrayList<>();
+            for (String txId : txIds) {
+                if (!found.contains(txId)) {
+                    missing.add(txId);
+                }
+            }
+            if (!missing.isEmpty()) {
+                found.addAll(fallback.apply(missing));
+            }
+            return found;
+        };
+    }
+
+    /**
+     * 本地事务提交成功后登记，回查时无需访问数据库；回滚或失败的事务不能登记
+     */
+    public void markCommitted(String txId) {
+        if (txId != null) {
+            committed.put(txId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 在回查线程上调用，最多阻塞 RESOLVE_TIMEOUT_MILLIS
+     */
+    public RocketMQLocalTransactionState resolve(String txId) {
+        if (txId == null) {
+            return RocketMQLocalTransactionState.ROLLBACK;
+        }
+        if (committed.getIfPresent(txId) != null) {
+            cacheHits.increment();
+            return RocketMQLocalTransactionState.COMMIT;
+        }
+        queried.increment();
+
+        // 同一 txId 的并发回查共用一次查询
+        CompletableFuture<Boolean> future = inFlight.computeIfAbsent(txId, id -> {
+            queue.add(id);
+            return new CompletableFuture<>();
+        });
+        try {
+            return future.get(RESOLVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    ? RocketMQLocalTransactionState.COMMIT
+                    : RocketMQLocalTransactionState.ROLLBACK;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RocketMQLocalTransactionState.UNKNOWN;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("[TxCheck-{}] Resolve failed, returning UNKNOWN. TxId: {}", name, txId, e);
+            return RocketMQLocalTransactionState.UNKNOWN;
+        }
+    }
+
+    private void resolveLoop() {
+        List<String> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                // 未攒满时最多再等 linger，把同一波回查合并进一次查询
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    String next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+
+                query(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void query(List<String> batch) {
+        long start = System.nanoTime();
+        Set<String> existing;
+        try {
+            existing = new HashSet<>(existingTxIds.apply(batch));
+            queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            querySizeSummary.record(batch.size());
+        } catch (Exception e) {
+            queryFailures.increment();
+            log.warn("[TxCheck-{}] Batch query failed. Size: {}", name, batch.size(), e);
+            batch.forEach(txId -> inFlight.remove(txId).completeExceptionally(e));
+            return;
+        }
+        for (String txId : batch) {
+            boolean found = existing.contains(txId);
+            if (found) {
+                committed.put(txId, Boolean.TRUE);
+            }
+            inFlight.remove(txId).complete(found);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        resolver.interrupt();
+        resolver.join(TimeUnit.SECONDS.toMillis(5));
+        // 未查询的回查返回 UNKNOWN，Broker 会在其他实例或重启后再查
+        inFlight.values().forEach(future -> future.completeExceptionally(new IllegalStateException("Transaction check resolver closed")));
+    }
+}
@@ -0,0 +1,76 @@
+package com.huskymqplayground.mq;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.impl.consumer.ConsumeMessageService;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
+import org.apache.rocketmq.spring.support.DefaultRocketMQListenerContainer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程模式（spring.threads.virtual.enabled=true）下，把并发消费（CONCURRENTLY）监听器的消费线程换成虚拟线程
+ * RocketMQ 客户端的消费线程池在 consumer.start() 内创建且没有扩展点，这里在容器启动后替换它的 ThreadFactory 并放大并发数，
+ * 替换前已创建的平台线程空闲后按 keepAlive 退出；真正压向 MySQL / Redis 的并发由 MySqlBulkhead / RedisBulkhead 限住
+ * ORDERLY 监听器保持平台线程：ConsumeMessageOrderlyService 在 synchronized 块内回调监听器，JDK 21 上虚拟线程会钉住载体线程
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConsumerExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final ObjectProvider<DefaultRocketMQListenerContainer> containers;
+    private final int concurrency;
+
+    public VirtualThreadConsumerExecutors(ObjectProvider<DefaultRocketMQListenerContainer> containers,
+                                          @Value("${husky.mq.consumer.virtual-threads.concurrency:256}") int concurrency) {
+        this.containers = containers;
+        this.concurrency = concurrency;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void switchToVirtualThreads() {
+        containers.orderedStream()
+                .filter(container -> container.getConsumeMode() == ConsumeMode.CONCURRENTLY && container.isRunning())
+                .forEach(this::switchToVirtualThreads);
+    }
+
+    private void switchToVirtualThreads(DefaultRocketMQListenerContainer container) {
+        // 消费线程池只能从 DefaultMQPushConsumerImpl 取到，它的访问方法在 5.x 被标为废弃且没有替代 API
+        @SuppressWarnings("deprecation")
+        DefaultMQPushConsumerImpl consumerImpl = container.getConsumer().getDefaultMQPushConsumerImpl();
+        ConsumeMessageService service = consumerImpl.getConsumeMessageService();
+        Field field = ReflectionUtils.findField(service.getClass(), "consumeExecutor", ThreadPoolExecutor.class);
+        if (field == null) {
+            log.warn("Consume executor not found, keeping platform threads. ConsumerGroup: {}", container.getConsumerGroup());
+            return;
+        }
+        ReflectionUtils.makeAccessible(field);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionUtils.getField(field, service);
+
+        executor.setThreadFactory(Thread.ofVirtual().name("VirtualConsume_" + container.getConsumerGroup() + "_", 1).factory());
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        // 队列无界，实际并发只看核心线程数；先调大的一侧，避免 core > max
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+        log.info("Consumer switched to virtual threads. ConsumerGroup: {}, Concurrency: {}", container.getConsumerGroup(), concurrency);
+    }
+}
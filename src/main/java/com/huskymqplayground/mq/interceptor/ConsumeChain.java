@@ -0,0 +1,25 @@
+package com.huskymqplayground.mq.interceptor;
+
+import java.util.List;
+
+/**
+ * 预先串好的消费链，每个节点直接持有下一个节点，消费时不再遍历拦截器列表
+ */
+@FunctionalInterface
+public interface ConsumeChain {
+
+    void proceed(ConsumeContext context) throws Exception;
+
+    /**
+     * 按列表顺序（第一个最外层）把拦截器串到 terminal 之前
+     */
+    static ConsumeChain of(List<? extends ConsumeInterceptor> interceptors, ConsumeChain terminal) {
+        ConsumeChain chain = terminal;
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            ConsumeInterceptor interceptor = interceptors.get(i);
+            ConsumeChain next = chain;
+            chain = context -> interceptor.intercept(context, next);
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,48 @@
+package com.huskymqplayground.mq.interceptor;
+
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 一次单条消费在拦截器之间传递的上下文
+ */
+public final class ConsumeContext {
+
+    private final MessageExt messageExt;
+    private CompletableFuture<Boolean> admission;
+
+    public ConsumeContext(MessageExt messageExt) {
+        this.messageExt = messageExt;
+    }
+
+    public MessageExt messageExt() {
+        return messageExt;
+    }
+
+    /**
+     * 登记业务处理前必须等待的准入结果（如异步幂等认领），反序列化与它并行进行
+     */
+    public void admitWhen(CompletableFuture<Boolean> admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * 等待准入结果，未登记时直接放行；异常按原类型抛出
+     * @return false 表示跳过业务处理（视为消费成功）
+     */
+    public boolean awaitAdmission() {
+        if (admission == null) {
+            return true;
+        }
+        try {
+            return admission.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.huskymqplayground.mq.interceptor;
+
+/**
+ * BaseRocketMQListener 单条消费链上的一个环节：可在调用 chain.proceed 前后加逻辑，不调用即短路（如重复消息）
+ * 拦截器在监听器初始化时按注解 / 配置创建并串好，消费时不再做任何注解查找
+ */
+@FunctionalInterface
+public interface ConsumeInterceptor {
+
+    void intercept(ConsumeContext context, ConsumeChain chain) throws Exception;
+}
@@ -0,0 +1,118 @@
+package com.huskymqplayground.mq.interceptor;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.idempotent.IdempotentClaim;
+import com.huskymqplayground.idempotent.IdempotentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 类上 @RocketMQIdempotent 的消费链实现，语义与 IdempotentAspect 一致：
+ * 认领失败即重复消息，直接返回视为消费成功；处理成功后登记近端缓存 / 推进水位，失败则删 Key 后重新抛出
+ * asyncClaim 时认领与反序列化并行，链尾在执行业务前等待认领结果
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IdempotencyInterceptor implements ConsumeInterceptor {
+
+    private final IdempotentService idempotentService;
+    private final RocketMQIdempotent idempotent;
+    private final Class<?> listenerClass;
+
+    @Override
+    public void intercept(ConsumeContext context, ConsumeChain chain) throws Exception {
+        if (idempotent.asyncClaim()) {
+            interceptAsync(context, chain);
+            return;
+        }
+
+        // 1. 尝试认领：KEY 方式先查本地近端缓存，未命中再 SETNX；QUEUE_OFFSET 方式比对队列位点水位
+        MessageExt messageExt = context.messageExt();
+        IdempotentClaim claim = idempotentService.claim(idempotent, listenerClass, messageExt);
+
+        if (claim == null) {
+            logDuplicate(messageExt);
+            return;
+        }
+        if (claim.isUnchecked()) {
+            log.warn("Message Key is empty, skipping idempotency check. MsgId: {}", messageExt.getMsgId());
+            chain.proceed(context);
+            return;
+        }
+
+        // 2. 执行后续链路，成功后登记到近端缓存 / 推进水位
+        try {
+            chain.proceed(context);
+            idempotentService.complete(idempotent, claim);
+        } catch (Exception | Error e) {
+            // 3. 异常处理：删除 Key 以便重试（位点水位只在成功后推进，无需回退）
+            log.error("Process failed, releasing idempotent claim. Key: {}", messageExt.getKeys(), e);
+            idempotentService.release(idempotent, listenerClass, claim);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步认领：发出认领后立即进入后续链路，重复消息由链尾在反序列化之后跳过
+     */
+    private void interceptAsync(ConsumeContext context, ConsumeChain chain) throws Exception {
+        MessageExt messageExt = context.messageExt();
+        CompletableFuture<IdempotentClaim> pending = idempotentService.claimAsync(idempotent, listenerClass, messageExt);
+        context.admitWhen(pending.thenApply(Objects::nonNull));
+        try {
+            chain.proceed(context);
+        } catch (Exception | Error e) {
+            // 反序列化 / 业务失败时认领可能还在途，等它返回后再异步释放；认领本身失败则无需释放
+            IdempotentClaim claim = awaitQuietly(pending);
+            if (claim != null && !claim.isUnchecked()) {
+                log.error("Process failed, releasing idempotent claim asynchronously. Key: {}", messageExt.getKeys(), e);
+                idempotentService.releaseAsync(idempotent, listenerClass, claim).whenComplete((ignored, releaseError) -> {
+                    if (releaseError != null) {
+                        log.error("Async release of idempotent claim failed. Key: {}", messageExt.getKeys(), releaseError);
+                    }
+                });
+            }
+            throw e;
+        }
+
+        IdempotentClaim claim = await(pending);
+        if (claim == null) {
+            logDuplicate(messageExt);
+            return;
+        }
+        if (claim.isUnchecked()) {
+            log.warn("Message Key is empty, skipping idempotency check. MsgId: {}", messageExt.getMsgId());
+            return;
+        }
+        idempotentService.complete(idempotent, claim);
+    }
+
+    private static void logDuplicate(MessageExt messageExt) {
+        log.warn("Duplicate message detected, skip processing. Key: {}, MsgId: {}, QueueOffset: {}",
+                messageExt.getKeys(), messageExt.getMsgId(), messageExt.getQueueOffset());
+    }
+
+    private static IdempotentClaim await(CompletableFuture<IdempotentClaim> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static IdempotentClaim awaitQuietly(CompletableFuture<IdempotentClaim> pending) {
+        try {
+            return pending.join();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
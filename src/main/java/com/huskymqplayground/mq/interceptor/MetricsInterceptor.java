@@ -0,0 +1,26 @@
+package com.huskymqplayground.mq.interceptor;
+
+import com.huskymqplayground.metrics.ConsumerMetrics;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 记录一次消费的总耗时与失败次数；反序列化、业务处理两个阶段由链尾分别计时
+ */
+@RequiredArgsConstructor
+public class MetricsInterceptor implements ConsumeInterceptor {
+
+    private final ConsumerMetrics metrics;
+
+    @Override
+    public void intercept(ConsumeContext context, ConsumeChain chain) throws Exception {
+        long start = System.nanoTime();
+        try {
+            chain.proceed(context);
+        } catch (Exception e) {
+            metrics.incrementFailures();
+            throw e;
+        } finally {
+            metrics.recordTotal(start);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.huskymqplayground.mq.interceptor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单实例匀速限流（@RocketMQRateLimit）：按固定间隔发放许可，不攒突发
+ * 每条消息 CAS 预订下一个时间片，时间未到的消费线程原地等待，消息留在本地队列中不会被 Broker 重投
+ */
+public class RateLimitInterceptor implements ConsumeInterceptor {
+
+    private final long intervalNanos;
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+    private final Timer throttleTimer;
+
+    public RateLimitInterceptor(double permitsPerSecond, MeterRegistry meterRegistry, Tags tags) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.throttleTimer = Timer.builder("mq.consumer.throttle")
+                .description("限流等待耗时")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void intercept(ConsumeContext context, ConsumeChain chain) throws Exception {
+        long now = System.nanoTime();
+        long slot = Math.max(nextFreeNanos.getAndUpdate(next -> Math.max(next, now) + intervalNanos), now);
+        long remaining;
+        while ((remaining = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for consume permit");
+            }
+        }
+        throttleTimer.record(slot - now, TimeUnit.NANOSECONDS);
+        chain.proceed(context);
+    }
+}
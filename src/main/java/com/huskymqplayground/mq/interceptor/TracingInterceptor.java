@@ -0,0 +1,37 @@
+package com.huskymqplayground.mq.interceptor;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.slf4j.MDC;
+
+/**
+ * 把消息 Keys（生产端写入的 TraceId）和 MsgId 放入 MDC，消费链上的日志都带上这两个字段
+ * 业务中再次触发消费（嵌套）时退出后恢复外层的值
+ */
+public class TracingInterceptor implements ConsumeInterceptor {
+
+    public static final String TRACE_ID = "traceId";
+    public static final String MSG_ID = "msgId";
+
+    @Override
+    public void intercept(ConsumeContext context, ConsumeChain chain) throws Exception {
+        MessageExt messageExt = context.messageExt();
+        String previousTraceId = MDC.get(TRACE_ID);
+        String previousMsgId = MDC.get(MSG_ID);
+        put(TRACE_ID, messageExt.getKeys());
+        put(MSG_ID, messageExt.getMsgId());
+        try {
+            chain.proceed(context);
+        } finally {
+            put(TRACE_ID, previousTraceId);
+            put(MSG_ID, previousMsgId);
+        }
+    }
+
+    private static void put(String key, String value) {
+        if (value == null || value.isEmpty()) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.huskymqplayground.outbox;
+
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.OutboxMessage;
+import lombok.Getter;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 把待发送的消息转成发件箱行：保留 Keys 与 codec 头，消息体已由 MessageCodecRegistry 编码为 byte[]
+ * 分片数必须在所有实例间一致，调整后已写入的行仍按旧分片投递，同一 Key 在切换前后可能短暂乱序
+ */
+@Component
+public class OutboxMessageFactory {
+
+    @Getter
+    private final int shards;
+
+    public OutboxMessageFactory(@Value("${husky.mq.outbox.shards:4}") int shards) {
+        this.shards = Math.max(shards, 1);
+    }
+
+    public OutboxMessage create(String destination, Message<byte[]> message) {
+        String keys = (String) message.getHeaders().get(RocketMQHeaders.KEYS);
+        OutboxMessage outboxMessage = new OutboxMessage();
+        outboxMessage.setShard(keys == null ? 0 : Math.floorMod(keys.hashCode(), shards));
+        outboxMessage.setTopic(destination);
+        outboxMessage.setMessageKeys(keys);
+        outboxMessage.setCodec((String) message.getHeaders().get(MessageCodecRegistry.CODEC_HEADER));
+        outboxMessage.setBody(message.getPayload());
+        outboxMessage.setCreateTime(LocalDateTime.now());
+        return outboxMessage;
+    }
+}
@@ -0,0 +1,232 @@
+package com.huskymqplayground.outbox;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.OutboxMessage;
+import com.huskymqplayground.mapper.OutboxMessageMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发件箱投递：每个分片一个线程，持有分片锁后按 id 顺序批量读出、按 Topic 分组批量发送，发送成功即删除
+ * 读取走 (shard, id) 索引的游标，跳过已删除但尚未 purge 的索引记录；AUTO_INCREMENT 按分配顺序而非提交顺序递增，
+ * 较小 id 的事务可能晚于游标提交，因此读空或每隔 rescan-millis 把游标归零重扫一次
+ * 同一分片的消息以同一个 hashKey 顺序发送，落在同一队列；发送失败整批重试，投递语义为至少一次，依赖消费端幂等
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "husky.mq.outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final String METRIC_PREFIX = "mq.outbox";
+
+    private static final String LOCK_PREFIX = "husky:outbox:shard:";
+
+    private final OutboxMessageMapper outboxMessageMapper;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final RedissonClient redissonClient;
+    private final int shards;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long rescanMillis;
+    private final long sendTimeoutMillis;
+    private final long failureBackoffMillis;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer delayTimer;
+    private final Counter failures;
+
+    public OutboxRelay(OutboxMessageMapper outboxMessageMapper,
+                       RocketMQTemplate rocketMQTemplate,
+                       RedissonClient redissonClient,
+                       OutboxMessageFactory outboxMessageFactory,
+                       MeterRegistry meterRegistry,
+                       @Value("${husky.mq.outbox.batch-size:128}") int batchSize,
+                       @Value("${husky.mq.outbox.poll-interval-millis:10}") long pollIntervalMillis,
+                       @Value("${husky.mq.outbox.rescan-millis:1000}") long rescanMillis,
+                       @Value("${husky.mq.outbox.send-timeout-millis:3000}") long sendTimeoutMillis,
+                       @Value("${husky.mq.outbox.failure-backoff-millis:1000}") long failureBackoffMillis) {
+        this.outboxMessageMapper = outboxMessageMapper;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.redissonClient = redissonClient;
+        this.shards = outboxMessageFactory.getShards();
+        this.batchSize = Math.max(batchSize, 1);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.rescanMillis = rescanMillis;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.failureBackoffMillis = failureBackoffMillis;
+        this.meterRegistry = meterRegistry;
+
+        this.batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".batch.size")
+                .description("每次从发件箱读出的行数")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.delayTimer = Timer.builder(METRIC_PREFIX + ".delay")
+                .description("发件箱行写入到发送成功的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failures = Counter.builder(METRIC_PREFIX + ".failures")
+                .description("批量发送或删除失败次数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int shard = 0; shard < shards; shard++) {
+            int current = shard;
+            Thread worker = new Thread(() -> relayLoop(current), "outbox-relay-" + shard);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("[OutboxRelay] Started {} shard workers, batchSize: {}", shards, batchSize);
+    }
+
+    private void relayLoop(int shard) {
+        RLock lock = redissonClient.getLock(LOCK_PREFIX + shard);
+        while (running) {
+            try {
+                // 不设租期，由看门狗续期；同一分片在多实例间只有一个投递线程，保证分片内顺序
+                if (!lock.tryLock(rescanMillis, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                try {
+                    relayShard(shard);
+                } finally {
+                    lock.unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failures.increment();
+                log.warn("[OutboxRelay] Shard {} worker failed, retry after backoff.", shard, e);
+                sleepQuietly(failureBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * 持锁期间循环投递，直到停止
+     */
+    private void relayShard(int shard) throws InterruptedException {
+        Counter relayed = Counter.builder(METRIC_PREFIX + ".relayed")
+                .description("发件箱投递成功的消息数")
+                .tag("shard", String.valueOf(shard))
+                .register(meterRegistry);
+        long cursor = 0;
+        long lastRescan = System.nanoTime();
+        while (running) {
+            if (System.nanoTime() - lastRescan >= TimeUnit.MILLISECONDS.toNanos(rescanMillis)) {
+                cursor = 0;
+                lastRescan = System.nanoTime();
+            }
+            // ORDER BY 带上 shard 与索引列顺序一致，H2 等优化器才会按索引有序读取，否则会读出整个分片再排序
+            List<OutboxMessage> batch = outboxMessageMapper.selectList(Wrappers.<OutboxMessage>lambdaQuery()
+                    .eq(OutboxMessage::getShard, shard)
+                    .gt(OutboxMessage::getId, cursor)
+                    .orderByAsc(OutboxMessage::getShard, OutboxMessage::getId)
+                    .last("LIMIT " + batchSize));
+            if (batch.isEmpty()) {
+                cursor = 0;
+                lastRescan = System.nanoTime();
+                Thread.sleep(pollIntervalMillis);
+                continue;
+            }
+            batchSizeSummary.record(batch.size());
+
+            if (!send(shard, batch)) {
+                failures.increment();
+                // 游标不前进，退避后从同一位置重发
+                Thread.sleep(failureBackoffMillis);
+                continue;
+            }
+            outboxMessageMapper.deleteByIds(batch.stream().map(OutboxMessage::getId).toList());
+            relayed.increment(batch.size());
+            LocalDateTime now = LocalDateTime.now();
+            for (OutboxMessage outboxMessage : batch) {
+                delayTimer.record(Duration.between(outboxMessage.getCreateTime(), now));
+            }
+            cursor = batch.get(batch.size() - 1).getId();
+
+            if (batch.size() < batchSize) {
+                Thread.sleep(pollIntervalMillis);
+            }
+        }
+    }
+
+    /**
+     * 按 Topic 分组批量发送，组内保持 id 顺序；任一组失败返回 false，已发出的组在重试时会再发一次
+     */
+    private boolean send(int shard, List<OutboxMessage> batch) {
+        Map<String, List<Message<byte[]>>> byTopic = new LinkedHashMap<>();
+        for (OutboxMessage outboxMessage : batch) {
+            byTopic.computeIfAbsent(outboxMessage.getTopic(), topic -> new ArrayList<>()).add(toMessage(outboxMessage));
+        }
+        String hashKey = "outbox-" + shard;
+        for (Map.Entry<String, List<Message<byte[]>>> entry : byTopic.entrySet()) {
+            try {
+                rocketMQTemplate.syncSendOrderly(entry.getKey(), entry.getValue(), hashKey, sendTimeoutMillis);
+            } catch (Exception e) {
+                log.warn("[OutboxRelay] Batch send failed. Shard: {}, topic: {}, size: {}",
+                        shard, entry.getKey(), entry.getValue().size(), e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Message<byte[]> toMessage(OutboxMessage outboxMessage) {
+        MessageBuilder<byte[]> builder = MessageBuilder.withPayload(outboxMessage.getBody());
+        if (outboxMessage.getMessageKeys() != null) {
+            builder.setHeader(RocketMQHeaders.KEYS, outboxMessage.getMessageKeys());
+        }
+        if (outboxMessage.getCodec() != null) {
+            builder.setHeader(MessageCodecRegistry.CODEC_HEADER, outboxMessage.getCodec());
+        }
+        return builder.build();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 不中断线程：等当前批次发送、删除完成并释放分片锁后自然退出
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
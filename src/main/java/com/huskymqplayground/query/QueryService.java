@@ -0,0 +1,125 @@
+package com.huskymqplayground.query;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.bulkhead.ReadBulkhead;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.domain.UserLog;
+import com.huskymqplayground.dto.KeysetPage;
+import com.huskymqplayground.mapper.PurchaseOrderMapper;
+import com.huskymqplayground.mapper.UserLogMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * 订单 / 用户日志的查询：键集分页（id < cursor 倒序取 limit + 1 行）走 (buyer, id) / (username, id) 索引，
+ * 翻到多深都只读一页的行；结果经 ReadThroughCache 缓存，由 OrderConsumerV3 / AsyncSaveConsumerV3 写入后失效
+ * 每次读取（含缓存）占用一个 ReadBulkhead 许可，读流量不会挤占消费端写入用的连接
+ */
+@Service
+public class QueryService {
+
+    private static final String ORDERS = "orders";
+    private static final String ORDER = "order";
+    private static final String USER_LOGS = "user-logs";
+
+    private final PurchaseOrderMapper purchaseOrderMapper;
+    private final UserLogMapper userLogMapper;
+    private final ReadThroughCache readThroughCache;
+    private final ReadBulkhead readBulkhead;
+    private final int maxPageSize;
+
+    private final JavaType orderPageType;
+    private final JavaType orderType;
+    private final JavaType userLogPageType;
+
+    public QueryService(PurchaseOrderMapper purchaseOrderMapper,
+                        UserLogMapper userLogMapper,
+                        ReadThroughCache readThroughCache,
+                        ReadBulkhead readBulkhead,
+                        ObjectMapper objectMapper,
+                        @Value("${husky.query.max-page-size:100}") int maxPageSize) {
+        this.purchaseOrderMapper = purchaseOrderMapper;
+        this.userLogMapper = userLogMapper;
+        this.readThroughCache = readThroughCache;
+        this.readBulkhead = readBulkhead;
+        this.maxPageSize = Math.max(maxPageSize, 1);
+
+        this.orderPageType = objectMapper.getTypeFactory().constructParametricType(KeysetPage.class, PurchaseOrder.class);
+        this.orderType = objectMapper.constructType(PurchaseOrder.class);
+        this.userLogPageType = objectMapper.getTypeFactory().constructParametricType(KeysetPage.class, UserLog.class);
+    }
+
+    /**
+     * 某个买家的订单，新的在前
+     * @param cursor 上一页的 nextCursor，第一页传 null
+     */
+    public KeysetPage<PurchaseOrder> ordersByBuyer(String buyer, Long cursor, int limit) {
+        int size = pageSize(limit);
+        // ORDER BY 带上 buyer 与索引列顺序一致，H2 等优化器才会按索引有序读取 limit + 1 行，而不是读出该买家的全部订单再排序
+        return readBulkhead.call(() -> readThroughCache.get(ORDERS, buyer, size + ":" + cursor, orderPageType,
+                () -> KeysetPage.of(purchaseOrderMapper.selectList(Wrappers.<PurchaseOrder>lambdaQuery()
+                        .eq(PurchaseOrder::getBuyer, buyer)
+                        .lt(cursor != null, PurchaseOrder::getId, cursor)
+                        .orderByDesc(PurchaseOrder::getBuyer, PurchaseOrder::getId)
+                        .last("LIMIT " + (size + 1))), size, PurchaseOrder::getId)));
+    }
+
+    /**
+     * 按订单号查订单，查不到返回 null；订单写入后不再修改，查到的结果无需失效
+     */
+    public PurchaseOrder orderByNo(String orderNo) {
+        return readBulkhead.call(() -> readThroughCache.getImmutable(ORDER, orderNo, orderType,
+                () -> purchaseOrderMapper.selectOne(Wrappers.<PurchaseOrder>lambdaQuery()
+                        .eq(PurchaseOrder::getOrderNo, orderNo)
+                        .orderByAsc(PurchaseOrder::getId)
+                        .last("LIMIT 1"))));
+    }
+
+    /**
+     * 某个用户的日志，新的在前
+     * @param cursor 上一页的 nextCursor，第一页传 null
+     */
+    public KeysetPage<UserLog> userLogsByUsername(String username, Long cursor, int limit) {
+        int size = pageSize(limit);
+        return readBulkhead.call(() -> readThroughCache.get(USER_LOGS, username, size + ":" + cursor, userLogPageType,
+                () -> KeysetPage.of(userLogMapper.selectList(Wrappers.<UserLog>lambdaQuery()
+                        .eq(UserLog::getUsername, username)
+                        .lt(cursor != null, UserLog::getId, cursor)
+                        .orderByDesc(UserLog::getUsername, UserLog::getId)
+                        .last("LIMIT " + (size + 1))), size, UserLog::getId)));
+    }
+
+    /**
+     * 订单提交后（OrderConsumerV3 收到消息时订单已提交）失效该买家的订单列表
+     */
+    public void invalidateOrdersOf(String buyer) {
+        if (buyer != null) {
+            readThroughCache.invalidate(ORDERS, buyer);
+        }
+    }
+
+    /**
+     * 日志写入提交后失效该用户的日志列表
+     */
+    public void invalidateUserLogsOf(String username) {
+        if (username != null) {
+            readThroughCache.invalidate(USER_LOGS, username);
+        }
+    }
+
+    /**
+     * 批量写入提交后失效这些用户的日志列表，同一批内的重复用户只失效一次
+     */
+    public void invalidateUserLogsOf(Collection<String> usernames) {
+        new HashSet<>(usernames).forEach(this::invalidateUserLogsOf);
+    }
+
+    private int pageSize(int limit) {
+        return Math.min(Math.max(limit, 1), maxPageSize);
+    }
+}
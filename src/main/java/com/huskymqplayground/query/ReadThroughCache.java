@@ -0,0 +1,153 @@
+package com.huskymqplayground.query;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 查询接口的读穿透缓存（Redisson），值为 JSON
+ * 列表页按“命名空间 + 属主”（如某个买家的订单）维护一个版本号，页的键里带上版本号；写入方提交后 INCR 版本号，
+ * 该属主的所有页一次失效。读取方先取版本号再回源，回源期间发生的失效会让结果写到旧版本的键上，不会再被命中，
+ * 没有“读到旧值后回填、盖掉失效”的竞态；旧版本的页靠 TTL 过期
+ * Redis 不可用时直接回源，缓存只影响速度不影响结果
+ */
+@Slf4j
+@Component
+public class ReadThroughCache {
+
+    private static final String METRIC_PREFIX = "query.cache";
+
+    private static final String KEY_PREFIX = "husky:query:";
+
+    /**
+     * KEYS[1]: 版本号；ARGV[1]: 版本号的过期毫秒数。版本号本身也设过期，不活跃的属主不会在 Redis 里常驻
+     */
+    private static final String BUMP_SCRIPT =
+            "local version = redis.call('INCR', KEYS[1]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "return version";
+
+    private final RedissonClient redissonClient;
+    private final RedisBulkhead redisBulkhead;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final Duration versionTtl;
+
+    private final Counter invalidationFailures;
+
+    public ReadThroughCache(RedissonClient redissonClient,
+                            RedisBulkhead redisBulkhead,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${husky.query.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.redissonClient = redissonClient;
+        this.redisBulkhead = redisBulkhead;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        // 版本号过期后从 0 重新计数，必须比页的 TTL 长，保证重新计数时旧版本的页都已过期
+        this.versionTtl = ttl.multipliedBy(10);
+
+        this.invalidationFailures = Counter.builder(METRIC_PREFIX + ".invalidation.failures")
+                .description("版本号递增失败次数，失败时旧页最多保留一个 TTL")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 可失效的列表页：owner 的版本号递增后，之前缓存的所有页都不再命中
+     */
+    public <T> T get(String namespace, String owner, String page, JavaType type, Supplier<T> loader) {
+        String versionKey = versionKey(namespace, owner);
+        long version;
+        try {
+            version = redisBulkhead.call(() -> redissonClient.getAtomicLong(versionKey).get());
+        } catch (Exception e) {
+            log.warn("[QueryCache] Version read failed, loading from db. Key: {}", versionKey, e);
+            return loader.get();
+        }
+        return getOrLoad(namespace, versionKey + ":" + version + ":" + page, type, loader, false);
+    }
+
+    /**
+     * 写入后不再变化的单行（如按订单号查订单）：只缓存查到的结果，查不到不缓存，行出现后下一次读取即可命中
+     */
+    public <T> T getImmutable(String namespace, String key, JavaType type, Supplier<T> loader) {
+        return getOrLoad(namespace, KEY_PREFIX + namespace + ":" + key, type, loader, true);
+    }
+
+    /**
+     * 写入提交后调用，异步递增版本号；失败只记指标和日志，不影响调用方
+     */
+    public void invalidate(String namespace, String owner) {
+        String versionKey = versionKey(namespace, owner);
+        try {
+            redisBulkhead.callAsync(() -> redissonClient.getScript(StringCodec.INSTANCE).<Long>evalAsync(
+                            RScript.Mode.READ_WRITE, BUMP_SCRIPT, RScript.ReturnType.INTEGER,
+                            List.of(versionKey), Long.toString(versionTtl.toMillis())))
+                    .whenComplete((version, e) -> {
+                        if (e != null) {
+                            onInvalidationFailure(versionKey, e);
+                        }
+                    });
+        } catch (Exception e) {
+            onInvalidationFailure(versionKey, e);
+        }
+    }
+
+    private <T> T getOrLoad(String namespace, String key, JavaType type, Supplier<T> loader, boolean skipNull) {
+        RBucket<String> bucket = redissonClient.getBucket(key, StringCodec.INSTANCE);
+        try {
+            String cached = redisBulkhead.call(bucket::get);
+            if (cached != null) {
+                record(namespace, "hit");
+                return objectMapper.readValue(cached, type);
+            }
+        } catch (Exception e) {
+            log.warn("[QueryCache] Cache read failed, loading from db. Key: {}", key, e);
+            return loader.get();
+        }
+        record(namespace, "miss");
+
+        T value = loader.get();
+        if (value == null && skipNull) {
+            return null;
+        }
+        try {
+            String json = objectMapper.writeValueAsString(value);
+            redisBulkhead.run(() -> bucket.set(json, ttl));
+        } catch (Exception e) {
+            log.warn("[QueryCache] Cache backfill failed. Key: {}", key, e);
+        }
+        return value;
+    }
+
+    private void record(String namespace, String result) {
+        meterRegistry.counter(METRIC_PREFIX + ".requests", "name", namespace, "result", result).increment();
+    }
+
+    private void onInvalidationFailure(String versionKey, Throwable e) {
+        invalidationFailures.increment();
+        log.warn("[QueryCache] Invalidation failed, cached pages expire within {}. Key: {}", ttl, versionKey, e);
+    }
+
+    /**
+     * 属主放在 {} 中：与页的其余部分分隔开，集群模式下同一属主的版本号和页落在同一个槽
+     */
+    private static String versionKey(String namespace, String owner) {
+        return KEY_PREFIX + namespace + ":{" + owner + "}";
+    }
+}
@@ -0,0 +1,196 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.dto.CartDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加购的合并窗口（Group Commit）
+ * 事务监听线程提交的加购汇总到一个队列，由单个写入线程按条数或时间攒批，同一用户同一商品的连续加购合并为一行累加，
+ * 整批在一个数据库事务中提交；调用方等所在批次提交后才返回，executeLocalTransaction 的 COMMIT 时机不变
+ * 窗口内只有一条加购时按原路径单独写入（INLINE 仍是一次 INSERT）；整批失败时逐条重试，只让真正有问题的加购回滚
+ * husky.cart.coalesce.enabled=false 时直接在调用线程上写入
+ */
+@Slf4j
+@Component
+public class CartAddCoalescer {
+
+    private static final String METRIC_PREFIX = "cart.coalesce";
+
+    private final CartService cartService;
+    private final boolean enabled;
+    private final int flushSize;
+    private final long maxLatencyMillis;
+
+    private final BlockingQueue<PendingAdd> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final DistributionSummary flushSizeSummary;
+    private final DistributionSummary flushRowsSummary;
+    private final Timer flushTimer;
+    private final Counter flushFailures;
+
+    public CartAddCoalescer(CartService cartService,
+                            MeterRegistry meterRegistry,
+                            @Value("${husky.cart.coalesce.enabled:true}") boolean enabled,
+                            @Value("${husky.cart.coalesce.flush-size:256}") int flushSize,
+                            @Value("${husky.cart.coalesce.max-latency-millis:2}") long maxLatencyMillis) {
+        this.cartService = cartService;
+        this.enabled = enabled;
+        this.flushSize = Math.max(flushSize, 1);
+        this.maxLatencyMillis = maxLatencyMillis;
+
+        this.flushSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".flush.size")
+                .description("每次合并写入的加购数（本地事务数）")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushRowsSummary = DistributionSummary.builder(METRIC_PREFIX + ".flush.rows")
+                .description("每次合并写入按 (username, item_name) 合并后的 cart_item 行数")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(METRIC_PREFIX + ".flush.latency")
+                .description("每次合并写入（累加 + 事务日志 + 提交）的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder(METRIC_PREFIX + ".flush.failures")
+                .description("合并写入失败次数")
+                .register(meterRegistry);
+        meterRegistry.gauge(METRIC_PREFIX + ".pending", queue, BlockingQueue::size);
+
+        if (enabled) {
+            this.flusher = new Thread(this::flushLoop, "cart-add-coalescer");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * 加购并等待所在批次提交，失败时抛出原始异常，由调用方返回 ROLLBACK
+     */
+    public void add(CartDTO cartDTO, String txId, TxLogMode txLogMode) {
+        if (!enabled) {
+            cartService.addToCartWithTxLog(cartDTO, txId, txLogMode);
+            return;
+        }
+        PendingAdd add = new PendingAdd(cartDTO, txId, txLogMode, new CompletableFuture<>());
+        if (!running) {
+            throw new IllegalStateException("Cart add coalescer is shutting down");
+        }
+        queue.add(add);
+        // 检查与入队之间可能刚好关闭：写入线程已退出、剩余加购也已清理，这条就没人处理了，收回后直接失败
+        if (!running && queue.remove(add)) {
+            throw new IllegalStateException("Cart add coalescer is shutting down");
+        }
+        try {
+            add.future().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingAdd> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAdd first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, flushSize - batch.size());
+
+                // 未攒满时最多再等 maxLatency，把同一波加购合并进同一次提交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+                while (batch.size() < flushSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingAdd next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, flushSize - batch.size());
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingAdd> batch) {
+        if (batch.size() == 1) {
+            addOne(batch.get(0));
+            return;
+        }
+        List<CartDTO> cartDTOs = new ArrayList<>(batch.size());
+        List<String> txIds = new ArrayList<>(batch.size());
+        for (PendingAdd add : batch) {
+            cartDTOs.add(add.cartDTO());
+            txIds.add(add.txId());
+        }
+
+        long start = System.nanoTime();
+        try {
+            int rows = cartService.addToCartCoalesced(cartDTOs, txIds);
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            flushSizeSummary.record(batch.size());
+            flushRowsSummary.record(rows);
+            batch.forEach(add -> add.future().complete(null));
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.warn("Cart add flush failed, retrying adds one by one. Size: {}", batch.size(), e);
+            batch.forEach(this::addOne);
+        }
+    }
+
+    private void addOne(PendingAdd add) {
+        try {
+            cartService.addToCartWithTxLog(add.cartDTO(), add.txId(), add.txLogMode());
+            add.future().complete(null);
+        } catch (Exception e) {
+            add.future().completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        // 停止接收新加购，写入线程把队列中剩余的加购全部写完再退出
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        PendingAdd left;
+        while ((left = queue.poll()) != null) {
+            left.future().completeExceptionally(new IllegalStateException("Cart add coalescer closed before flush"));
+        }
+        log.info("Cart add coalescer drained.");
+    }
+
+    private record PendingAdd(CartDTO cartDTO, String txId, TxLogMode txLogMode, CompletableFuture<Void> future) {
+    }
+}
@@ -2,35 +2,111 @@ package com.huskymqplayground.service;
 
 import com.huskymqplayground.domain.CartItem;
 import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.domain.OutboxMessage;
 import com.huskymqplayground.dto.CartDTO;
 import com.huskymqplayground.mapper.CartItemMapper;
 import com.huskymqplayground.mapper.CartTransactionMapper;
+import com.huskymqplayground.mapper.OutboxMessageMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * 购物车按 (username, item_name) 一行，加购是对 quantity 的原子累加（INSERT ... ON DUPLICATE KEY UPDATE），不再每次加购插入一行
+ */
 @Service
 @RequiredArgsConstructor
 public class CartService {
 
+    /**
+     * 合并写入时按唯一键排序，多行累加总是以相同顺序加锁，避免与其他加购事务互相死锁
+     */
+    private static final Comparator<CartItem> LOCK_ORDER =
+            Comparator.comparing(CartItem::getUsername, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                    .thenComparing(CartItem::getItemName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private final CartItemMapper cartItemMapper;
     private final CartTransactionMapper cartTransactionMapper;
+    private final OutboxMessageMapper outboxMessageMapper;
+
+    /**
+     * INLINE 时事务 ID 随新行写入 cart_item，一次 INSERT；累加到已有行（影响行数为 2）或 SEPARATE 时另写一行 cart_transaction
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void addToCartWithTxLog(CartDTO cartDTO, String txId, TxLogMode txLogMode) {
+        CartItem item = toItem(cartDTO);
+        if (txLogMode == TxLogMode.INLINE) {
+            item.setTxId(txId);
+            if (cartItemMapper.upsertIncrement(List.of(item)) == 1) {
+                return;
+            }
+        } else {
+            cartItemMapper.upsertIncrement(List.of(item));
+        }
+        cartTransactionMapper.insert(toTxLog(cartDTO, txId));
+    }
 
+    /**
+     * 合并写入（CartAddCoalescer）：多个本地事务共用一个数据库事务，同一 (username, item_name) 的加购先在内存中相加，
+     * 整批一条多行累加 + 一次批量写入 cart_transaction；多行语句无法区分每行是插入还是累加，两种模式都不写 cart_item.tx_id
+     * @return 合并后的 cart_item 行数
+     */
     @Transactional(rollbackFor = Exception.class)
-    public void addToCartWithTxLog(CartDTO cartDTO, String txId) {
+    public int addToCartCoalesced(List<CartDTO> cartDTOs, List<String> txIds) {
+        Map<CartItem, CartItem> merged = new TreeMap<>(LOCK_ORDER);
+        for (CartDTO cartDTO : cartDTOs) {
+            CartItem item = toItem(cartDTO);
+            CartItem existing = merged.putIfAbsent(item, item);
+            if (existing != null) {
+                existing.setQuantity(quantityOf(existing) + quantityOf(item));
+            }
+        }
+        cartItemMapper.upsertIncrement(new ArrayList<>(merged.values()));
+
+        List<CartTransaction> txLogs = new ArrayList<>(txIds.size());
+        for (int i = 0; i < cartDTOs.size(); i++) {
+            txLogs.add(toTxLog(cartDTOs.get(i), txIds.get(i)));
+        }
+        cartTransactionMapper.insert(txLogs);
+        return merged.size();
+    }
+
+    /**
+     * 发件箱模式：购物车行与待发消息在同一个本地事务中写入，不经过半消息，由 OutboxRelay 异步投递
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void addToCartWithOutbox(CartDTO cartDTO, OutboxMessage outboxMessage) {
+        cartItemMapper.upsertIncrement(List.of(toItem(cartDTO)));
+        outboxMessageMapper.insert(outboxMessage);
+    }
+
+    private static CartItem toItem(CartDTO cartDTO) {
+        LocalDateTime now = LocalDateTime.now();
         CartItem item = new CartItem();
         item.setUsername(cartDTO.getUsername());
         item.setItemName(cartDTO.getItemName());
         item.setQuantity(cartDTO.getQuantity());
-        item.setCreateTime(LocalDateTime.now());
-        cartItemMapper.insert(item);
+        item.setCreateTime(now);
+        item.setUpdateTime(now);
+        return item;
+    }
 
+    private static CartTransaction toTxLog(CartDTO cartDTO, String txId) {
         CartTransaction tx = new CartTransaction();
         tx.setTxId(txId);
         tx.setUsername(cartDTO.getUsername());
         tx.setCreateTime(LocalDateTime.now());
-        cartTransactionMapper.insert(tx);
+        return tx;
+    }
+
+    private static int quantityOf(CartItem item) {
+        return item.getQuantity() == null ? 0 : item.getQuantity();
     }
 }
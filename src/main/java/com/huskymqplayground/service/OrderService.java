@@ -1,9 +1,11 @@
 package com.huskymqplayground.service;
 
 import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.domain.OutboxMessage;
 import com.huskymqplayground.domain.PurchaseOrder;
 import com.huskymqplayground.dto.OrderDTO;
 import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.mapper.OutboxMessageMapper;
 import com.huskymqplayground.mapper.PurchaseOrderMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -17,9 +19,13 @@ public class OrderService {
 
     private final PurchaseOrderMapper purchaseOrderMapper;
     private final OrderTransactionMapper orderTransactionMapper;
+    private final OutboxMessageMapper outboxMessageMapper;
 
+    /**
+     * INLINE 时事务 ID 写入订单行，一次 INSERT；SEPARATE 时另写一行 order_transaction
+     */
     @Transactional(rollbackFor = Exception.class)
-    public void createOrderWithTxLog(OrderDTO orderDTO, String txId) {
+    public void createOrderWithTxLog(OrderDTO orderDTO, String txId, TxLogMode txLogMode) {
         PurchaseOrder order = new PurchaseOrder();
         order.setOrderNo(orderDTO.getOrderNo());
         order.setBuyer(orderDTO.getBuyer());
@@ -27,6 +33,11 @@ public class OrderService {
         order.setQuantity(orderDTO.getQuantity());
         order.setAmount(orderDTO.getAmount());
         order.setCreateTime(LocalDateTime.now());
+        if (txLogMode == TxLogMode.INLINE) {
+            order.setTxId(txId);
+            purchaseOrderMapper.insert(order);
+            return;
+        }
         purchaseOrderMapper.insert(order);
 
         OrderTransaction tx = new OrderTransaction();
@@ -35,4 +46,20 @@ public class OrderService {
         tx.setCreateTime(LocalDateTime.now());
         orderTransactionMapper.insert(tx);
     }
+
+    /**
+     * 发件箱模式：订单行与待发消息在同一个本地事务中写入，不经过半消息，由 OutboxRelay 异步投递
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void createOrderWithOutbox(OrderDTO orderDTO, OutboxMessage outboxMessage) {
+        PurchaseOrder order = new PurchaseOrder();
+        order.setOrderNo(orderDTO.getOrderNo());
+        order.setBuyer(orderDTO.getBuyer());
+        order.setItemName(orderDTO.getItemName());
+        order.setQuantity(orderDTO.getQuantity());
+        order.setAmount(orderDTO.getAmount());
+        order.setCreateTime(LocalDateTime.now());
+        purchaseOrderMapper.insert(order);
+        outboxMessageMapper.insert(outboxMessage);
+    }
 }
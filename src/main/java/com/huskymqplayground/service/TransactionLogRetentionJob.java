@@ -0,0 +1,187 @@
+package com.huskymqplayground.service;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.domain.LocalTransaction;
+import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.mapper.CartTransactionMapper;
+import com.huskymqplayground.mapper.LocalTransactionMapper;
+import com.huskymqplayground.mapper.OrderTransactionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事务日志表（order_transaction / cart_transaction / local_transaction）的过期清理
+ * 这些表只服务于 Broker 回查，超过回查窗口的行不会再被读到；保留 max-age 后按 create_time 索引分块删除：
+ * 每块先取最老的 chunk-size 个主键，再按主键删除并立即提交，单次只锁少量行，块之间停顿 pause-millis 让出数据库
+ * 多实例部署时由 Redisson 锁保证同一时刻只有一个实例在清理，拿不到锁的实例直接跳过本轮
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "husky.tx-log.retention.enabled", havingValue = "true", matchIfMissing = true)
+public class TransactionLogRetentionJob {
+
+    private static final String METRIC_PREFIX = "tx.log.retention";
+
+    private static final String LOCK_NAME = "husky:tx-log:retention";
+
+    private final RedissonClient redissonClient;
+    private final Duration maxAge;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final List<PurgeTarget<?>> targets;
+
+    private final Timer runTimer;
+
+    public TransactionLogRetentionJob(RedissonClient redissonClient,
+                                      OrderTransactionMapper orderTransactionMapper,
+                                      CartTransactionMapper cartTransactionMapper,
+                                      LocalTransactionMapper localTransactionMapper,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${husky.tx-log.retention.max-age-minutes:1440}") long maxAgeMinutes,
+                                      @Value("${husky.tx-log.retention.check-window-minutes:16}") long checkWindowMinutes,
+                                      @Value("${husky.tx-log.retention.chunk-size:500}") int chunkSize,
+                                      @Value("${husky.tx-log.retention.pause-millis:50}") long pauseMillis) {
+        // 回查窗口内的行删掉后，回查会把已提交的事务判为 ROLLBACK
+        if (maxAgeMinutes < checkWindowMinutes) {
+            throw new IllegalStateException("husky.tx-log.retention.max-age-minutes (" + maxAgeMinutes
+                    + ") must not be shorter than the broker check window (" + checkWindowMinutes + " minutes)");
+        }
+        this.redissonClient = redissonClient;
+        this.maxAge = Duration.ofMinutes(maxAgeMinutes);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.pauseMillis = pauseMillis;
+        this.targets = List.of(
+                new PurgeTarget<>("order_transaction", orderTransactionMapper,
+                        OrderTransaction::getTxId, OrderTransaction::getCreateTime, meterRegistry),
+                new PurgeTarget<>("cart_transaction", cartTransactionMapper,
+                        CartTransaction::getTxId, CartTransaction::getCreateTime, meterRegistry),
+                new PurgeTarget<>("local_transaction", localTransactionMapper,
+                        LocalTransaction::getTxId, LocalTransaction::getCreateTime, meterRegistry));
+
+        this.runTimer = Timer.builder(METRIC_PREFIX + ".run")
+                .description("一轮清理（全部表）的耗时")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${husky.tx-log.retention.initial-delay-millis:60000}",
+            fixedDelayString = "${husky.tx-log.retention.interval-millis:600000}")
+    public void purge() {
+        RLock lock = redissonClient.getLock(LOCK_NAME);
+        // 不设租期，由看门狗续期；实例宕机后锁随看门狗超时释放
+        if (!lock.tryLock()) {
+            log.debug("[TxLogRetention] Another instance is purging, skip this round.");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(maxAge);
+            for (PurgeTarget<?> target : targets) {
+                purge(target, cutoff);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            lock.unlock();
+        }
+    }
+
+    private <T> void purge(PurgeTarget<T> target, LocalDateTime cutoff) throws InterruptedException {
+        long total = 0;
+        try {
+            while (true) {
+                long chunkStart = System.nanoTime();
+                // 走 create_time 索引取最老的一块主键，再按主键删除，不做范围锁
+                List<String> txIds = target.mapper().selectObjs(Wrappers.<T>lambdaQuery()
+                        .select(target.idColumn())
+                        .lt(target.timeColumn(), cutoff)
+                        .orderByAsc(target.timeColumn())
+                        .last("LIMIT " + chunkSize));
+                if (txIds.isEmpty()) {
+                    break;
+                }
+                int deleted = target.mapper().delete(Wrappers.<T>lambdaQuery()
+                        .in(target.idColumn(), txIds)
+                        .lt(target.timeColumn(), cutoff));
+                target.chunkTimer().record(System.nanoTime() - chunkStart, TimeUnit.NANOSECONDS);
+                target.deleted().increment(deleted);
+                total += deleted;
+                if (txIds.size() < chunkSize) {
+                    break;
+                }
+                if (pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        } finally {
+            updateLag(target, cutoff);
+        }
+        if (total > 0) {
+            log.info("[TxLogRetention] Purged {} rows from {} older than {}", total, target.table(), cutoff);
+        }
+    }
+
+    /**
+     * 清理滞后：表中最老一行超出保留期的秒数，清理跟上时为 0
+     */
+    private <T> void updateLag(PurgeTarget<T> target, LocalDateTime cutoff) {
+        try {
+            List<LocalDateTime> oldest = target.mapper().selectObjs(Wrappers.<T>lambdaQuery()
+                    .select(target.timeColumn())
+                    .isNotNull(target.timeColumn())
+                    .orderByAsc(target.timeColumn())
+                    .last("LIMIT 1"));
+            long lagSeconds = oldest.isEmpty() ? 0 : Math.max(Duration.between(oldest.get(0), cutoff).toSeconds(), 0);
+            target.lagSeconds().set(lagSeconds);
+        } catch (Exception e) {
+            log.warn("[TxLogRetention] Update lag failed. Table: {}", target.table(), e);
+        }
+    }
+
+    /**
+     * 一张事务日志表：主键列 tx_id 与时间列 create_time
+     */
+    private record PurgeTarget<T>(String table, BaseMapper<T> mapper,
+                                  SFunction<T, String> idColumn, SFunction<T, LocalDateTime> timeColumn,
+                                  Counter deleted, Timer chunkTimer, AtomicLong lagSeconds) {
+
+        PurgeTarget(String table, BaseMapper<T> mapper,
+                    SFunction<T, String> idColumn, SFunction<T, LocalDateTime> timeColumn,
+                    MeterRegistry meterRegistry) {
+            this(table, mapper, idColumn, timeColumn,
+                    Counter.builder(METRIC_PREFIX + ".deleted")
+                            .description("清理删除的行数")
+                            .tag("table", table)
+                            .register(meterRegistry),
+                    Timer.builder(METRIC_PREFIX + ".chunk")
+                            .description("每块（查主键 + 删除）的耗时")
+                            .tag("table", table)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry),
+                    new AtomicLong());
+            Gauge.builder(METRIC_PREFIX + ".lag", lagSeconds, AtomicLong::get)
+                    .description("最老一行超出保留期的秒数")
+                    .tag("table", table)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.huskymqplayground.service;
+
+/**
+ * 本地事务中 RocketMQ 事务 ID 的落库方式，决定 executeLocalTransaction 的写入与 checkLocalTransaction 的查询
+ */
+public enum TxLogMode {
+    /**
+     * 业务行 + 单独的事务日志行（order_transaction / cart_transaction），每个本地事务两次 INSERT
+     */
+    SEPARATE,
+    /**
+     * 事务 ID 写入业务行的 tx_id 唯一列（purchase_order / cart_item），每个本地事务一次 INSERT，回查直接查业务表
+     * cart_item 按 (username, item_name) 累加，只有插入新行的事务能写入 tx_id，累加到已有行的事务仍另写 cart_transaction
+     */
+    INLINE
+}
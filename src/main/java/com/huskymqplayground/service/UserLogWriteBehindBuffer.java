@@ -0,0 +1,224 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.domain.UserLog;
+import com.huskymqplayground.mapper.UserLogMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * user_log 的写后缓冲（Group Commit）
+ * 所有消费线程提交的 UserLog 汇总到一个队列，由单个刷盘线程按条数或时间触发，以一个 JDBC Batch + 一次提交写入
+ * 调用方拿到的 Future 在所在批次提交成功后才完成，消费者等它完成再返回，RocketMQ 的确认时机不变
+ * 批量消费的一批消息作为一组提交（{@link #writeAll}），与其他线程、其他队列的行合并写入，但不会被拆开
+ */
+@Slf4j
+@Component
+public class UserLogWriteBehindBuffer {
+
+    private static final String METRIC_PREFIX = "mq.user-log.write-behind";
+
+    private final UserLogMapper userLogMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushSize;
+    private final long maxLatencyMillis;
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final DistributionSummary flushSizeSummary;
+    private final Timer flushTimer;
+    private final Counter flushFailures;
+
+    public UserLogWriteBehindBuffer(UserLogMapper userLogMapper,
+                                    TransactionTemplate transactionTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${husky.user-log.write-behind.flush-size:256}") int flushSize,
+                                    @Value("${husky.user-log.write-behind.max-latency-millis:5}") long maxLatencyMillis) {
+        this.userLogMapper = userLogMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.flushSize = flushSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+
+        this.flushSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".flush.size")
+                .description("每次刷盘的行数")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(METRIC_PREFIX + ".flush.latency")
+                .description("每次刷盘（JDBC Batch + 提交）的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder(METRIC_PREFIX + ".flush.failures")
+                .description("刷盘失败次数")
+                .register(meterRegistry);
+        meterRegistry.gauge(METRIC_PREFIX + ".pending", queue, BlockingQueue::size);
+
+        this.flusher = new Thread(this::flushLoop, "user-log-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 提交一行，返回的 Future 在该行所在批次提交后完成
+     */
+    public CompletableFuture<Void> submit(UserLog userLog) {
+        return submitAll(List.of(userLog));
+    }
+
+    /**
+     * 提交一组行，这组行总在同一次提交中写入（不会被拆到两次刷盘里），返回的 Future 在该次提交后完成
+     */
+    public CompletableFuture<Void> submitAll(List<UserLog> userLogs) {
+        PendingWrite write = new PendingWrite(userLogs, new CompletableFuture<>());
+        if (!running) {
+            write.future().completeExceptionally(new IllegalStateException("Write-behind buffer is shutting down"));
+            return write.future();
+        }
+        queue.add(write);
+        // 入队与 shutdown 并发：刷盘线程和 shutdown 都已收尾时这一项不会再有人处理，由提交方自己失败掉
+        if (!running && queue.remove(write)) {
+            write.future().completeExceptionally(new IllegalStateException("Write-behind buffer is shutting down"));
+        }
+        return write.future();
+    }
+
+    /**
+     * 提交一行并等待提交完成，失败时抛出原始异常以触发消息重投
+     */
+    public void write(UserLog userLog) {
+        await(submit(userLog));
+    }
+
+    /**
+     * 提交一组行并等待提交完成：整组要么全部写入要么全部失败，可用于批量消费的 handleBatch
+     */
+    public void writeAll(List<UserLog> userLogs) {
+        await(submitAll(userLogs));
+    }
+
+    private void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int rows = first.userLogs().size() + drain(batch, first.userLogs().size());
+
+                // 未攒满时最多再等 maxLatency，把并发到达的行合并进同一次提交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+                while (rows < flushSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.userLogs().size();
+                    rows += drain(batch, rows);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 不等待地取出已排队的写入，直到行数达到 flushSize；一组行整体取出，最后一组可能让行数略超 flushSize
+     * @return 本次取出的行数
+     */
+    private int drain(List<PendingWrite> batch, int rows) {
+        int drained = 0;
+        PendingWrite next;
+        while (rows + drained < flushSize && (next = queue.poll()) != null) {
+            batch.add(next);
+            drained += next.userLogs().size();
+        }
+        return drained;
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<UserLog> rows = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            rows.addAll(write.userLogs());
+        }
+
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> userLogMapper.insert(rows));
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            flushSizeSummary.record(rows.size());
+            batch.forEach(write -> write.future().complete(null));
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.warn("Write-behind flush failed, retrying writes one by one. Size: {}", rows.size(), e);
+            flushOneByOne(batch);
+        }
+    }
+
+    /**
+     * 整批失败时逐组写入，只让真正有问题的那组失败；一组多行时放在一个事务里，保持整组原子
+     */
+    private void flushOneByOne(List<PendingWrite> batch) {
+        for (PendingWrite write : batch) {
+            try {
+                if (write.userLogs().size() == 1) {
+                    userLogMapper.insert(write.userLogs().get(0));
+                } else {
+                    transactionTemplate.executeWithoutResult(status -> userLogMapper.insert(write.userLogs()));
+                }
+                write.future().complete(null);
+            } catch (Exception e) {
+                write.future().completeExceptionally(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 停止接收新写入，刷盘线程把队列中剩余的行全部写完再退出
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        PendingWrite left;
+        while ((left = queue.poll()) != null) {
+            left.future().completeExceptionally(new IllegalStateException("Write-behind buffer closed before flush"));
+        }
+        log.info("Write-behind buffer drained.");
+    }
+
+    private record PendingWrite(List<UserLog> userLogs, CompletableFuture<Void> future) {
+    }
+}
@@ -6,7 +6,8 @@ CREATE TABLE IF NOT EXISTS `user_log` (
   `username` varchar(255) DEFAULT NULL,
   `operation` varchar(255) DEFAULT NULL,
   `create_time` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_user_log_username_id` (`username`, `id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 
@@ -17,15 +18,20 @@ CREATE TABLE IF NOT EXISTS `purchase_order` (
   `item_name` varchar(255) DEFAULT NULL,
   `quantity` int(11) DEFAULT NULL,
   `amount` decimal(18,2) DEFAULT NULL,
+  `tx_id` varchar(64) DEFAULT NULL,
   `create_time` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_order_tx_id` (`tx_id`),
+  KEY `idx_order_buyer_id` (`buyer`, `id`),
+  KEY `idx_order_order_no` (`order_no`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 CREATE TABLE IF NOT EXISTS `order_transaction` (
   `tx_id` varchar(64) NOT NULL,
   `order_no` varchar(64) DEFAULT NULL,
   `create_time` datetime DEFAULT NULL,
-  PRIMARY KEY (`tx_id`)
+  PRIMARY KEY (`tx_id`),
+  KEY `idx_order_tx_create_time` (`create_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 CREATE TABLE IF NOT EXISTS `cart_item` (
@@ -33,13 +39,46 @@ CREATE TABLE IF NOT EXISTS `cart_item` (
   `username` varchar(255) DEFAULT NULL,
   `item_name` varchar(255) DEFAULT NULL,
   `quantity` int(11) DEFAULT NULL,
+  `tx_id` varchar(64) DEFAULT NULL,
   `create_time` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  `update_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_cart_user_item` (`username`, `item_name`),
+  UNIQUE KEY `uk_cart_tx_id` (`tx_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 CREATE TABLE IF NOT EXISTS `cart_transaction` (
   `tx_id` varchar(64) NOT NULL,
   `username` varchar(255) DEFAULT NULL,
   `create_time` datetime DEFAULT NULL,
-  PRIMARY KEY (`tx_id`)
+  PRIMARY KEY (`tx_id`),
+  KEY `idx_cart_tx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS `local_transaction` (
+  `tx_id` varchar(64) NOT NULL,
+  `create_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`tx_id`),
+  KEY `idx_local_tx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS `outbox_message` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `shard` int(11) NOT NULL,
+  `topic` varchar(255) NOT NULL,
+  `message_keys` varchar(255) DEFAULT NULL,
+  `codec` varchar(32) DEFAULT NULL,
+  `body` mediumblob NOT NULL,
+  `create_time` datetime(3) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_outbox_shard_id` (`shard`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS `product` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `item_name` varchar(255) NOT NULL,
+  `price` decimal(18,2) NOT NULL,
+  `update_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_product_item_name` (`item_name`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,124 @@
+package com.huskymqplayground.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.Product;
+import com.huskymqplayground.dto.PriceInvalidationDTO;
+import com.huskymqplayground.mapper.ProductMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.messaging.Message;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductPriceCatalogTest {
+
+    private static final Duration REDIS_TTL = Duration.ofMinutes(30);
+
+    @Mock
+    private ProductMapper productMapper;
+    @Mock
+    private RedissonClient redissonClient;
+    @Mock
+    private RBucket<String> bucket;
+    @Mock
+    private RocketMQTemplate rocketMQTemplate;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ProductPriceCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        when(redissonClient.<String>getBucket(anyString(), any(Codec.class))).thenReturn(bucket);
+        catalog = new ProductPriceCatalog(productMapper, redissonClient, new RedisBulkhead(meterRegistry, 0, 1000),
+                rocketMQTemplate, new MessageCodecRegistry(new ObjectMapper(), "json"), meterRegistry,
+                100, 60, REDIS_TTL.toMinutes(), new BigDecimal("99.00"));
+    }
+
+    @Test
+    void nearCacheHitSkipsRedisAndDb() {
+        when(productMapper.selectOne(any())).thenReturn(product("book", "12.50"));
+
+        assertThat(catalog.priceOf("book")).isEqualByComparingTo("12.50");
+        assertThat(catalog.priceOf("book")).isEqualByComparingTo("12.50");
+
+        verify(bucket, times(1)).get();
+        verify(productMapper, times(1)).selectOne(any());
+        verify(bucket).setIfAbsent("12.50", REDIS_TTL);
+    }
+
+    @Test
+    void redisHitSkipsDb() {
+        when(bucket.get()).thenReturn("8.00");
+
+        assertThat(catalog.priceOf("pen")).isEqualByComparingTo("8.00");
+        verifyNoInteractions(productMapper);
+    }
+
+    @Test
+    void unknownItemUsesFallbackAndCachesAbsence() {
+        assertThat(catalog.priceOf("ghost")).isEqualByComparingTo("99.00");
+        assertThat(catalog.priceOf("ghost")).isEqualByComparingTo("99.00");
+
+        verify(productMapper, times(1)).selectOne(any());
+        verify(bucket).setIfAbsent("", REDIS_TTL);
+        assertThat(meterRegistry.get("catalog.price.fallbacks").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidationReloadsFromRedis() {
+        when(bucket.get()).thenReturn("8.00", "9.00");
+        assertThat(catalog.priceOf("pen")).isEqualByComparingTo("8.00");
+
+        catalog.invalidate(new PriceInvalidationDTO("pen", System.currentTimeMillis()));
+
+        assertThat(catalog.priceOf("pen")).isEqualByComparingTo("9.00");
+        assertThat(meterRegistry.get("catalog.price.invalidation.lag").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void updatePriceOverwritesRedisAndBroadcasts() {
+        when(bucket.get()).thenReturn("8.00");
+        assertThat(catalog.priceOf("pen")).isEqualByComparingTo("8.00");
+        when(productMapper.update(any(), any())).thenReturn(1);
+
+        catalog.updatePrice("pen", new BigDecimal("10.00"));
+
+        verify(productMapper, never()).insert(any(Product.class));
+        verify(bucket).set("10.00", REDIS_TTL);
+        verify(rocketMQTemplate).syncSend(eq(ProductPriceCatalog.INVALIDATION_TOPIC), any(Message.class));
+        // 本实例直接失效，下一次读取重新加载
+        catalog.priceOf("pen");
+        verify(bucket, times(2)).get();
+    }
+
+    private static Product product(String itemName, String price) {
+        Product product = new Product();
+        product.setItemName(itemName);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+}
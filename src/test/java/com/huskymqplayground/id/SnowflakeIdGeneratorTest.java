@@ -0,0 +1,82 @@
+package com.huskymqplayground.id;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SnowflakeIdGeneratorTest {
+
+    @Mock
+    private WorkerIdLease workerIdLease;
+
+    @Test
+    void idsAreStrictlyIncreasingAndCarryWorkerId() {
+        when(workerIdLease.workerId()).thenReturn(517);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(workerIdLease);
+
+        long previous = 0;
+        // 超过单毫秒 4096 个序列号，覆盖进位到下一毫秒
+        for (int i = 0; i < 20_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & (WorkerIdLease.MAX_WORKERS - 1)).isEqualTo(517);
+            previous = id;
+        }
+        long timestamp = (previous >>> (SnowflakeIdGenerator.SEQUENCE_BITS + WorkerIdLease.WORKER_ID_BITS)) + SnowflakeIdGenerator.EPOCH;
+        assertThat(timestamp).isBetween(System.currentTimeMillis() - 60_000, System.currentTimeMillis() + 1_000);
+    }
+
+    @Test
+    void concurrentCallersNeverGetDuplicates() throws Exception {
+        when(workerIdLease.workerId()).thenReturn(3);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(workerIdLease);
+
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<long[]>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                });
+            }
+            Set<Long> all = new HashSet<>();
+            for (Future<long[]> future : executor.invokeAll(tasks)) {
+                for (long id : future.get()) {
+                    all.add(id);
+                }
+            }
+            assertThat(all).hasSize(threads * perThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredLeaseFailsFast() {
+        when(workerIdLease.workerId()).thenThrow(new IllegalStateException("Worker id lease expired: 3"));
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(workerIdLease);
+
+        assertThatThrownBy(generator::nextOrderNo).isInstanceOf(IllegalStateException.class);
+    }
+}
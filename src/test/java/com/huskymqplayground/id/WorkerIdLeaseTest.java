@@ -0,0 +1,132 @@
+package com.huskymqplayground.id;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+/**
+ * 在内嵌 redis-server 上验证机器号租约的释放与续期失败后的停发时机
+ */
+class WorkerIdLeaseTest {
+
+    private static RedisServer redisServer;
+    private static RedissonClient redissonClient;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redisServer.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void flush() {
+        redissonClient.getKeys().flushall();
+    }
+
+    @Test
+    void releaseKeepsWorkerIdForBorrowWindow() {
+        WorkerIdLease lease = new WorkerIdLease(redissonClient, 300);
+        int workerId = lease.workerId();
+        RBucket<String> key = bucketOf(workerId);
+        String owner = key.get();
+
+        lease.release();
+
+        // 已发出的 ID 可能领先系统时钟 MAX_BORROW_MILLIS，这段时间内机器号不能被别人抢到
+        assertThat(key.get()).isEqualTo(owner);
+        assertThat(key.remainTimeToLive()).isBetween(1L, SnowflakeIdGenerator.MAX_BORROW_MILLIS + 1);
+        assertThat(key.setIfAbsent("other", Duration.ofSeconds(30))).isFalse();
+        assertThatThrownBy(lease::workerId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void releaseLeavesLeaseTakenOverByOthers() {
+        WorkerIdLease lease = new WorkerIdLease(redissonClient, 300);
+        RBucket<String> key = bucketOf(lease.workerId());
+        key.set("other", Duration.ofSeconds(300));
+
+        lease.release();
+
+        assertThat(key.get()).isEqualTo("other");
+        assertThat(key.remainTimeToLive()).isGreaterThan(SnowflakeIdGenerator.MAX_BORROW_MILLIS + 1);
+    }
+
+    @Test
+    void unrenewedLeaseStopsIssuingBorrowWindowBeforeKeyExpires() throws InterruptedException {
+        // 续期脚本一直失败（Redis 不可达），机器号键按首次抢占时的 ttl 过期
+        RedissonClient unreachable = spy(redissonClient);
+        doThrow(new RedisConnectionException("redis down")).when(unreachable).getScript(any(Codec.class));
+        long ttlMillis = 2000;
+        long acquiredBefore = System.currentTimeMillis();
+        WorkerIdLease lease = new WorkerIdLease(unreachable, TimeUnit.MILLISECONDS.toSeconds(ttlMillis));
+        try {
+            RBucket<String> key = bucketOf(lease.workerId());
+            long keyExpiresAt = System.currentTimeMillis() + key.remainTimeToLive();
+
+            long stoppedAt = 0;
+            while (stoppedAt == 0) {
+                assertThat(System.currentTimeMillis()).isLessThan(acquiredBefore + ttlMillis);
+                try {
+                    lease.workerId();
+                    Thread.sleep(5);
+                } catch (IllegalStateException e) {
+                    stoppedAt = System.currentTimeMillis();
+                }
+            }
+            // 停止发号时借用的未来时间戳也早于键过期，别的实例此后才能接手
+            assertThat(stoppedAt + SnowflakeIdGenerator.MAX_BORROW_MILLIS).isLessThan(keyExpiresAt);
+            assertThat(key.isExists()).isTrue();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Test
+    void ttlShorterThanBorrowWindowIsRejected() {
+        assertThatThrownBy(() -> new WorkerIdLease(redissonClient, 1))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("worker-lease-ttl-seconds");
+    }
+
+    private static RBucket<String> bucketOf(int workerId) {
+        return redissonClient.getBucket("husky:id:worker:" + workerId, StringCodec.INSTANCE);
+    }
+}
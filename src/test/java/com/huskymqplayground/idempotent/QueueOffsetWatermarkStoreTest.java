@@ -0,0 +1,173 @@
+package com.huskymqplayground.idempotent;
+
+import com.huskymqplayground.annotation.RocketMQIdempotent;
+import com.huskymqplayground.idempotent.QueueOffsetWatermarkStore.Verdict;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 在内嵌 redis-server 上执行真实的水位读取与提交脚本
+ */
+class QueueOffsetWatermarkStoreTest {
+
+    private static final String GROUP = "test-group";
+
+    private static RedisServer redisServer;
+    private static RedissonClient redissonClient;
+
+    private final RocketMQIdempotent idempotent = Annotated.class.getAnnotation(RocketMQIdempotent.class);
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redisServer.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void flush() {
+        redissonClient.getKeys().flushall();
+    }
+
+    @Test
+    void claimDoesNotAdvanceWatermark() {
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        QueueOffsetWatermarkStore.Position position = position(5, -1);
+
+        assertThat(store.claim(position)).isTrue();
+        // 认领后尚未提交：同一实例的重投和另一实例都还能认领
+        assertThat(store.claim(position)).isTrue();
+        assertThat(new QueueOffsetWatermarkStore(redissonClient).claim(position)).isTrue();
+        assertThat(watermark(position)).isNull();
+    }
+
+    @Test
+    void crashMidBatchLeavesUnprocessedRestClaimable() {
+        List<QueueOffsetWatermarkStore.Position> batch = LongStream.rangeClosed(10, 13).mapToObj(offset -> position(offset, -1)).toList();
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        assertThat(store.claimBatch(batch)).containsOnly(Verdict.NEW);
+
+        // 只处理完前两条就宕机
+        store.commitAsync(batch.subList(0, 2)).toCompletableFuture().join();
+
+        QueueOffsetWatermarkStore restarted = new QueueOffsetWatermarkStore(redissonClient);
+        assertThat(restarted.claimBatch(batch)).containsExactly(Verdict.DUPLICATE, Verdict.DUPLICATE, Verdict.NEW, Verdict.NEW);
+        assertThat(watermark(batch.get(0))).isEqualTo("11");
+    }
+
+    @Test
+    void commitNeverMovesWatermarkBackwards() {
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        store.commitAsync(List.of(position(9, -1))).toCompletableFuture().join();
+        // 较早的异步提交后到达
+        store.commitAsync(List.of(position(4, -1))).toCompletableFuture().join();
+
+        assertThat(watermark(position(0, -1))).isEqualTo("9");
+        assertThat(new QueueOffsetWatermarkStore(redissonClient).claim(position(9, -1))).isFalse();
+        assertThat(new QueueOffsetWatermarkStore(redissonClient).claimAsync(position(10, -1)).toCompletableFuture().join()).isTrue();
+    }
+
+    @Test
+    void lanesKeepSeparateWatermarks() {
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        store.commitAsync(List.of(position(20, 0), position(18, 1), position(17, 1))).toCompletableFuture().join();
+
+        QueueOffsetWatermarkStore restarted = new QueueOffsetWatermarkStore(redissonClient);
+        assertThat(restarted.claimBatch(List.of(position(19, 0), position(19, 1), position(21, 0))))
+                .containsExactly(Verdict.DUPLICATE, Verdict.NEW, Verdict.NEW);
+    }
+
+    @Test
+    void heldOffsetStopsWatermarkAndMarksLaterCompletionsAhead() {
+        List<QueueOffsetWatermarkStore.Position> batch = LongStream.rangeClosed(10, 14).mapToObj(offset -> position(offset, 0)).toList();
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        store.commitAsync(List.of(position(9, 0))).toCompletableFuture().join();
+
+        // 11 交给停车链，其他顺序键的 10、12、13 先完成
+        store.hold(batch.get(1));
+        QueueOffsetWatermarkStore.Completion completion = store.complete(List.of(batch.get(0), batch.get(2), batch.get(3)));
+        assertThat(completion.committed()).extracting(QueueOffsetWatermarkStore.Position::offset).containsExactly(10L);
+        assertThat(completion.ahead()).extracting(QueueOffsetWatermarkStore.Position::offset).containsExactly(12L, 13L);
+        store.commitAsync(completion).toCompletableFuture().join();
+
+        // 此时宕机：10 已越过，11 ~ 13 需要按 Keys 标记判重，14 首次消费
+        QueueOffsetWatermarkStore restarted = new QueueOffsetWatermarkStore(redissonClient);
+        assertThat(restarted.claimBatch(batch)).containsExactly(
+                Verdict.DUPLICATE, Verdict.UNCERTAIN, Verdict.UNCERTAIN, Verdict.UNCERTAIN, Verdict.NEW);
+
+        // 停车链完成后水位追上超前位点，超前字段随之删除
+        store.commitAsync(store.complete(List.of(batch.get(1)))).toCompletableFuture().join();
+        assertThat(watermark(batch.get(0))).isEqualTo("13");
+        assertThat(redissonClient.<String, String>getMap(batch.get(0).hashKey(), StringCodec.INSTANCE)
+                .containsKey(batch.get(0).field() + ":ahead")).isFalse();
+        assertThat(new QueueOffsetWatermarkStore(redissonClient).claimBatch(batch)).containsExactly(
+                Verdict.DUPLICATE, Verdict.DUPLICATE, Verdict.DUPLICATE, Verdict.DUPLICATE, Verdict.NEW);
+    }
+
+    @Test
+    void abandonedHoldBlocksUntilAnotherInstancePassesIt() {
+        QueueOffsetWatermarkStore store = new QueueOffsetWatermarkStore(redissonClient);
+        store.hold(position(5, -1));
+        assertThat(store.complete(List.of(position(6, -1))).committed())
+                .extracting(QueueOffsetWatermarkStore.Position::offset).containsExactly(4L);
+
+        // 队列被分走、停车链被放弃：5 没有完成，本实例之后的完成也不能越过它
+        assertThat(store.complete(List.of(position(7, -1))).committed())
+                .extracting(QueueOffsetWatermarkStore.Position::offset).containsExactly(4L);
+
+        // 新的持有者处理完 5 并提交，本实例读到水位后清掉过期的登记
+        new QueueOffsetWatermarkStore(redissonClient).commitAsync(List.of(position(8, -1))).toCompletableFuture().join();
+        assertThat(store.claim(position(8, -1))).isFalse();
+        assertThat(store.complete(List.of(position(9, -1))).committed())
+                .extracting(QueueOffsetWatermarkStore.Position::offset).containsExactly(9L);
+    }
+
+    private QueueOffsetWatermarkStore.Position position(long offset, int lane) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("test-topic");
+        messageExt.setBrokerName("broker-a");
+        messageExt.setQueueId(3);
+        messageExt.setQueueOffset(offset);
+        return new QueueOffsetWatermarkStore(redissonClient).positionOf(idempotent, GROUP, messageExt, lane);
+    }
+
+    private String watermark(QueueOffsetWatermarkStore.Position position) {
+        return redissonClient.<String, String>getMap(position.hashKey(), StringCodec.INSTANCE).get(position.field());
+    }
+
+    @RocketMQIdempotent(mode = IdempotentMode.QUEUE_OFFSET)
+    private static final class Annotated {
+    }
+}
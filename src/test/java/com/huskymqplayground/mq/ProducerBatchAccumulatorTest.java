@@ -0,0 +1,178 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.bulkhead.OverflowStrategy;
+import com.huskymqplayground.bulkhead.ProducerBulkhead;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量发送对 mock 生产者的行为：批量结果逐条拆分、同一 hashKey 失败后不越过、在途消息结束后窗口恢复
+ */
+@ExtendWith(MockitoExtension.class)
+class ProducerBatchAccumulatorTest {
+
+    private static final String TOPIC = "user-log-topic";
+    private static final MessageQueue QUEUE = new MessageQueue(TOPIC, "broker-a", 0);
+
+    @Mock
+    private DefaultMQProducer producer;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<SentBatch> sent = new ArrayList<>();
+    private ProducerBatchAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        when(producer.getCompressMsgBodyOverHowmuch()).thenReturn(4096);
+    }
+
+    @AfterEach
+    void shutdown() {
+        accumulator.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchResultIsSplitPerMessage() throws Exception {
+        // 与 DefaultMQProducer.batch 一样给每条消息生成 UNIQ_KEY，回调留给用例决定何时完成
+        doAnswer(invocation -> {
+            sent.add(SentBatch.of(invocation.getArgument(0), invocation.getArgument(1)));
+            return null;
+        }).when(producer).send(anyCollection(), any(SendCallback.class), anyLong());
+        accumulator = newAccumulator(3);
+
+        List<CompletableFuture<SendResult>> futures = List.of(
+                accumulator.send(TOPIC, message("k1")),
+                accumulator.send(TOPIC, message("k2")),
+                accumulator.send(TOPIC, message("k3")));
+        assertThat(sent).hasSize(1);
+        assertThat(futures).noneMatch(CompletableFuture::isDone);
+
+        SentBatch batch = sent.get(0);
+        batch.succeed(100, "o1,o2,o3");
+
+        for (int i = 0; i < futures.size(); i++) {
+            SendResult result = futures.get(i).join();
+            assertThat(result.getSendStatus()).isEqualTo(SendStatus.SEND_OK);
+            assertThat(result.getMsgId()).isEqualTo(MessageClientIDSetter.getUniqID(batch.messages().get(i)));
+            assertThat(result.getOffsetMsgId()).isEqualTo("o" + (i + 1));
+            assertThat(result.getQueueOffset()).isEqualTo(100 + i);
+            assertThat(result.getMessageQueue()).isEqualTo(QUEUE);
+        }
+        assertThat(batch.messages()).extracting(Message::getKeys).containsExactly("k1", "k2", "k3");
+        assertThat(futures).extracting(f -> f.join().getMsgId()).doesNotHaveDuplicates();
+        assertThat(meterRegistry.get("mq.producer.send").tag("outcome", "success").timer().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("bulkhead.active").tag("name", "producer").gauge().value()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedKeyIsNotOvertakenAndRecoversAfterInFlightEnds() throws Exception {
+        doAnswer(invocation -> {
+            sent.add(SentBatch.of(invocation.getArgument(0), invocation.getArgument(2)));
+            return null;
+        }).when(producer).send(anyCollection(), any(MessageQueue.class), any(SendCallback.class), anyLong());
+        when(producer.fetchPublishMessageQueues(TOPIC)).thenReturn(List.of(QUEUE));
+        accumulator = newAccumulator(1);
+
+        // 单个 Queue、每批一条：第一批在途时后面的批次排队
+        CompletableFuture<SendResult> first = accumulator.sendOrderly(TOPIC, message("a-1"), "a");
+        CompletableFuture<SendResult> second = accumulator.sendOrderly(TOPIC, message("a-2"), "a");
+        CompletableFuture<SendResult> other = accumulator.sendOrderly(TOPIC, message("b-1"), "b");
+        assertThat(sent).hasSize(1);
+
+        RuntimeException brokerDown = new IllegalStateException("broker down");
+        sent.get(0).fail(brokerDown);
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .havingCause()
+                .isInstanceOf(MessagingException.class)
+                .withMessageContaining("Earlier ordered send failed")
+                .havingCause()
+                .isSameAs(brokerDown);
+        // a-2 没有发出，其他 hashKey 照常发送
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(1).messages()).extracting(Message::getKeys).containsExactly("b-1");
+        assertThat(meterRegistry.get("mq.producer.batch.ordered.aborted").counter().count()).isEqualTo(1);
+
+        // a 的在途消息都已结束，窗口连同失败标记一起移除，新消息正常发出
+        assertThat(meterRegistry.get("mq.producer.batch.ordered.keys").gauge().value()).isEqualTo(1);
+        sent.get(1).succeed(7, null);
+        assertThat(other.join().getQueueOffset()).isEqualTo(7);
+        assertThat(meterRegistry.get("mq.producer.batch.ordered.keys").gauge().value()).isZero();
+
+        CompletableFuture<SendResult> retried = accumulator.sendOrderly(TOPIC, message("a-3"), "a");
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(2).messages()).extracting(Message::getKeys).containsExactly("a-3");
+        sent.get(2).succeed(8, null);
+        assertThat(retried.join().getMsgId()).isEqualTo(MessageClientIDSetter.getUniqID(sent.get(2).messages().get(0)));
+        assertThat(meterRegistry.get("bulkhead.active").tag("name", "producer").gauge().value()).isZero();
+    }
+
+    private ProducerBatchAccumulator newAccumulator(int maxCount) {
+        RocketMQTemplate template = new RocketMQTemplate();
+        template.setProducer(producer);
+        ProducerBulkhead bulkhead = new ProducerBulkhead(meterRegistry, 100, 1000, OverflowStrategy.BLOCK);
+        return new ProducerBatchAccumulator(template, bulkhead, meterRegistry, maxCount, 1024 * 1024, 60_000, 64, 1);
+    }
+
+    private static org.springframework.messaging.Message<byte[]> message(String keys) {
+        return MessageBuilder.withPayload(keys.getBytes(StandardCharsets.UTF_8))
+                .setHeader(RocketMQHeaders.KEYS, keys)
+                .build();
+    }
+
+    private record SentBatch(List<Message> messages, SendCallback callback) {
+
+        static SentBatch of(Collection<Message> messages, SendCallback callback) {
+            messages.forEach(MessageClientIDSetter::setUniqID);
+            return new SentBatch(List.copyOf(messages), callback);
+        }
+
+        void succeed(long queueOffset, String offsetMsgIds) {
+            SendResult result = new SendResult();
+            result.setSendStatus(SendStatus.SEND_OK);
+            result.setMessageQueue(QUEUE);
+            result.setQueueOffset(queueOffset);
+            result.setOffsetMsgId(offsetMsgIds);
+            callback.onSuccess(result);
+        }
+
+        void fail(Throwable e) {
+            callback.onException(e);
+        }
+    }
+}
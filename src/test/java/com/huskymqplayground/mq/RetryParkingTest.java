@@ -0,0 +1,191 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 顺序消费停车重试的并发路径：批次不等停车链、其他顺序键照常处理、位点在停车链结束后才提交
+ */
+@ExtendWith(MockitoExtension.class)
+class RetryParkingTest {
+
+    private static final MessageQueue QUEUE = new MessageQueue("test-topic", "broker-a", 0);
+
+    @Mock
+    private DefaultMQPushConsumer consumer;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final RecordingListener listener = new RecordingListener();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void batchReturnsWithoutWaitingForParkedKey() {
+        RetryParking parking = newParking(1000, 100);
+        MessageListenerOrderly orderly = newSupport(parking).orderlyListener();
+        listener.failing.add("A");
+
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(QUEUE);
+        assertThat(orderly.consumeMessage(List.of(message("A", 0), message("B", 1), message("C", 2)), context))
+                .isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+        assertThat(context.isAutoCommit()).as("A 停车中，位点暂不提交").isFalse();
+        assertThat(listener.handled).containsExactlyInAnyOrder("B@1", "C@2");
+        assertThat(parking.isParked(QUEUE, "A")).isTrue();
+
+        // 下一批：B 照常处理，A 的新消息排到停车链后面，批次仍然不等
+        context = new ConsumeOrderlyContext(QUEUE);
+        assertThat(orderly.consumeMessage(List.of(message("A", 3), message("B", 4)), context))
+                .isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+        assertThat(context.isAutoCommit()).isFalse();
+        assertThat(listener.handled).containsExactlyInAnyOrder("B@1", "C@2", "B@4");
+
+        // A 恢复后按位点顺序补上，停车解除，下一批连同之前的一起提交
+        listener.failing.clear();
+        awaitUnparked(parking, "A");
+        assertThat(listener.handled).containsSubsequence("A@0", "A@3");
+        context = new ConsumeOrderlyContext(QUEUE);
+        assertThat(orderly.consumeMessage(List.of(message("C", 5)), context)).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+        assertThat(context.isAutoCommit()).isTrue();
+    }
+
+    @Test
+    void fullHoldWindowWaitsForParkedChainsBeforeCommit() {
+        RetryParking parking = newParking(1000, 2);
+        MessageListenerOrderly orderly = newSupport(parking).orderlyListener();
+        listener.failing.add("A");
+
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(QUEUE);
+        assertThat(orderly.consumeMessage(List.of(message("A", 0)), context)).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+        assertThat(context.isAutoCommit()).isFalse();
+        CompletableFuture.runAsync(listener.failing::clear,
+                CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+
+        // 积压达到上限：消费线程等 A 的停车链结束后再提交，避免拉取流控卡死队列
+        context = new ConsumeOrderlyContext(QUEUE);
+        assertThat(orderly.consumeMessage(List.of(message("B", 1)), context)).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+        assertThat(context.isAutoCommit()).isTrue();
+        assertThat(listener.handled).contains("B@1", "A@0");
+        awaitUnparked(parking, "A");
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void failedDeadLetterKeepsKeyParkedUntilResent() throws Exception {
+        doThrow(new MQClientException("broker unavailable", null))
+                .doNothing()
+                .when(consumer).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+        RetryParking parking = newParking(1, 100);
+        listener.failing.add("A");
+
+        CompletableFuture<RetryParking.Outcome> first = parking.park(QUEUE, "A", () -> listener.handle(message("A", 0)), message("A", 0));
+        CompletableFuture<RetryParking.Outcome> next = parking.enqueue(QUEUE, "A",
+                () -> listener.handled.add(first.isDone() ? "A@1" : "A@1 overtook A@0"), message("A", 1));
+
+        // 死信发送失败时不放行后面的消息，重发成功后才继续
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(RetryParking.Outcome.DEAD_LETTERED);
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(RetryParking.Outcome.DONE);
+        verify(consumer, times(2)).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+        assertThat(listener.handled).containsExactly("A@1");
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void revokedQueueAbandonsParkedChains() throws Exception {
+        RetryParking parking = newParking(1000, 100);
+        listener.failing.add("A");
+        CompletableFuture<RetryParking.Outcome> outcome = parking.park(QUEUE, "A", () -> listener.handle(message("A", 0)), message("A", 0));
+
+        parking.queueListener(null).messageQueueChanged(QUEUE.getTopic(), Set.of(QUEUE), Set.of());
+
+        assertThat(outcome.get(5, TimeUnit.SECONDS)).isEqualTo(RetryParking.Outcome.ABANDONED);
+        assertThat(parking.hasParked(QUEUE)).isFalse();
+        verify(consumer, times(0)).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+    }
+
+    private RetryParking newParking(int maxRetries, int maxHeldMessages) {
+        return new RetryParking(maxRetries, 10, 20, maxHeldMessages, executor, consumer, new SimpleMeterRegistry(), "test");
+    }
+
+    private BatchConsumeSupport<String> newSupport(RetryParking parking) {
+        return new BatchConsumeSupport<>(listener, null, null, false, 2, executor, parking,
+                new ConsumerMetrics(new SimpleMeterRegistry(), Tags.empty()));
+    }
+
+    private static void awaitUnparked(RetryParking parking, Object key) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (parking.isParked(QUEUE, key)) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static MessageExt message(String key, long offset) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(QUEUE.getTopic());
+        messageExt.setBrokerName(QUEUE.getBrokerName());
+        messageExt.setQueueId(QUEUE.getQueueId());
+        messageExt.setQueueOffset(offset);
+        messageExt.setKeys(key);
+        messageExt.setBody((key + "@" + offset).getBytes(StandardCharsets.UTF_8));
+        return messageExt;
+    }
+
+    /**
+     * 按顺序键模拟业务失败，记录处理成功的消息
+     */
+    private static final class RecordingListener extends BaseRocketMQListener<String> {
+
+        private final List<String> failing = new CopyOnWriteArrayList<>();
+        private final List<String> handled = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected String deserialize(MessageExt messageExt) {
+            return new String(messageExt.getBody(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected void handleMessage(String dto, MessageExt messageExt) {
+            if (failing.contains(messageExt.getKeys())) {
+                throw new IllegalStateException("downstream unavailable: " + dto);
+            }
+            handled.add(dto);
+        }
+
+        void handle(MessageExt messageExt) {
+            handleMessage(deserialize(messageExt), messageExt);
+        }
+    }
+}
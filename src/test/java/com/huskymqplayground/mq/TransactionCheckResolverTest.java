@@ -0,0 +1,172 @@
+package com.huskymqplayground.mq;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 回查的合并查询：一波并发回查一次 IN 查询、同一 txId 共用一次查询、兜底表只查未找到的、失败与超时返回 UNKNOWN
+ */
+class TransactionCheckResolverTest {
+
+    private final List<List<String>> queries = new CopyOnWriteArrayList<>();
+    private TransactionCheckResolver resolver;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        resolver.shutdown();
+    }
+
+    @Test
+    void concurrentBurstIsResolvedByOneInQuery() throws Exception {
+        // 第一次查询卡住，期间到达的回查都排进队列，放行后一次取走
+        CountDownLatch firstQueryStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstQuery = new CountDownLatch(1);
+        resolver = newResolver(txIds -> {
+            if (queries.size() == 1) {
+                firstQueryStarted.countDown();
+                await(releaseFirstQuery);
+            }
+            return txIds.stream().filter(txId -> Integer.parseInt(txId.substring(3)) % 2 == 0).toList();
+        });
+
+        Map<String, RocketMQLocalTransactionState> results = new ConcurrentHashMap<>();
+        List<Thread> callers = new ArrayList<>();
+        callers.add(resolveAsync("tx-0", results));
+        assertThat(firstQueryStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i <= 20; i++) {
+            callers.add(resolveAsync("tx-" + i, results));
+        }
+        // 同一 txId 的重复回查共用一个 Future，不再入队
+        Map<String, RocketMQLocalTransactionState> shared = new ConcurrentHashMap<>();
+        List<Thread> duplicates = List.of(resolveAsync("tx-1", shared), resolveAsync("tx-2", shared));
+        awaitWaiting(callers.subList(1, callers.size()));
+        awaitWaiting(duplicates);
+
+        releaseFirstQuery.countDown();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+        for (Thread duplicate : duplicates) {
+            duplicate.join(5000);
+        }
+
+        assertThat(queries).hasSize(2);
+        assertThat(queries.get(0)).containsExactly("tx-0");
+        assertThat(queries.get(1)).hasSize(20).doesNotHaveDuplicates();
+        assertThat(results).hasSize(21);
+        assertThat(shared).containsEntry("tx-1", RocketMQLocalTransactionState.ROLLBACK)
+                .containsEntry("tx-2", RocketMQLocalTransactionState.COMMIT);
+        results.forEach((txId, state) -> assertThat(state).isEqualTo(Integer.parseInt(txId.substring(3)) % 2 == 0
+                ? RocketMQLocalTransactionState.COMMIT : RocketMQLocalTransactionState.ROLLBACK));
+    }
+
+    @Test
+    void foundTxIdIsCachedAfterQuery() {
+        resolver = newResolver(txIds -> txIds);
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(queries).hasSize(1);
+    }
+
+    @Test
+    void fallbackIsQueriedOnlyForTxIdsMissingFromPrimary() {
+        List<List<String>> fallbackQueries = new CopyOnWriteArrayList<>();
+        resolver = newResolver(TransactionCheckResolver.withFallback(
+                txIds -> txIds.stream().filter("tx-1"::equals).toList(),
+                txIds -> {
+                    fallbackQueries.add(List.copyOf(txIds));
+                    return txIds.stream().filter("tx-2"::equals).toList();
+                }));
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(fallbackQueries).isEmpty();
+        assertThat(resolver.resolve("tx-2")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(resolver.resolve("tx-3")).isEqualTo(RocketMQLocalTransactionState.ROLLBACK);
+        assertThat(fallbackQueries).containsExactly(List.of("tx-2"), List.of("tx-3"));
+    }
+
+    @Test
+    void markedCommittedTxIdIsResolvedWithoutQuery() {
+        resolver = newResolver(txIds -> txIds);
+        resolver.markCommitted("tx-1");
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(queries).isEmpty();
+    }
+
+    @Test
+    void queryFailureReturnsUnknownAndLaterCheckQueriesAgain() {
+        resolver = newResolver(txIds -> {
+            if (queries.size() == 1) {
+                throw new IllegalStateException("db unavailable");
+            }
+            return txIds;
+        });
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.UNKNOWN);
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        assertThat(queries).hasSize(2);
+    }
+
+    @Test
+    void slowQueryReturnsUnknownAfterTimeout() {
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        resolver = newResolver(txIds -> {
+            await(releaseQuery);
+            return txIds;
+        });
+
+        long start = System.nanoTime();
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.UNKNOWN);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(2_500L, 10_000L);
+        releaseQuery.countDown();
+    }
+
+    private TransactionCheckResolver newResolver(Function<Collection<String>, Collection<String>> existing) {
+        return new TransactionCheckResolver("test", txIds -> {
+            queries.add(List.copyOf(txIds));
+            return existing.apply(txIds);
+        }, 500, 1, 1000, Duration.ofMinutes(30), new SimpleMeterRegistry());
+    }
+
+    private Thread resolveAsync(String txId, Map<String, RocketMQLocalTransactionState> results) {
+        return Thread.ofPlatform().start(() -> results.put(txId, resolver.resolve(txId)));
+    }
+
+    /**
+     * 回查线程进入 future.get 的限时等待，说明 txId 已经入队
+     */
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                assertThat(System.nanoTime()).isLessThan(deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
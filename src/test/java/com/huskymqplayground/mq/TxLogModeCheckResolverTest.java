@@ -0,0 +1,101 @@
+package com.huskymqplayground.mq;
+
+import com.huskymqplayground.domain.CartItem;
+import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.mapper.CartItemMapper;
+import com.huskymqplayground.mapper.CartTransactionMapper;
+import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.mapper.PurchaseOrderMapper;
+import com.huskymqplayground.service.TxLogMode;
+import com.huskymqplayground.support.TableInfoSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Order / Cart 回查按 TxLogMode 先查哪张表；合并查询、兜底与缓存见 TransactionCheckResolverTest
+ */
+@ExtendWith(MockitoExtension.class)
+class TxLogModeCheckResolverTest {
+
+    @Mock
+    private OrderTransactionMapper orderTransactionMapper;
+    @Mock
+    private PurchaseOrderMapper purchaseOrderMapper;
+    @Mock
+    private CartTransactionMapper cartTransactionMapper;
+    @Mock
+    private CartItemMapper cartItemMapper;
+
+    private TransactionCheckResolver resolver;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoSupport.register(OrderTransaction.class, PurchaseOrder.class, CartTransaction.class, CartItem.class);
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        resolver.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TxLogMode.class)
+    void orderQueriesTableOfMode(TxLogMode txLogMode) {
+        resolver = new OrderTransactionCheckResolver(orderTransactionMapper, purchaseOrderMapper, new SimpleMeterRegistry(),
+                txLogMode, 500, 1, 1000, 30);
+        if (txLogMode == TxLogMode.INLINE) {
+            when(purchaseOrderMapper.selectObjs(any())).thenReturn(List.of("tx-1"));
+        } else {
+            when(orderTransactionMapper.selectObjs(any())).thenReturn(List.of("tx-1"));
+        }
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        verifyNoInteractions(txLogMode == TxLogMode.INLINE ? orderTransactionMapper : purchaseOrderMapper);
+    }
+
+    @ParameterizedTest
+    @EnumSource(TxLogMode.class)
+    void cartQueriesTableOfMode(TxLogMode txLogMode) {
+        resolver = newCartResolver(txLogMode);
+        if (txLogMode == TxLogMode.INLINE) {
+            when(cartItemMapper.selectObjs(any())).thenReturn(List.of("tx-1"));
+        } else {
+            when(cartTransactionMapper.selectObjs(any())).thenReturn(List.of("tx-1"));
+        }
+
+        assertThat(resolver.resolve("tx-1")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+        verifyNoInteractions(txLogMode == TxLogMode.INLINE ? cartTransactionMapper : cartItemMapper);
+    }
+
+    @Test
+    void cartInlineModeFallsBackToTxLogForMergedAdds() {
+        // 累加到已有行或合并写入的加购只写 cart_transaction
+        resolver = newCartResolver(TxLogMode.INLINE);
+        when(cartItemMapper.selectObjs(any())).thenReturn(List.of());
+        when(cartTransactionMapper.selectObjs(any())).thenReturn(List.of("tx-2"));
+
+        assertThat(resolver.resolve("tx-2")).isEqualTo(RocketMQLocalTransactionState.COMMIT);
+    }
+
+    private CartTransactionCheckResolver newCartResolver(TxLogMode txLogMode) {
+        return new CartTransactionCheckResolver(cartTransactionMapper, cartItemMapper, new SimpleMeterRegistry(),
+                txLogMode, 500, 1, 1000, 30);
+    }
+}
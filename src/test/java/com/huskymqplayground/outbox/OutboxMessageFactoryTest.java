@@ -0,0 +1,57 @@
+package com.huskymqplayground.outbox;
+
+import com.huskymqplayground.codec.MessageCodecRegistry;
+import com.huskymqplayground.domain.OutboxMessage;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboxMessageFactoryTest {
+
+    @Test
+    void sameKeysAlwaysLandOnSameShard() {
+        // 各实例各自构造工厂，分片只由 Keys 与分片数决定
+        OutboxMessageFactory factory = new OutboxMessageFactory(4);
+        OutboxMessageFactory otherInstance = new OutboxMessageFactory(4);
+
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            String keys = "trace-" + i;
+            int shard = factory.create("topic-a", message(keys)).getShard();
+            assertThat(factory.create("topic-b", message(keys)).getShard()).isEqualTo(shard);
+            assertThat(otherInstance.create("topic-a", message(keys)).getShard()).isEqualTo(shard);
+            shards.add(shard);
+        }
+        assertThat(shards).containsExactlyInAnyOrder(0, 1, 2, 3);
+    }
+
+    @Test
+    void keepsKeysAndCodecHeaders() {
+        OutboxMessageFactory factory = new OutboxMessageFactory(4);
+        Message<byte[]> message = MessageBuilder.withPayload("body".getBytes(StandardCharsets.UTF_8))
+                .setHeader(MessageCodecRegistry.CODEC_HEADER, "smile")
+                .build();
+
+        OutboxMessage outboxMessage = factory.create("topic-a", message);
+
+        // 没有 Keys 的消息统一落在 0 号分片
+        assertThat(outboxMessage.getShard()).isZero();
+        assertThat(outboxMessage.getMessageKeys()).isNull();
+        assertThat(outboxMessage.getCodec()).isEqualTo("smile");
+        assertThat(outboxMessage.getTopic()).isEqualTo("topic-a");
+        assertThat(outboxMessage.getCreateTime()).isNotNull();
+    }
+
+    private static Message<byte[]> message(String keys) {
+        return MessageBuilder.withPayload(keys.getBytes(StandardCharsets.UTF_8))
+                .setHeader(RocketMQHeaders.KEYS, keys)
+                .build();
+    }
+}
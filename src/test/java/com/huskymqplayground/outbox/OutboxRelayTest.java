@@ -0,0 +1,187 @@
+package com.huskymqplayground.outbox;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.huskymqplayground.domain.OutboxMessage;
+import com.huskymqplayground.mapper.OutboxMessageMapper;
+import com.huskymqplayground.support.TableInfoSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.messaging.Message;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 单分片投递：按 Topic 分组、同一分片 hashKey 顺序发送、发送成功后删除，游标在读空 / rescan-millis 时归零，发送失败时不前进
+ */
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    private static final String HASH_KEY = "outbox-0";
+
+    @Mock
+    private OutboxMessageMapper outboxMessageMapper;
+    @Mock
+    private RocketMQTemplate rocketMQTemplate;
+    @Mock
+    private RedissonClient redissonClient;
+    @Mock
+    private RLock lock;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Long> cursors = new CopyOnWriteArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private OutboxRelay relay;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoSupport.register(OutboxMessage.class);
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        when(redissonClient.getLock("husky:outbox:shard:0")).thenReturn(lock);
+        when(lock.tryLock(anyLong(), any(TimeUnit.class))).thenReturn(true);
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        relay.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendsByTopicUnderShardHashKeyThenDeletesAndResetsCursorWhenEmpty() throws Exception {
+        when(rocketMQTemplate.syncSendOrderly(anyString(), anyCollection(), eq(HASH_KEY), anyLong())).thenReturn(new SendResult());
+        List<OutboxMessage> batch = List.of(row(1, "topic-a", "k1"), row(2, "topic-b", "k2"), row(3, "topic-a", "k3"));
+        stubReads(cursor -> cursors.size() == 1 ? batch : List.of(), 3);
+        relay = newRelay(3, 60_000);
+
+        relay.start();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 读出的整批发完才删除，之后从批尾继续读；读空后归零重扫
+        assertThat(List.copyOf(cursors).subList(0, 3)).containsExactly(0L, 3L, 0L);
+        ArgumentCaptor<Collection<Message<byte[]>>> topicA = ArgumentCaptor.forClass(Collection.class);
+        verify(rocketMQTemplate).syncSendOrderly(eq("topic-a"), topicA.capture(), eq(HASH_KEY), anyLong());
+        assertThat(topicA.getValue()).extracting(message -> message.getHeaders().get(RocketMQHeaders.KEYS))
+                .containsExactly("k1", "k3");
+        ArgumentCaptor<Collection<Message<byte[]>>> topicB = ArgumentCaptor.forClass(Collection.class);
+        verify(rocketMQTemplate).syncSendOrderly(eq("topic-b"), topicB.capture(), eq(HASH_KEY), anyLong());
+        assertThat(topicB.getValue()).hasSize(1);
+        verify(outboxMessageMapper).deleteByIds(List.of(1L, 2L, 3L));
+        assertThat(meterRegistry.get("mq.outbox.relayed").tag("shard", "0").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void failedSendKeepsCursorAndRetriesSameRows() throws Exception {
+        when(rocketMQTemplate.syncSendOrderly(anyString(), anyCollection(), eq(HASH_KEY), anyLong()))
+                .thenThrow(new IllegalStateException("broker down"))
+                .thenReturn(new SendResult());
+        List<OutboxMessage> batch = List.of(row(5, "topic-a", "k5"));
+        stubReads(cursor -> cursors.size() <= 2 ? batch : List.of(), 3);
+        relay = newRelay(1, 60_000);
+
+        relay.start();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(List.copyOf(cursors).subList(0, 3)).containsExactly(0L, 0L, 5L);
+        verify(outboxMessageMapper).deleteByIds(List.of(5L));
+        assertThat(meterRegistry.get("mq.outbox.failures").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cursorIsResetEveryRescanIntervalEvenWithoutEmptyRead() throws Exception {
+        when(rocketMQTemplate.syncSendOrderly(anyString(), anyCollection(), eq(HASH_KEY), anyLong())).thenReturn(new SendResult());
+        // 每次都读满一批，只有 rescan-millis 会让游标回到 0
+        stubReads(cursor -> {
+            if (cursor > 0 && cursors.stream().filter(c -> c == 0).count() >= 2) {
+                done.countDown();
+            }
+            return List.of(row(cursor + 1, "topic-a", "k" + (cursor + 1)));
+        }, Integer.MAX_VALUE);
+        relay = newRelay(1, 50);
+
+        relay.start();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<Long> seen = List.copyOf(cursors);
+        assertThat(seen.get(0)).isZero();
+        assertThat(seen.subList(1, seen.size())).contains(0L);
+    }
+
+    @Test
+    void unlocksShardOnShutdown() throws Exception {
+        stubReads(cursor -> List.of(), 1);
+        relay = newRelay(1, 60_000);
+
+        relay.start();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        relay.shutdown();
+
+        verify(lock, timeout(1000)).unlock();
+    }
+
+    /**
+     * 记录每次读取的游标（gt id 的参数），读够 reads 次后通知用例
+     */
+    private void stubReads(LongFunction<List<OutboxMessage>> rows, int reads) {
+        doAnswer(invocation -> {
+            Wrapper<OutboxMessage> wrapper = invocation.getArgument(0);
+            wrapper.getSqlSegment();
+            long cursor = ((AbstractWrapper<?, ?, ?>) wrapper).getParamNameValuePairs().values().stream()
+                    .filter(Long.class::isInstance).map(Long.class::cast).findFirst().orElseThrow();
+            cursors.add(cursor);
+            if (cursors.size() >= reads) {
+                done.countDown();
+            }
+            return new ArrayList<>(rows.apply(cursor));
+        }).when(outboxMessageMapper).selectList(any());
+    }
+
+    private OutboxRelay newRelay(int batchSize, long rescanMillis) {
+        return new OutboxRelay(outboxMessageMapper, rocketMQTemplate, redissonClient, new OutboxMessageFactory(1),
+                meterRegistry, batchSize, 1, rescanMillis, 1000, 1);
+    }
+
+    private static OutboxMessage row(long id, String topic, String keys) {
+        OutboxMessage outboxMessage = new OutboxMessage();
+        outboxMessage.setId(id);
+        outboxMessage.setShard(0);
+        outboxMessage.setTopic(topic);
+        outboxMessage.setMessageKeys(keys);
+        outboxMessage.setBody(keys.getBytes());
+        outboxMessage.setCreateTime(LocalDateTime.now());
+        return outboxMessage;
+    }
+}
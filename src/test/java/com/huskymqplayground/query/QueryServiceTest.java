@@ -0,0 +1,103 @@
+package com.huskymqplayground.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.bulkhead.ReadBulkhead;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.dto.KeysetPage;
+import com.huskymqplayground.mapper.PurchaseOrderMapper;
+import com.huskymqplayground.mapper.UserLogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QueryServiceTest {
+
+    @Mock
+    private PurchaseOrderMapper purchaseOrderMapper;
+    @Mock
+    private UserLogMapper userLogMapper;
+    @Mock
+    private ReadThroughCache readThroughCache;
+
+    private QueryService queryService;
+
+    @BeforeEach
+    void setUp() {
+        queryService = new QueryService(purchaseOrderMapper, userLogMapper, readThroughCache,
+                new ReadBulkhead(new SimpleMeterRegistry(), 4, 100), new ObjectMapper(), 50);
+    }
+
+    @Test
+    void fullPageReturnsCursorOfLastItem() {
+        passThroughCache();
+        // 多查的一行只用来判断是否还有下一页
+        when(purchaseOrderMapper.selectList(any())).thenReturn(orders(30, 29, 28, 27));
+
+        KeysetPage<PurchaseOrder> page = queryService.ordersByBuyer("alice", null, 3);
+
+        assertThat(page.getItems()).extracting(PurchaseOrder::getId).containsExactly(30L, 29L, 28L);
+        assertThat(page.getNextCursor()).isEqualTo(28L);
+        verify(readThroughCache).get(eq("orders"), eq("alice"), eq("3:null"), any(), any());
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        passThroughCache();
+        when(purchaseOrderMapper.selectList(any())).thenReturn(orders(2, 1));
+
+        KeysetPage<PurchaseOrder> page = queryService.ordersByBuyer("alice", 3L, 3);
+
+        assertThat(page.getItems()).hasSize(2);
+        assertThat(page.getNextCursor()).isNull();
+        verify(readThroughCache).get(eq("orders"), eq("alice"), eq("3:3"), any(), any());
+    }
+
+    @Test
+    void pageSizeIsCappedAndCursorIsPartOfCacheKey() {
+        passThroughCache();
+        when(purchaseOrderMapper.selectList(any())).thenReturn(List.of());
+
+        queryService.ordersByBuyer("alice", 100L, 10_000);
+
+        verify(readThroughCache).get(eq("orders"), eq("alice"), eq("50:100"), any(), any());
+    }
+
+    @Test
+    void batchInvalidationBumpsEachUserOnce() {
+        queryService.invalidateUserLogsOf(List.of("alice", "bob", "alice"));
+
+        verify(readThroughCache, times(1)).invalidate("user-logs", "alice");
+        verify(readThroughCache, times(1)).invalidate("user-logs", "bob");
+    }
+
+    private void passThroughCache() {
+        when(readThroughCache.get(any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(4).get());
+    }
+
+    private static List<PurchaseOrder> orders(long... ids) {
+        List<PurchaseOrder> orders = new ArrayList<>();
+        for (long id : ids) {
+            PurchaseOrder order = new PurchaseOrder();
+            order.setId(id);
+            order.setBuyer("alice");
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,89 @@
+package com.huskymqplayground.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huskymqplayground.bulkhead.RedisBulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReadThroughCacheTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+    @Mock
+    private RBucket<String> bucket;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ReadThroughCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReadThroughCache(redissonClient, new RedisBulkhead(meterRegistry, 0, 1000),
+                objectMapper, meterRegistry, 60);
+    }
+
+    @Test
+    void pageKeyCarriesOwnerVersion() {
+        RAtomicLong version = mock(RAtomicLong.class);
+        when(version.get()).thenReturn(7L);
+        when(redissonClient.getAtomicLong("husky:query:orders:{alice}")).thenReturn(version);
+        when(redissonClient.<String>getBucket("husky:query:orders:{alice}:7:20:null", StringCodec.INSTANCE))
+                .thenReturn(bucket);
+
+        String value = cache.get("orders", "alice", "20:null", objectMapper.constructType(String.class), () -> "loaded");
+
+        assertThat(value).isEqualTo("loaded");
+        verify(bucket).set("\"loaded\"", Duration.ofSeconds(60));
+        assertThat(meterRegistry.get("query.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void hitSkipsLoader() {
+        when(redissonClient.<String>getBucket(anyString(), any(Codec.class))).thenReturn(bucket);
+        when(bucket.get()).thenReturn("\"cached\"");
+        @SuppressWarnings("unchecked")
+        Supplier<String> loader = mock(Supplier.class);
+
+        assertThat(cache.getImmutable("order", "ORD-1", objectMapper.constructType(String.class), loader)).isEqualTo("cached");
+        verify(loader, never()).get();
+    }
+
+    @Test
+    void immutableMissIsNotCached() {
+        when(redissonClient.<String>getBucket(anyString(), any(Codec.class))).thenReturn(bucket);
+
+        assertThat(cache.<String>getImmutable("order", "ORD-1", objectMapper.constructType(String.class), () -> null)).isNull();
+        verify(bucket, never()).set(any(), any(Duration.class));
+    }
+
+    @Test
+    void redisFailureFallsBackToLoader() {
+        when(redissonClient.getAtomicLong(anyString())).thenThrow(new IllegalStateException("redis down"));
+
+        assertThat(cache.get("orders", "alice", "20:null", objectMapper.constructType(String.class), () -> "loaded"))
+                .isEqualTo("loaded");
+    }
+}
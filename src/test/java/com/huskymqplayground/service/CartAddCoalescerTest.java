@@ -0,0 +1,134 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.dto.CartDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 加购合并窗口：整批合并写入、整批失败后逐条重试、单条走原路径、关闭后拒绝新加购
+ */
+@ExtendWith(MockitoExtension.class)
+class CartAddCoalescerTest {
+
+    @Mock
+    private CartService cartService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CartAddCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        coalescer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentAddsAreWrittenInOneFlush() {
+        // 攒满 3 条立即写入，等待上限足够长，三条必然落在同一批
+        coalescer = newCoalescer(3, 10_000);
+        when(cartService.addToCartCoalesced(anyList(), anyList())).thenReturn(2);
+
+        List<CompletableFuture<Void>> adds = List.of(addAsync("tx-1"), addAsync("tx-2"), addAsync("tx-3"));
+        adds.forEach(add -> add.orTimeout(5, TimeUnit.SECONDS).join());
+
+        ArgumentCaptor<List<String>> txIds = ArgumentCaptor.forClass(List.class);
+        verify(cartService).addToCartCoalesced(anyList(), txIds.capture());
+        assertThat(txIds.getValue()).containsExactlyInAnyOrder("tx-1", "tx-2", "tx-3");
+        verify(cartService, never()).addToCartWithTxLog(any(), any(), any());
+        assertThat(meterRegistry.get("cart.coalesce.flush.rows").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    void failedFlushRetriesEachAddAndFailsOnlyTheBadOne() {
+        coalescer = newCoalescer(3, 10_000);
+        IllegalStateException constraint = new IllegalStateException("constraint violated");
+        when(cartService.addToCartCoalesced(anyList(), anyList())).thenThrow(constraint);
+        doAnswer(invocation -> {
+            if ("tx-bad".equals(invocation.getArgument(1))) {
+                throw constraint;
+            }
+            return null;
+        }).when(cartService).addToCartWithTxLog(any(), any(), any());
+
+        CompletableFuture<Void> good1 = addAsync("tx-1");
+        CompletableFuture<Void> bad = addAsync("tx-bad");
+        CompletableFuture<Void> good2 = addAsync("tx-2");
+
+        good1.orTimeout(5, TimeUnit.SECONDS).join();
+        good2.orTimeout(5, TimeUnit.SECONDS).join();
+        // 调用方拿到的是原始异常，由事务监听器返回 ROLLBACK
+        assertThatThrownBy(() -> bad.orTimeout(5, TimeUnit.SECONDS).join())
+                .isInstanceOf(CompletionException.class)
+                .cause().isSameAs(constraint);
+        verify(cartService, times(3)).addToCartWithTxLog(any(), any(), eq(TxLogMode.SEPARATE));
+        assertThat(meterRegistry.get("cart.coalesce.flush.failures").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void singleAddKeepsItsOwnWritePath() {
+        coalescer = newCoalescer(256, 1);
+        CartDTO cartDTO = cartDTO("tx-1");
+
+        // INLINE 的单条加购仍是一次带 tx_id 的 INSERT
+        coalescer.add(cartDTO, "tx-1", TxLogMode.INLINE);
+
+        verify(cartService).addToCartWithTxLog(cartDTO, "tx-1", TxLogMode.INLINE);
+        verify(cartService, never()).addToCartCoalesced(anyList(), anyList());
+    }
+
+    @Test
+    void addAfterShutdownFailsInsteadOfHanging() throws InterruptedException {
+        coalescer = newCoalescer(256, 1);
+        coalescer.shutdown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                assertThatThrownBy(() -> coalescer.add(cartDTO("tx-1"), "tx-1", TxLogMode.SEPARATE))
+                        .isInstanceOf(IllegalStateException.class));
+        verifyNoInteractions(cartService);
+    }
+
+    private CartAddCoalescer newCoalescer(int flushSize, long maxLatencyMillis) {
+        return new CartAddCoalescer(cartService, meterRegistry, true, flushSize, maxLatencyMillis);
+    }
+
+    private CompletableFuture<Void> addAsync(String txId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread.ofPlatform().start(() -> {
+            try {
+                coalescer.add(cartDTO(txId), txId, TxLogMode.SEPARATE);
+                future.complete(null);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static CartDTO cartDTO(String txId) {
+        return new CartDTO(txId, "user-1", "item-1", 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.domain.CartItem;
+import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.dto.CartDTO;
+import com.huskymqplayground.mapper.CartItemMapper;
+import com.huskymqplayground.mapper.CartTransactionMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CartServiceTest {
+
+    @Mock
+    private CartItemMapper cartItemMapper;
+    @Mock
+    private CartTransactionMapper cartTransactionMapper;
+    @InjectMocks
+    private CartService cartService;
+
+    @Test
+    void separateModeWritesCartItemAndTxLog() {
+        cartService.addToCartWithTxLog(new CartDTO("trace-1", "alice", "book", 1), "tx-1", TxLogMode.SEPARATE);
+
+        CartItem item = capturedUpsert().get(0);
+        assertThat(item.getUsername()).isEqualTo("alice");
+        assertThat(item.getTxId()).isNull();
+
+        ArgumentCaptor<CartTransaction> tx = ArgumentCaptor.forClass(CartTransaction.class);
+        verify(cartTransactionMapper).insert(tx.capture());
+        assertThat(tx.getValue().getTxId()).isEqualTo("tx-1");
+        assertThat(tx.getValue().getUsername()).isEqualTo("alice");
+    }
+
+    @Test
+    void inlineModeWritesTxIdIntoNewCartItemOnly() {
+        when(cartItemMapper.upsertIncrement(anyList())).thenReturn(1);
+
+        cartService.addToCartWithTxLog(new CartDTO("trace-1", "alice", "book", 1), "tx-1", TxLogMode.INLINE);
+
+        CartItem item = capturedUpsert().get(0);
+        assertThat(item.getUsername()).isEqualTo("alice");
+        assertThat(item.getTxId()).isEqualTo("tx-1");
+        verifyNoInteractions(cartTransactionMapper);
+    }
+
+    @Test
+    void inlineModeFallsBackToTxLogWhenIncrementingExistingItem() {
+        // 累加到已有行时影响行数为 2，行上的 tx_id 仍是首次加购的事务
+        when(cartItemMapper.upsertIncrement(anyList())).thenReturn(2);
+
+        cartService.addToCartWithTxLog(new CartDTO("trace-2", "alice", "book", 1), "tx-2", TxLogMode.INLINE);
+
+        ArgumentCaptor<CartTransaction> tx = ArgumentCaptor.forClass(CartTransaction.class);
+        verify(cartTransactionMapper).insert(tx.capture());
+        assertThat(tx.getValue().getTxId()).isEqualTo("tx-2");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescedAddsMergeSameItemIntoOneRow() {
+        int rows = cartService.addToCartCoalesced(List.of(
+                        new CartDTO("trace-1", "bob", "pen", 1),
+                        new CartDTO("trace-2", "alice", "book", 2),
+                        new CartDTO("trace-3", "bob", "pen", 3)),
+                List.of("tx-1", "tx-2", "tx-3"));
+
+        assertThat(rows).isEqualTo(2);
+        // 按 (username, item_name) 排序，加锁顺序固定
+        assertThat(capturedUpsert())
+                .extracting(CartItem::getUsername, CartItem::getItemName, CartItem::getQuantity, CartItem::getTxId)
+                .containsExactly(tuple("alice", "book", 2, null), tuple("bob", "pen", 4, null));
+
+        ArgumentCaptor<List<CartTransaction>> txs = ArgumentCaptor.forClass(List.class);
+        verify(cartTransactionMapper).insert(txs.capture());
+        assertThat(txs.getValue()).extracting(CartTransaction::getTxId).containsExactly("tx-1", "tx-2", "tx-3");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CartItem> capturedUpsert() {
+        ArgumentCaptor<List<CartItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(cartItemMapper).upsertIncrement(items.capture());
+        return items.getValue();
+    }
+}
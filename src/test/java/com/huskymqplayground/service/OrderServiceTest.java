@@ -0,0 +1,66 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.domain.PurchaseOrder;
+import com.huskymqplayground.dto.OrderDTO;
+import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.mapper.PurchaseOrderMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class OrderServiceTest {
+
+    @Mock
+    private PurchaseOrderMapper purchaseOrderMapper;
+    @Mock
+    private OrderTransactionMapper orderTransactionMapper;
+    @InjectMocks
+    private OrderService orderService;
+
+    @Test
+    void separateModeWritesOrderAndTxLog() {
+        orderService.createOrderWithTxLog(orderDTO(), "tx-1", TxLogMode.SEPARATE);
+
+        ArgumentCaptor<PurchaseOrder> order = ArgumentCaptor.forClass(PurchaseOrder.class);
+        verify(purchaseOrderMapper).insert(order.capture());
+        assertThat(order.getValue().getOrderNo()).isEqualTo("ORD-1");
+        assertThat(order.getValue().getTxId()).isNull();
+
+        ArgumentCaptor<OrderTransaction> tx = ArgumentCaptor.forClass(OrderTransaction.class);
+        verify(orderTransactionMapper).insert(tx.capture());
+        assertThat(tx.getValue().getTxId()).isEqualTo("tx-1");
+        assertThat(tx.getValue().getOrderNo()).isEqualTo("ORD-1");
+    }
+
+    @Test
+    void inlineModeWritesTxIdIntoOrderOnly() {
+        orderService.createOrderWithTxLog(orderDTO(), "tx-1", TxLogMode.INLINE);
+
+        ArgumentCaptor<PurchaseOrder> order = ArgumentCaptor.forClass(PurchaseOrder.class);
+        verify(purchaseOrderMapper).insert(order.capture());
+        assertThat(order.getValue().getOrderNo()).isEqualTo("ORD-1");
+        assertThat(order.getValue().getTxId()).isEqualTo("tx-1");
+        verifyNoInteractions(orderTransactionMapper);
+    }
+
+    private static OrderDTO orderDTO() {
+        OrderDTO orderDTO = new OrderDTO();
+        orderDTO.setOrderNo("ORD-1");
+        orderDTO.setBuyer("alice");
+        orderDTO.setItemName("book");
+        orderDTO.setQuantity(2);
+        orderDTO.setAmount(new BigDecimal("19.90"));
+        return orderDTO;
+    }
+}
@@ -0,0 +1,120 @@
+package com.huskymqplayground.service;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.huskymqplayground.domain.CartTransaction;
+import com.huskymqplayground.domain.LocalTransaction;
+import com.huskymqplayground.domain.OrderTransaction;
+import com.huskymqplayground.mapper.CartTransactionMapper;
+import com.huskymqplayground.mapper.LocalTransactionMapper;
+import com.huskymqplayground.mapper.OrderTransactionMapper;
+import com.huskymqplayground.support.TableInfoSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionLogRetentionJobTest {
+
+    private static final long MAX_AGE_MINUTES = 1440;
+
+    @Mock
+    private RedissonClient redissonClient;
+    @Mock
+    private RLock lock;
+    @Mock
+    private OrderTransactionMapper orderTransactionMapper;
+    @Mock
+    private CartTransactionMapper cartTransactionMapper;
+    @Mock
+    private LocalTransactionMapper localTransactionMapper;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoSupport.register(OrderTransaction.class, CartTransaction.class, LocalTransaction.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void purgesInChunksUntilShortChunk() {
+        when(redissonClient.getLock("husky:tx-log:retention")).thenReturn(lock);
+        when(lock.tryLock()).thenReturn(true);
+        LocalDateTime oldest = LocalDateTime.now().minusMinutes(MAX_AGE_MINUTES + 60);
+        // 两块主键（第二块不满 chunk-size 即停），之后是滞后查询
+        doReturn(List.of("tx-1", "tx-2"), List.of("tx-3"), List.of(oldest))
+                .when(orderTransactionMapper).selectObjs(any());
+        when(orderTransactionMapper.delete(any())).thenReturn(2, 1);
+        doReturn(List.of(), List.of()).when(cartTransactionMapper).selectObjs(any());
+        doReturn(List.of(), List.of()).when(localTransactionMapper).selectObjs(any());
+
+        newJob(MAX_AGE_MINUTES).purge();
+
+        ArgumentCaptor<Wrapper<OrderTransaction>> deletes = ArgumentCaptor.forClass(Wrapper.class);
+        verify(orderTransactionMapper, times(2)).delete(deletes.capture());
+        assertThat(paramsOf(deletes.getAllValues().get(0))).contains("tx-1", "tx-2").doesNotContain("tx-3");
+        assertThat(paramsOf(deletes.getAllValues().get(1))).contains("tx-3");
+        verify(cartTransactionMapper, never()).delete(any());
+        verify(localTransactionMapper, never()).delete(any());
+
+        assertThat(meterRegistry.get("tx.log.retention.deleted").tag("table", "order_transaction").counter().count())
+                .isEqualTo(3);
+        assertThat(meterRegistry.get("tx.log.retention.lag").tag("table", "order_transaction").gauge().value())
+                .isBetween(3000.0, 4200.0);
+        assertThat(meterRegistry.get("tx.log.retention.lag").tag("table", "cart_transaction").gauge().value())
+                .isZero();
+        verify(lock).unlock();
+    }
+
+    @Test
+    void skipsRoundWhenAnotherInstanceHoldsLock() {
+        when(redissonClient.getLock("husky:tx-log:retention")).thenReturn(lock);
+        when(lock.tryLock()).thenReturn(false);
+
+        newJob(MAX_AGE_MINUTES).purge();
+
+        verifyNoInteractions(orderTransactionMapper, cartTransactionMapper, localTransactionMapper);
+        verify(lock, never()).unlock();
+    }
+
+    @Test
+    void rejectsMaxAgeShorterThanCheckWindow() {
+        assertThatThrownBy(() -> newJob(10))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("max-age-minutes");
+    }
+
+    /**
+     * 条件参数在生成 SQL 片段时才登记
+     */
+    private static Collection<Object> paramsOf(Wrapper<?> wrapper) {
+        wrapper.getSqlSegment();
+        return ((AbstractWrapper<?, ?, ?>) wrapper).getParamNameValuePairs().values();
+    }
+
+    private TransactionLogRetentionJob newJob(long maxAgeMinutes) {
+        return new TransactionLogRetentionJob(redissonClient, orderTransactionMapper, cartTransactionMapper,
+                localTransactionMapper, meterRegistry, maxAgeMinutes, 16, 2, 0);
+    }
+}
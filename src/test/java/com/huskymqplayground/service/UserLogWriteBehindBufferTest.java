@@ -0,0 +1,114 @@
+package com.huskymqplayground.service;
+
+import com.huskymqplayground.domain.UserLog;
+import com.huskymqplayground.mapper.UserLogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class UserLogWriteBehindBufferTest {
+
+    @Mock
+    private UserLogMapper userLogMapper;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UserLogWriteBehindBuffer buffer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        buffer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void groupIsNeverSplitAcrossFlushes() {
+        List<List<UserLog>> flushes = new ArrayList<>();
+        doAnswer(invocation -> {
+            synchronized (flushes) {
+                flushes.add(new ArrayList<>((Collection<UserLog>) invocation.getArgument(0)));
+            }
+            return null;
+        }).when(userLogMapper).insert(anyCollection());
+        buffer = newBuffer(4, 50);
+
+        List<CompletableFuture<Void>> singles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            singles.add(buffer.submit(userLog("single-" + i)));
+        }
+        List<UserLog> group = List.of(userLog("group-0"), userLog("group-1"), userLog("group-2"));
+        buffer.writeAll(group);
+        singles.forEach(CompletableFuture::join);
+
+        // 一组行只会出现在某一次刷盘里，且整组都在
+        List<List<UserLog>> withGroup = flushes.stream().filter(rows -> rows.contains(group.get(0))).toList();
+        assertThat(withGroup).hasSize(1);
+        assertThat(withGroup.get(0)).containsAll(group);
+    }
+
+    @Test
+    void failedFlushRetriesEachGroupInItsOwnTransaction() {
+        buffer = newBuffer(256, 50);
+        UserLog bad = userLog("bad");
+        List<UserLog> group = List.of(userLog("group-0"), userLog("group-1"));
+        // 合并刷盘失败；逐组重试时整组成功，坏行单独失败
+        doAnswer(invocation -> {
+            Collection<?> rows = invocation.getArgument(0);
+            if (rows.contains(bad)) {
+                throw new IllegalStateException("constraint violated");
+            }
+            return null;
+        }).when(userLogMapper).insert(anyCollection());
+        doAnswer(invocation -> {
+            throw new IllegalStateException("constraint violated");
+        }).when(userLogMapper).insert(bad);
+
+        CompletableFuture<Void> badWrite = buffer.submit(bad);
+        CompletableFuture<Void> groupWrite = buffer.submitAll(group);
+
+        groupWrite.join();
+        assertThatThrownBy(badWrite::join).hasCauseInstanceOf(IllegalStateException.class);
+        verify(userLogMapper, never()).insert(group.get(0));
+        verify(userLogMapper, never()).insert(group.get(1));
+    }
+
+    @Test
+    void submitAfterShutdownFailsImmediately() throws InterruptedException {
+        buffer = newBuffer(256, 1);
+        buffer.shutdown();
+
+        assertThatThrownBy(() -> buffer.write(userLog("late"))).isInstanceOf(IllegalStateException.class);
+        verify(userLogMapper, never()).insert(any(UserLog.class));
+    }
+
+    private UserLogWriteBehindBuffer newBuffer(int flushSize, long maxLatencyMillis) {
+        return new UserLogWriteBehindBuffer(userLogMapper, new TransactionTemplate(transactionManager),
+                new SimpleMeterRegistry(), flushSize, maxLatencyMillis);
+    }
+
+    private static UserLog userLog(String username) {
+        UserLog userLog = new UserLog();
+        userLog.setUsername(username);
+        userLog.setOperation("login");
+        return userLog;
+    }
+}
@@ -0,0 +1,21 @@
+package com.huskymqplayground.support;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+
+/**
+ * Lambda 条件构造器按实体的表信息解析列名，脱离 MyBatis 容器的单元测试需要先登记用到的实体
+ */
+public final class TableInfoSupport {
+
+    private TableInfoSupport() {
+    }
+
+    public static void register(Class<?>... entityClasses) {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        for (Class<?> entityClass : entityClasses) {
+            TableInfoHelper.initTableInfo(assistant, entityClass);
+        }
+    }
+}